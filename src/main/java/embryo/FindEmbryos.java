@@ -36,10 +36,15 @@ import java.io.File;
 import java.util.ArrayList;
 
 import fit.PointFunctionMatch;
+import fit.PointStore;
 import fit.circular.BruteForceShapePointDistanceFactory;
 import fit.circular.Ellipse;
+import fit.circular.EllipseConstraint;
 import fit.circular.EllipsePointDistanceFactory;
 import fit.circular.ShapePointDistanceFactory;
+import fit.ransac.NeighborhoodSamplerFactory;
+import fit.ransac.RansacListener;
+import fit.ransac.RansacSettings;
 import ij.ImageJ;
 import ij.ImagePlus;
 import ij.gui.Overlay;
@@ -168,9 +173,44 @@ public class FindEmbryos
 			final double maxArea = 80000;
 
 			final ShapePointDistanceFactory< Ellipse, ?, ? > factory = new EllipsePointDistanceFactory();//BruteForceShapePointDistanceFactory< Ellipse >();
+			// the points of a minimal sample are drawn close to each other, so they likely belong to the same embryo
+			final RansacSettings settings = new RansacSettings()
+					.setNumThreads( Runtime.getRuntime().availableProcessors() )
+					.setSamplerFactory( NeighborhoodSamplerFactory.forMaxArea( maxArea ) )
+					.setConstraint( new EllipseConstraint() );
+
+			// show the embryos while they are found, the best ellipse of the current RANSAC run is refined as it improves
+			settings.setListener( new RansacListener< Ellipse >()
+			{
+				final ArrayList< Ellipse > found = new ArrayList< Ellipse >();
+				PointStore last = null;
+				Ellipse best = null;
+
+				@Override
+				public void improved( final Ellipse model, final PointStore store, final int[] inliers, final double cost )
+				{
+					// a new RANSAC run, the previous one is done
+					if ( store != last && best != null )
+						found.add( best );
+
+					last = store;
+					best = model;
+
+					final Overlay preview = new Overlay();
+
+					for ( final Ellipse e : found )
+						e.draw( preview, 0.01 );
+
+					best.drawCenter( preview );
+					best.draw( preview, 0.01 );
+
+					origImp.setOverlay( preview );
+					origImp.updateAndDraw();
+				}
+			} );
 
 			final ArrayList< Pair< Ellipse, ArrayList< PointFunctionMatch > > > functions =
-					Util.findAllFunctions( mts, new Ellipse( factory ), 15, 300, minArea, maxArea );
+					Util.findAllFunctions( mts, new Ellipse( factory ), 15, 300, minArea, maxArea, settings );
 	
 			final Overlay o = new Overlay();
 	
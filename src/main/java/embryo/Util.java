@@ -34,9 +34,12 @@ package embryo;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.List;
 
 import fit.PointFunctionMatch;
+import fit.PointStore;
 import fit.circular.AbstractShape2D;
+import fit.ransac.RansacSettings;
 import ij.ImagePlus;
 import ij.io.Opener;
 import ij.process.ImageProcessor;
@@ -59,11 +62,27 @@ public class Util
 			final int minNumInliers,
 			final double minArea,
 			final double maxArea )
+	{
+		return findAllFunctions( mts, function, maxError, minNumInliers, minArea, maxArea, new RansacSettings() );
+	}
+
+	/**
+	 * Finds shapes until no more can be found, or until the settings expire (deadline or cancellation).
+	 */
+	public static < P extends AbstractShape2D< P > > ArrayList< Pair< P, ArrayList< PointFunctionMatch > > > findAllFunctions(
+			final ArrayList< Point > mts,
+			final P function,
+			final double maxError,
+			final int minNumInliers,
+			final double minArea,
+			final double maxArea,
+			final RansacSettings settings )
 	{
 		boolean fitted;
 
-		final ArrayList< Point > remainingPoints = new ArrayList< Point >();
-		remainingPoints.addAll( mts );
+		// the remaining points and their coordinates, the inliers of every shape are removed in one pass
+		final ArrayList< Point > remainingPoints = new ArrayList< Point >( mts );
+		PointStore store = PointStore.fromPoints( mts );
 
 		final ArrayList< Pair< P, ArrayList< PointFunctionMatch > > > segments = new ArrayList< Pair<P,ArrayList<PointFunctionMatch>> >();
 
@@ -71,21 +90,17 @@ public class Util
 		{
 			fitted = false;
 
-			final Pair< P, ArrayList< PointFunctionMatch > > f = findFunction( remainingPoints, function.copy(), maxError, minNumInliers, minArea, maxArea );
+			final Pair< P, ArrayList< PointFunctionMatch > > f = findFunction( remainingPoints, store, function.copy(), maxError, minNumInliers, minArea, maxArea, settings );
 
 			if ( f != null && f.getB().size() > 0 )
 			{
 				fitted = true;
 				segments.add( f );
 
-				final ArrayList< Point > inlierPoints = new ArrayList< Point >();
-				for ( final PointFunctionMatch p : f.getB() )
-					inlierPoints.add( p.getP1() );
-
-				remainingPoints.removeAll( inlierPoints );
+				store = store.removeInliers( remainingPoints );
 			}
 		}
-		while ( fitted );
+		while ( fitted && !settings.isExpired() );
 
 		return segments;
 	}
@@ -98,26 +113,49 @@ public class Util
 			final double minArea,
 			final double maxArea )
 	{
-		final ArrayList< PointFunctionMatch > candidates = new ArrayList<PointFunctionMatch>();
-		final ArrayList< PointFunctionMatch > inliers = new ArrayList<PointFunctionMatch>();
-		
-		for ( final Point p : mts )
-			candidates.add( new PointFunctionMatch( p ) );
+		return findFunction( mts, function, maxError, minNumInliers, minArea, maxArea, new RansacSettings() );
+	}
+
+	public static < P extends AbstractShape2D< P > > Pair< P, ArrayList< PointFunctionMatch > > findFunction(
+			final ArrayList< Point > mts,
+			final P function,
+			final double maxError,
+			final int minNumInliers,
+			final double minArea,
+			final double maxArea,
+			final RansacSettings settings )
+	{
+		return findFunction( mts, PointStore.fromPoints( mts ), function, maxError, minNumInliers, minArea, maxArea, settings );
+	}
 
+	/**
+	 * Same as {@link #findFunction(ArrayList, AbstractShape2D, double, int, double, double, RansacSettings)} for a
+	 * store that was already created from the points, afterwards it contains the inliers.
+	 */
+	public static < P extends AbstractShape2D< P > > Pair< P, ArrayList< PointFunctionMatch > > findFunction(
+			final List< Point > mts,
+			final PointStore store,
+			final P function,
+			final double maxError,
+			final int minNumInliers,
+			final double minArea,
+			final double maxArea,
+			final RansacSettings settings )
+	{
 		try
 		{
-			function.ransac( candidates, inliers, 500, maxError, 0.01, minNumInliers, minArea, maxArea );
+			function.ransac( store, 500, maxError, 0.01, minNumInliers, minArea, maxArea, settings );
 
-			if ( inliers.size() >= function.getMinNumPoints() )
+			if ( store.numInliers() >= function.getMinNumPoints() )
 			{
-				function.fit( inliers );
+				function.fitFunction( store, store.inlierIndices, 0, store.numInliers() );
 	
-				System.out.println( inliers.size() + "/" + candidates.size() );
+				System.out.println( store.numInliers() + "/" + store.size() );
 				System.out.println( function );
 			}
 			else
 			{
-				System.out.println( "0/" + candidates.size() );
+				System.out.println( "0/" + store.size() );
 				return null;
 			}
 		}
@@ -129,7 +167,7 @@ public class Util
 			return null;
 		}
 
-		return new ValuePair< P, ArrayList< PointFunctionMatch > >( function, inliers );
+		return new ValuePair< P, ArrayList< PointFunctionMatch > >( function, store.getInlierMatches( mts, function ) );
 	}
 
 	public static Img< FloatType > openAs32Bit( final File file )
@@ -34,6 +34,7 @@ package fit;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Random;
 
 import mpicbg.models.AbstractModel;
 import mpicbg.models.IllDefinedDataPointsException;
@@ -51,6 +52,11 @@ public abstract class AbstractFunction< M extends AbstractFunction< M > > extend
 	@Override
 	public int getMinNumMatches() { return getMinNumPoints(); }
 
+	/**
+	 * @return the (fixed-seed) random number generator that RANSAC uses to draw samples unless a seed is set
+	 */
+	public Random getRandom() { return rnd; }
+
 	@Deprecated
 	@Override
 	public <P extends PointMatch> void fit( final Collection< P > matches ) throws NotEnoughDataPointsException, IllDefinedDataPointsException
@@ -63,6 +69,106 @@ public abstract class AbstractFunction< M extends AbstractFunction< M > > extend
 		fitFunction( list );
 	}
 
+	/**
+	 * Fits the function to a subset of the points of a {@link PointStore}, override
+	 * this for functions that can be fitted without creating {@link Point}s.
+	 * 
+	 * @param store - the points
+	 * @param indices - the indices of the points to fit to
+	 * @param from - first entry of indices (inclusive)
+	 * @param to - last entry of indices (exclusive)
+	 * @throws NotEnoughDataPointsException if there are not enough points
+	 * @throws IllDefinedDataPointsException if the points are ill-defined
+	 */
+	public void fitFunction( final PointStore store, final int[] indices, final int from, final int to ) throws NotEnoughDataPointsException, IllDefinedDataPointsException
+	{
+		final ArrayList<Point> list = new ArrayList<Point>( to - from );
+
+		for ( int j = from; j < to; ++j )
+			list.add( new Point( new double[]{ store.x[ indices[ j ] ], store.y[ indices[ j ] ] } ) );
+
+		fitFunction( list );
+	}
+
+	/**
+	 * Calls {@link #distanceTo(Point)} for each point, override this if the
+	 * function can do better.
+	 */
+	@Override
+	public void distanceTo( final double[] xs, final double[] ys, final int from, final int to, final double[] out )
+	{
+		final Point p = new Point( new double[ 2 ] );
+		final double[] l = p.getL();
+		final double[] w = p.getW();
+
+		for ( int i = from; i < to; ++i )
+		{
+			l[ 0 ] = w[ 0 ] = xs[ i ];
+			l[ 1 ] = w[ 1 ] = ys[ i ];
+			out[ i ] = distanceTo( p );
+		}
+	}
+
+	/**
+	 * Computes the distance of all points of a {@link PointStore} to this function.
+	 * 
+	 * @param store - the points, the distances are stored as residuals
+	 */
+	public void computeResiduals( final PointStore store )
+	{
+		distanceTo( store.x, store.y, 0, store.size(), store.residual );
+	}
+
+	/**
+	 * Same as {@link #test(java.util.Collection, java.util.Collection, double, double, int)}
+	 * for a {@link PointStore}, the inliers are in the order of the store.
+	 *
+	 * Sets {@link #getCost() cost} = 1.0 - |inliers| / |candidates|.
+	 *
+	 * @param store - the points, residuals and inliers are updated
+	 * @param epsilon maximal allowed transfer error
+	 * @param minInlierRatio minimal ratio |inliers| / |candidates| (0.0 is 0%, 1.0 is 100%)
+	 * @param minNumInliers minimally required absolute number of inliers
+	 * @return if successful
+	 */
+	public boolean test(
+			final PointStore store,
+			final double epsilon,
+			final double minInlierRatio,
+			final int minNumInliers )
+	{
+		store.clearInliers();
+		computeResiduals( store );
+
+		return testResiduals( store, epsilon, minInlierRatio, minNumInliers );
+	}
+
+	/**
+	 * Same as {@link #test(PointStore, double, double, int)}, but uses the residuals
+	 * that are already in the {@link PointStore}. The inliers must be cleared.
+	 *
+	 * @param store - the points and residuals, inliers are updated
+	 * @param epsilon maximal allowed transfer error
+	 * @param minInlierRatio minimal ratio |inliers| / |candidates| (0.0 is 0%, 1.0 is 100%)
+	 * @param minNumInliers minimally required absolute number of inliers
+	 * @return if successful
+	 */
+	public boolean testResiduals(
+			final PointStore store,
+			final double epsilon,
+			final double minInlierRatio,
+			final int minNumInliers )
+	{
+		for ( int i = 0; i < store.size(); ++i )
+			if ( store.residual[ i ] < epsilon )
+				store.addInlier( i );
+
+		final double ir = ( double )store.numInliers() / ( double )store.size();
+		setCost( Math.max( 0.0, Math.min( 1.0, 1.0 - ir ) ) );
+
+		return ( store.numInliers() >= minNumInliers && ir > minInlierRatio );
+	}
+
 	@Override
 	public double[] apply( final double[] location ) { return null; }
 
@@ -36,11 +36,12 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.HashSet;
 import java.util.List;
 
+import fit.ransac.HypothesisTest;
+import fit.ransac.Ransac;
+import fit.ransac.RansacSettings;
 import mpicbg.models.AbstractModel;
-import mpicbg.models.IllDefinedDataPointsException;
 import mpicbg.models.NotEnoughDataPointsException;
 import mpicbg.models.PointMatch;
 
@@ -76,7 +77,6 @@ public abstract class AbstractFunction2D< M extends AbstractFunction2D< M > > ex
 	 * @return true if {@link AbstractModel} could be estimated and inliers is not
 	 *   empty, false otherwise.  If false, {@link AbstractModel} remains unchanged.
 	 */
-	@SuppressWarnings("deprecation")
 	final public < P extends PointFunctionMatch >boolean ransac(
 			final List< P > candidates,
 			final Collection< P > inliers,
@@ -87,71 +87,104 @@ public abstract class AbstractFunction2D< M extends AbstractFunction2D< M > > ex
 			final double maxGapDim0 )
 		throws NotEnoughDataPointsException
 	{
-		if ( candidates.size() < getMinNumMatches() )
-			throw new NotEnoughDataPointsException( candidates.size() + " data points are not enough to solve the Model, at least " + getMinNumMatches() + " data points required." );
+		return ransac( candidates, inliers, iterations, epsilon, minInlierRatio, minNumInliers, maxGapDim0, new RansacSettings() );
+	}
 
-		cost = Double.MAX_VALUE;
+	/**
+	 * Same as {@link #ransac(List, Collection, int, double, double, int, double)}, but
+	 * with additional {@link RansacSettings} (e.g. multi-threading).
+	 *
+	 * @param candidates candidate data points inluding (many) outliers
+	 * @param inliers remaining candidates after RANSAC
+	 * @param iterations number of iterations
+	 * @param epsilon maximal allowed transfer error
+	 * @param minInlierRatio minimal number of inliers to number of
+	 *   candidates
+	 * @param minNumInliers minimally required absolute number of inliers
+	 * @param maxGapDim0 max distance between points on the x-axis (will keep the larger set of points)
+	 * @param settings additional settings
+	 * @param <P> some PointFunctionMatch
+	 * 
+	 * @throws NotEnoughDataPointsException if there are not enough points
+	 * 
+	 * @return true if {@link AbstractModel} could be estimated and inliers is not
+	 *   empty, false otherwise.  If false, {@link AbstractModel} remains unchanged.
+	 */
+	final public < P extends PointFunctionMatch >boolean ransac(
+			final List< P > candidates,
+			final Collection< P > inliers,
+			final int iterations,
+			final double epsilon,
+			final double minInlierRatio,
+			final int minNumInliers,
+			final double maxGapDim0,
+			final RansacSettings settings )
+		throws NotEnoughDataPointsException
+	{
+		inliers.clear();
 
-		final M copy = copy();
-		final M m = copy();
+		final PointStore store = PointStore.fromMatches( candidates );
 
-		inliers.clear();
+		if ( !ransac( store, iterations, epsilon, minInlierRatio, minNumInliers, maxGapDim0, settings ) )
+			return false;
 
-		int i = 0;
-		final HashSet< P > minMatches = new HashSet< P >();
+		store.getInliers( candidates, inliers );
+		return true;
+	}
 
-A:		while ( i < iterations )
+	/**
+	 * Same as {@link #ransac(List, Collection, int, double, double, int, double, RansacSettings)},
+	 * but runs directly on a {@link PointStore}. The inliers (sorted by x) are stored in the
+	 * {@link PointStore}.
+	 *
+	 * @param store candidate data points inluding (many) outliers
+	 * @param iterations number of iterations
+	 * @param epsilon maximal allowed transfer error
+	 * @param minInlierRatio minimal number of inliers to number of
+	 *   candidates
+	 * @param minNumInliers minimally required absolute number of inliers
+	 * @param maxGapDim0 max distance between points on the x-axis (will keep the larger set of points)
+	 * @param settings additional settings
+	 * 
+	 * @throws NotEnoughDataPointsException if there are not enough points
+	 * 
+	 * @return true if {@link AbstractModel} could be estimated and there are
+	 *   inliers, false otherwise.  If false, {@link AbstractModel} remains unchanged.
+	 */
+	@SuppressWarnings("unchecked")
+	public boolean ransac(
+			final PointStore store,
+			final int iterations,
+			final double epsilon,
+			final double minInlierRatio,
+			final int minNumInliers,
+			final double maxGapDim0,
+			final RansacSettings settings )
+		throws NotEnoughDataPointsException
+	{
+		final HypothesisTest< M > test = new HypothesisTest< M >()
 		{
-			// choose model.MIN_SET_SIZE disjunctive matches randomly
-			minMatches.clear();
-			for ( int j = 0; j < getMinNumMatches(); ++j )
+			@Override
+			public boolean test( final M model, final PointStore store )
 			{
-				P p;
-				do
-				{
-					p = candidates.get( ( int )( rnd.nextDouble() * candidates.size() ) );
-				}
-				while ( minMatches.contains( p ) );
-				minMatches.add( p );
+				return model.test( store, epsilon, minInlierRatio, minNumInliers, maxGapDim0 );
 			}
-			try { m.fit( minMatches ); }
-			catch ( final IllDefinedDataPointsException e )
+
+			@Override
+			public boolean testResiduals( final M model, final PointStore store )
 			{
-				++i;
-				continue;
+				store.clearInliers();
+				return model.testResiduals( store, epsilon, minInlierRatio, minNumInliers, maxGapDim0 );
 			}
 
-			final ArrayList< P > tempInliers = new ArrayList< P >();
+			@Override
+			public double getEpsilon() { return epsilon; }
+		};
 
-			int numInliers = 0;
-			boolean isGood = m.test( candidates, tempInliers, epsilon, minInlierRatio, minNumInliers, maxGapDim0 );
-			while ( isGood && numInliers < tempInliers.size() )
-			{
-				numInliers = tempInliers.size();
-				try { m.fit( tempInliers ); }
-				catch ( final IllDefinedDataPointsException e )
-				{
-					++i;
-					continue A;
-				}
-				isGood = m.test( candidates, tempInliers, epsilon, minInlierRatio, minNumInliers, maxGapDim0 );
-			}
-			if (
-					isGood &&
-					m.betterThan( copy ) &&
-					tempInliers.size() >= minNumInliers )
-			{
-				copy.set( m );
-				inliers.clear();
-				inliers.addAll( tempInliers );
-			}
-			++i;
-		}
-		if ( inliers.size() == 0 )
-			return false;
+		// sort once before the store is shared between threads
+		store.getXOrder();
 
-		set( copy );
-		return true;
+		return Ransac.ransac( ( M )this, store, iterations, minNumInliers, test, rnd, settings );
 	}
 
 	/**
@@ -249,4 +282,103 @@ A:		while ( i < iterations )
 
 		return ( inliers.size() >= minNumInliers && ir > minInlierRatio );
 	}
+
+	/**
+	 * Same as {@link #test(Collection, List, double, double, int, double)} for
+	 * a {@link PointStore}, the inliers are sorted by x. Uses the order of the points
+	 * by x that is computed once per {@link PointStore}, so there is no sorting.
+	 *
+	 * @param store - the points, residuals and inliers are updated
+	 * @param epsilon maximal allowed transfer error
+	 * @param minInlierRatio minimal ratio |inliers| / |candidates| (0.0 is 0%, 1.0 is 100%)
+	 * @param minNumInliers minimally required absolute number of inliers
+	 * @param maxGapDim0 maximum gap in x
+	 * @return if successful
+	 */
+	public boolean test(
+			final PointStore store,
+			final double epsilon,
+			final double minInlierRatio,
+			final int minNumInliers,
+			final double maxGapDim0 )
+	{
+		store.clearInliers();
+		computeResiduals( store );
+
+		return testResiduals( store, epsilon, minInlierRatio, minNumInliers, maxGapDim0 );
+	}
+
+	/**
+	 * Same as {@link #test(PointStore, double, double, int, double)}, but uses the residuals
+	 * that are already in the {@link PointStore} (computed by this model, e.g. together with
+	 * other models in one pass over the points). The inliers must be cleared.
+	 *
+	 * @param store - the points and residuals, inliers are updated
+	 * @param epsilon maximal allowed transfer error
+	 * @param minInlierRatio minimal ratio |inliers| / |candidates| (0.0 is 0%, 1.0 is 100%)
+	 * @param minNumInliers minimally required absolute number of inliers
+	 * @param maxGapDim0 maximum gap in x
+	 * @return if successful
+	 */
+	public boolean testResiduals(
+			final PointStore store,
+			final double epsilon,
+			final double minInlierRatio,
+			final int minNumInliers,
+			final double maxGapDim0 )
+	{
+		final double[] x = store.x;
+		final double[] residual = store.residual;
+		final int[] order = store.getXOrder();
+
+		// a single pass over the points sorted by x, find the largest chunk of inliers
+		// without a gap > maxGapDim0 (the first one if there are several)
+		int maxStart = 0, maxSize = 0, start = 0, size = 0;
+		double lastX = 0;
+
+		for ( int p = 0; p < order.length; ++p )
+		{
+			final int i = order[ p ];
+
+			if ( residual[ i ] < epsilon )
+			{
+				if ( size > 0 && x[ i ] - lastX > maxGapDim0 )
+				{
+					if ( size > maxSize )
+					{
+						maxStart = start;
+						maxSize = size;
+					}
+
+					size = 0;
+				}
+
+				if ( size == 0 )
+					start = p;
+
+				++size;
+				lastX = x[ i ];
+			}
+		}
+
+		if ( size > maxSize )
+		{
+			maxStart = start;
+			maxSize = size;
+		}
+
+		final int[] inliers = store.inlierIndices;
+		int numInliers = 0;
+
+		for ( int p = maxStart; numInliers < maxSize; ++p )
+			if ( residual[ order[ p ] ] < epsilon )
+				inliers[ numInliers++ ] = order[ p ];
+
+		store.setInliers( numInliers );
+
+		final double ir = ( double )numInliers / ( double )store.size();
+		setCost( Math.max( 0.0, Math.min( 1.0, 1.0 - ir ) ) );
+
+		return ( numInliers >= minNumInliers && ir > minInlierRatio );
+	}
 }
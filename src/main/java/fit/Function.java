@@ -67,6 +67,17 @@ public interface Function< F extends Function< F, P >, P extends Point >
 	 */
 	public double distanceTo( final P point );
 
+	/**
+	 * Computes the minimal distance of many 2d points to this function
+	 * 
+	 * @param xs - the x-coordinates
+	 * @param ys - the y-coordinates
+	 * @param from - first point (inclusive)
+	 * @param to - last point (exclusive)
+	 * @param out - out[ i ] is set to the distance of ( xs[ i ], ys[ i ] ) to the {@link Function}
+	 */
+	public void distanceTo( final double[] xs, final double[] ys, final int from, final int to, final double[] out );
+
 	/**
 	 * @return - a copy of the function object
 	 */
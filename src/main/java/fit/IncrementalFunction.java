@@ -0,0 +1,61 @@
+/*-
+ * #%L
+ * code for function fitting
+ * %%
+ * Copyright (C) 2015 - 2025 Developers
+ * %%
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * 3. Neither the name of the Preibisch Lab nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package fit;
+
+import mpicbg.models.IllDefinedDataPointsException;
+import mpicbg.models.NotEnoughDataPointsException;
+
+/**
+ * A {@link Function} that can be fitted from {@link SufficientStatistics}
+ * instead of iterating all points.
+ * 
+ * @author Stephan Preibisch
+ *
+ * @param <S> the statistics
+ */
+public interface IncrementalFunction< S extends SufficientStatistics >
+{
+	/**
+	 * @return - new, empty statistics that this function can be fitted to
+	 */
+	public S createStatistics();
+
+	/**
+	 * Fits the function to the points summarized in the statistics.
+	 * 
+	 * @param statistics - the statistics
+	 * @throws NotEnoughDataPointsException - thrown if not enough points were added
+	 * @throws IllDefinedDataPointsException - thrown if the points are ill-defined
+	 */
+	public void fitFunction( final S statistics ) throws NotEnoughDataPointsException, IllDefinedDataPointsException;
+}
@@ -0,0 +1,329 @@
+/*-
+ * #%L
+ * code for function fitting
+ * %%
+ * Copyright (C) 2015 - 2025 Developers
+ * %%
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * 3. Neither the name of the Preibisch Lab nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package fit;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import mpicbg.models.Point;
+import mpicbg.models.PointMatch;
+
+/**
+ * Stores 2d points as primitive arrays together with the residuals and the
+ * inliers of the last test. This is what RANSAC works on internally, it needs
+ * less memory than a list of {@link PointFunctionMatch}es and avoids
+ * dereferencing an object for every point and hypothesis.
+ * 
+ * @author Stephan Preibisch
+ */
+public class PointStore
+{
+	/**
+	 * the coordinates
+	 */
+	final public double[] x, y;
+
+	/**
+	 * the distance of each point to the function of the last test
+	 */
+	final public double[] residual;
+
+	/**
+	 * true if a point is an inlier
+	 */
+	final public boolean[] inlierMask;
+
+	/**
+	 * the indices of the inliers in the order determined by the test (the first numInliers entries are valid)
+	 */
+	final public int[] inlierIndices;
+
+	protected int numInliers = 0;
+
+	/**
+	 * the indices of all points sorted by x (computed once when needed)
+	 */
+	protected int[] xOrder;
+
+	public PointStore( final int size )
+	{
+		this( new double[ size ], new double[ size ] );
+	}
+
+	public PointStore( final double[] x, final double[] y )
+	{
+		this( x, y, new double[ x.length ], new boolean[ x.length ], new int[ x.length ], null );
+	}
+
+	protected PointStore( final double[] x, final double[] y, final double[] residual, final boolean[] inlierMask, final int[] inlierIndices, final int[] xOrder )
+	{
+		this.xOrder = xOrder;
+		this.x = x;
+		this.y = y;
+		this.residual = residual;
+		this.inlierMask = inlierMask;
+		this.inlierIndices = inlierIndices;
+	}
+
+	public static PointStore fromPoints( final Collection< ? extends Point > points )
+	{
+		final PointStore store = new PointStore( points.size() );
+
+		int i = 0;
+		for ( final Point p : points )
+		{
+			store.x[ i ] = p.getW()[ 0 ];
+			store.y[ i++ ] = p.getW()[ 1 ];
+		}
+
+		return store;
+	}
+
+	public static PointStore fromMatches( final Collection< ? extends PointMatch > matches )
+	{
+		final PointStore store = new PointStore( matches.size() );
+
+		int i = 0;
+		for ( final PointMatch pm : matches )
+		{
+			store.x[ i ] = pm.getP1().getW()[ 0 ];
+			store.y[ i++ ] = pm.getP1().getW()[ 1 ];
+		}
+
+		return store;
+	}
+
+	/**
+	 * @return a new store that shares the coordinates (and the order by x if already computed),
+	 * but has its own residuals and inliers (e.g. for another thread)
+	 */
+	public PointStore shareCoordinates()
+	{
+		return new PointStore( x, y, new double[ x.length ], new boolean[ x.length ], new int[ x.length ], xOrder );
+	}
+
+	/**
+	 * Returns the indices of all points sorted by x (equal x are sorted by index), it
+	 * is computed on the first call. Not thread-safe, call it before sharing the coordinates
+	 * with other threads.
+	 * 
+	 * @return the order of the points by x, must not be modified
+	 */
+	public int[] getXOrder()
+	{
+		if ( xOrder == null )
+		{
+			final int[] order = new int[ x.length ];
+
+			for ( int i = 0; i < order.length; ++i )
+				order[ i ] = i;
+
+			sortByX( x, order, 0, order.length );
+
+			xOrder = order;
+		}
+
+		return xOrder;
+	}
+
+	public int size() { return x.length; }
+
+	public int numInliers() { return numInliers; }
+
+	/**
+	 * Removes all inliers, must be called before inlierIndices is modified
+	 */
+	public void clearInliers()
+	{
+		for ( int j = 0; j < numInliers; ++j )
+			inlierMask[ inlierIndices[ j ] ] = false;
+
+		numInliers = 0;
+	}
+
+	public void addInlier( final int i )
+	{
+		inlierMask[ i ] = true;
+		inlierIndices[ numInliers++ ] = i;
+	}
+
+	/**
+	 * Sets the first n entries of inlierIndices as inliers (after calling {@link #clearInliers()})
+	 * 
+	 * @param n - number of inliers
+	 */
+	public void setInliers( final int n )
+	{
+		for ( int j = 0; j < n; ++j )
+			inlierMask[ inlierIndices[ j ] ] = true;
+
+		numInliers = n;
+	}
+
+	/**
+	 * Copies the inliers of another store with the same points
+	 * 
+	 * @param store - the other store
+	 */
+	public void setInliers( final PointStore store )
+	{
+		clearInliers();
+		System.arraycopy( store.inlierIndices, 0, inlierIndices, 0, store.numInliers );
+		setInliers( store.numInliers );
+	}
+
+	/**
+	 * Adds the inliers to a collection
+	 * 
+	 * @param candidates - the candidates this store was created from
+	 * @param inliers - the collection to add the inliers to
+	 * @param <P> the type of candidate
+	 */
+	public < P > void getInliers( final List< P > candidates, final Collection< P > inliers )
+	{
+		for ( int j = 0; j < numInliers; ++j )
+			inliers.add( candidates.get( inlierIndices[ j ] ) );
+	}
+
+	/**
+	 * Removes the inliers from the candidates this store was created from and returns a store of the
+	 * remaining points, both in one pass that keeps the order (instead of e.g. ArrayList.removeAll, which
+	 * is quadratic). Only the coordinates are copied, the points are not dereferenced.
+	 * 
+	 * @param candidates - the candidates this store was created from (random access), the inliers are removed
+	 * @param <P> the type of candidate
+	 * @return a new store of the remaining points
+	 */
+	public < P > PointStore removeInliers( final List< P > candidates )
+	{
+		final PointStore remaining = new PointStore( x.length - numInliers );
+
+		int k = 0;
+		for ( int i = 0; i < x.length; ++i )
+		{
+			if ( !inlierMask[ i ] )
+			{
+				candidates.set( k, candidates.get( i ) );
+				remaining.x[ k ] = x[ i ];
+				remaining.y[ k++ ] = y[ i ];
+			}
+		}
+
+		candidates.subList( k, candidates.size() ).clear();
+
+		return remaining;
+	}
+
+	/**
+	 * Creates {@link PointFunctionMatch}es for the inliers only
+	 * 
+	 * @param points - the points this store was created from
+	 * @param function - the function to compute the distances to
+	 * @return the inliers
+	 */
+	public ArrayList< PointFunctionMatch > getInlierMatches( final List< ? extends Point > points, final AbstractFunction< ? > function )
+	{
+		final ArrayList< PointFunctionMatch > matches = new ArrayList< PointFunctionMatch >( numInliers );
+
+		for ( int j = 0; j < numInliers; ++j )
+		{
+			final PointFunctionMatch pm = new PointFunctionMatch( points.get( inlierIndices[ j ] ) );
+			pm.apply( function );
+			matches.add( pm );
+		}
+
+		return matches;
+	}
+
+	/**
+	 * Sorts indices by their x-coordinate, equal x-coordinates are sorted by index
+	 * (so the result is the same as a stable sort of increasing indices).
+	 * 
+	 * @param x - the x-coordinates
+	 * @param indices - the indices
+	 * @param from - first index (inclusive)
+	 * @param to - last index (exclusive)
+	 */
+	public static void sortByX( final double[] x, final int[] indices, final int from, final int to )
+	{
+		if ( to - from < 16 )
+		{
+			for ( int i = from + 1; i < to; ++i )
+			{
+				final int index = indices[ i ];
+				int j = i - 1;
+
+				while ( j >= from && isLarger( x, indices[ j ], index ) )
+				{
+					indices[ j + 1 ] = indices[ j ];
+					--j;
+				}
+
+				indices[ j + 1 ] = index;
+			}
+
+			return;
+		}
+
+		final int pivot = indices[ ( from + to ) >>> 1 ];
+		int i = from, j = to - 1;
+
+		while ( i <= j )
+		{
+			while ( isLarger( x, pivot, indices[ i ] ) )
+				++i;
+
+			while ( isLarger( x, indices[ j ], pivot ) )
+				--j;
+
+			if ( i <= j )
+			{
+				final int tmp = indices[ i ];
+				indices[ i++ ] = indices[ j ];
+				indices[ j-- ] = tmp;
+			}
+		}
+
+		if ( from < j )
+			sortByX( x, indices, from, j + 1 );
+
+		if ( i < to - 1 )
+			sortByX( x, indices, i, to );
+	}
+
+	private static final boolean isLarger( final double[] x, final int i, final int j )
+	{
+		return x[ i ] > x[ j ] || ( x[ i ] == x[ j ] && i > j );
+	}
+}
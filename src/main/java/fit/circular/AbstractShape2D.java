@@ -32,15 +32,16 @@
  */
 package fit.circular;
 
-import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashSet;
 import java.util.List;
 
 import fit.AbstractFunction;
 import fit.PointFunctionMatch;
+import fit.PointStore;
+import fit.ransac.HypothesisTest;
+import fit.ransac.Ransac;
+import fit.ransac.RansacSettings;
 import mpicbg.models.AbstractModel;
-import mpicbg.models.IllDefinedDataPointsException;
 import mpicbg.models.NotEnoughDataPointsException;
 import mpicbg.models.PointMatch;
 
@@ -76,7 +77,6 @@ public abstract class AbstractShape2D< M extends AbstractShape2D< M > > extends
 	 * @return true if {@link AbstractModel} could be estimated and inliers is not
 	 *   empty, false otherwise.  If false, {@link AbstractModel} remains unchanged.
 	 */
-	@SuppressWarnings("deprecation")
 	final public < P extends PointFunctionMatch >boolean ransac(
 			final List< P > candidates,
 			final Collection< P > inliers,
@@ -88,71 +88,65 @@ public abstract class AbstractShape2D< M extends AbstractShape2D< M > > extends
 			final double maxArea )
 		throws NotEnoughDataPointsException
 	{
-		if ( candidates.size() < getMinNumMatches() )
-			throw new NotEnoughDataPointsException( candidates.size() + " data points are not enough to solve the Model, at least " + getMinNumMatches() + " data points required." );
+		return ransac( candidates, inliers, iterations, epsilon, minInlierRatio, minNumInliers, minArea, maxArea, new RansacSettings() );
+	}
 
-		cost = Double.MAX_VALUE;
+	final public < P extends PointFunctionMatch >boolean ransac(
+			final List< P > candidates,
+			final Collection< P > inliers,
+			final int iterations,
+			final double epsilon,
+			final double minInlierRatio,
+			final int minNumInliers,
+			final double minArea,
+			final double maxArea,
+			final RansacSettings settings )
+		throws NotEnoughDataPointsException
+	{
+		inliers.clear();
 
-		final M copy = copy();
-		final M m = copy();
+		final PointStore store = PointStore.fromMatches( candidates );
 
-		inliers.clear();
+		if ( !ransac( store, iterations, epsilon, minInlierRatio, minNumInliers, minArea, maxArea, settings ) )
+			return false;
 
-		int i = 0;
-		final HashSet< P > minMatches = new HashSet< P >();
+		store.getInliers( candidates, inliers );
+		return true;
+	}
 
-A:		while ( i < iterations )
+	@SuppressWarnings("unchecked")
+	public boolean ransac(
+			final PointStore store,
+			final int iterations,
+			final double epsilon,
+			final double minInlierRatio,
+			final int minNumInliers,
+			final double minArea,
+			final double maxArea,
+			final RansacSettings settings )
+		throws NotEnoughDataPointsException
+	{
+		final HypothesisTest< M > test = new HypothesisTest< M >()
 		{
-			// choose model.MIN_SET_SIZE disjunctive matches randomly
-			minMatches.clear();
-			for ( int j = 0; j < getMinNumMatches(); ++j )
-			{
-				P p;
-				do
-				{
-					p = candidates.get( ( int )( rnd.nextDouble() * candidates.size() ) );
-				}
-				while ( minMatches.contains( p ) );
-				minMatches.add( p );
-			}
-			try { m.fit( minMatches ); }
-			catch ( final IllDefinedDataPointsException e )
+			@Override
+			public boolean test( final M model, final PointStore store )
 			{
-				++i;
-				continue;
+				return model.test( store, epsilon, minInlierRatio, minNumInliers, minArea, maxArea );
 			}
 
-			final ArrayList< P > tempInliers = new ArrayList< P >();
-
-			int numInliers = 0;
-			boolean isGood = m.test( candidates, tempInliers, epsilon, minInlierRatio, minNumInliers, minArea, maxArea );
-			while ( isGood && numInliers < tempInliers.size() )
-			{
-				numInliers = tempInliers.size();
-				try { m.fit( tempInliers ); }
-				catch ( final IllDefinedDataPointsException e )
-				{
-					++i;
-					continue A;
-				}
-				isGood = m.test( candidates, tempInliers, epsilon, minInlierRatio, minNumInliers, minArea, maxArea );
-			}
-			if (
-					isGood &&
-					m.betterThan( copy ) &&
-					tempInliers.size() >= minNumInliers )
+			@Override
+			public boolean testResiduals( final M model, final PointStore store )
 			{
-				copy.set( m );
-				inliers.clear();
-				inliers.addAll( tempInliers );
+				store.clearInliers();
+				return model.testResiduals( store, epsilon, minInlierRatio, minNumInliers, minArea, maxArea );
 			}
-			++i;
-		}
-		if ( inliers.size() == 0 )
-			return false;
 
-		set( copy );
-		return true;
+			@Override
+			public double getEpsilon() { return epsilon; }
+		};
+
+		// the area is already checked right after the minimal fit
+		return Ransac.ransac( ( M )this, store, iterations, minNumInliers, test, new AreaConstraint< M >( minArea, maxArea ), rnd, settings );
 	}
 
 	/*
@@ -189,4 +183,37 @@ A:		while ( i < iterations )
 		else
 			return false;
 	}
+
+	public boolean test(
+			final PointStore store,
+			final double epsilon,
+			final double minInlierRatio,
+			final int minNumInliers,
+			final double minArea,
+			final double maxArea )
+	{
+		final double a = this.area();
+
+		if ( a >= minArea && a <= maxArea && this.test( store, epsilon, minInlierRatio, minNumInliers ) )
+			return true;
+		else
+			return false;
+	}
+
+	/**
+	 * Same as {@link #test(PointStore, double, double, int, double, double)}, but uses the residuals
+	 * that are already in the {@link PointStore}. The inliers must be cleared.
+	 */
+	public boolean testResiduals(
+			final PointStore store,
+			final double epsilon,
+			final double minInlierRatio,
+			final int minNumInliers,
+			final double minArea,
+			final double maxArea )
+	{
+		final double a = this.area();
+
+		return a >= minArea && a <= maxArea && this.testResiduals( store, epsilon, minInlierRatio, minNumInliers );
+	}
 }
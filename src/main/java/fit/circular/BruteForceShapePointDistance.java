@@ -76,6 +76,43 @@ public class BruteForceShapePointDistance< S extends ClosedContinousShape2D > im
 		return Math.sqrt( minSqDist );
 	}
 
+	@Override
+	public void distanceTo( final double[] xs, final double[] ys, final int from, final int to, final double[] out )
+	{
+		// sample the outline only once for all points
+		int numSteps = 0;
+		for ( double t = 0; t < 2*Math.PI; t += step )
+			++numSteps;
+
+		final double[] outlineX = new double[ numSteps ];
+		final double[] outlineY = new double[ numSteps ];
+
+		int j = 0;
+		for ( double t = 0; t < 2*Math.PI; t += step )
+		{
+			outlineX[ j ] = shape.getPointXAt( t );
+			outlineY[ j++ ] = shape.getPointYAt( t );
+		}
+
+		for ( int i = from; i < to; ++i )
+		{
+			final double x0 = xs[ i ];
+			final double y0 = ys[ i ];
+
+			double minSqDist = Double.MAX_VALUE;
+
+			for ( int k = 0; k < numSteps; ++k )
+			{
+				final double sqDist = TransformUtil.squareDistance( outlineX[ k ] - x0, outlineY[ k ] - y0 );
+
+				if ( sqDist < minSqDist )
+					minSqDist = sqDist;
+			}
+
+			out[ i ] = Math.sqrt( minSqDist );
+		}
+	}
+
 	@Override
 	public void notifyParameterChange()
 	{
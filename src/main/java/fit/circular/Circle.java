@@ -35,6 +35,8 @@ package fit.circular;
 import java.util.ArrayList;
 import java.util.Collection;
 
+import fit.IncrementalFunction;
+import fit.PointStore;
 import fit.util.TransformUtil;
 import ij.ImageJ;
 import ij.ImagePlus;
@@ -46,7 +48,7 @@ import mpicbg.models.NotEnoughDataPointsException;
 import mpicbg.models.Point;
 import net.imglib2.img.display.imagej.ImageJFunctions;
 
-public class Circle extends AbstractShape2D< Circle >
+public class Circle extends AbstractShape2D< Circle > implements IncrementalFunction< CircleSums >
 {
 	private static final long serialVersionUID = 583246361064913748L;
 
@@ -189,6 +191,121 @@ public class Circle extends AbstractShape2D< Circle >
 		this.v += y;
 	}
 
+	@Override
+	public void fitFunction( final PointStore store, final int[] indices, final int from, final int to ) throws NotEnoughDataPointsException
+	{
+		final int numPoints = to - from;
+
+		if ( numPoints < minNumPoints )
+			throw new NotEnoughDataPointsException( "Not enough points, at least " + minNumPoints + " are necessary and available are: " + numPoints );
+
+		if ( numPoints == minNumPoints )
+		{
+			circumcircle(
+					store.x[ indices[ from ] ], store.y[ indices[ from ] ],
+					store.x[ indices[ from + 1 ] ], store.y[ indices[ from + 1 ] ],
+					store.x[ indices[ from + 2 ] ], store.y[ indices[ from + 2 ] ] );
+			return;
+		}
+
+		// calculate mean centroid
+		double x, y;
+		x = y = 0;
+
+		for ( int j = from; j < to; ++j )
+		{
+			x += store.x[ indices[ j ] ];
+			y += store.y[ indices[ j ] ];
+		}
+
+		x /= numPoints;
+		y /= numPoints;
+
+		// calculate the rest
+		double uu, uv, vv, uuu, uuv, uvv, vvv;
+		uu = uv = vv = uuu = uuv = uvv = vvv = 0;
+		for ( int j = from; j < to; ++j )
+		{
+			final double u = store.x[ indices[ j ] ] - x;
+			final double v = store.y[ indices[ j ] ] - y;
+			uu += u * u;
+			uv += u * v;
+			vv += v * v;
+			uuu += u * u * u;
+			uuv += u * u * v;
+			uvv += u * v * v;
+			vvv += v * v * v;
+		}
+
+		// calculate center & radius
+		final double f = 0.5 / (uu * vv - uv * uv);
+		this.u = (vv * (uuu + uvv) - uv * (uuv + vvv)) * f;
+		this.v = (-uv * (uuu + uvv) + uu * (uuv + vvv)) * f;
+		this.r = Math.sqrt( this.u * this.u + this.v * this.v + (uu + vv) / numPoints);
+
+		this.u += x;
+		this.v += y;
+	}
+
+	/**
+	 * The circle through three points, the minimal solver for RANSAC hypotheses
+	 * (center and radius are infinite or NaN if the points are collinear)
+	 */
+	public void circumcircle(
+			final double x1, final double y1,
+			final double x2, final double y2,
+			final double x3, final double y3 )
+	{
+		// relative to the first point
+		final double ax = x2 - x1, ay = y2 - y1;
+		final double bx = x3 - x1, by = y3 - y1;
+
+		final double aa = ax * ax + ay * ay;
+		final double bb = bx * bx + by * by;
+		final double f = 0.5 / ( ax * by - ay * bx );
+
+		final double u = ( by * aa - ay * bb ) * f;
+		final double v = ( ax * bb - bx * aa ) * f;
+
+		this.r = Math.sqrt( u * u + v * v );
+		this.u = u + x1;
+		this.v = v + y1;
+	}
+
+	@Override
+	public CircleSums createStatistics() { return new CircleSums(); }
+
+	@Override
+	public void fitFunction( final CircleSums s ) throws NotEnoughDataPointsException
+	{
+		final int numPoints = s.size();
+
+		if ( numPoints < minNumPoints )
+			throw new NotEnoughDataPointsException( "Not enough points, at least " + minNumPoints + " are necessary and available are: " + numPoints );
+
+		// mean centroid
+		final double x = s.sx / numPoints;
+		final double y = s.sy / numPoints;
+
+		// the central moments from the raw moments
+		final double uu = s.sxx - numPoints * x * x;
+		final double uv = s.sxy - numPoints * x * y;
+		final double vv = s.syy - numPoints * y * y;
+		final double uuu = s.sxxx - 3 * x * s.sxx + 2 * numPoints * x * x * x;
+		final double uuv = s.sxxy - 2 * x * s.sxy - y * s.sxx + 2 * numPoints * x * x * y;
+		final double uvv = s.sxyy - 2 * y * s.sxy - x * s.syy + 2 * numPoints * x * y * y;
+		final double vvv = s.syyy - 3 * y * s.syy + 2 * numPoints * y * y * y;
+
+		// calculate center & radius
+		final double f = 0.5 / (uu * vv - uv * uv);
+		this.u = (vv * (uuu + uvv) - uv * (uuv + vvv)) * f;
+		this.v = (-uv * (uuu + uvv) + uu * (uuv + vvv)) * f;
+		this.r = Math.sqrt( this.u * this.u + this.v * this.v + (uu + vv) / numPoints);
+
+		this.u += x;
+		this.v += y;
+	}
+
 	@Override
 	public double eval( final double x, final double y )
 	{
@@ -207,6 +324,22 @@ public class Circle extends AbstractShape2D< Circle >
 		return Math.abs( Math.sqrt( x1*x1 + y1*y1 ) - getR() );
 	}
 
+	@Override
+	public void distanceTo( final double[] xs, final double[] ys, final int from, final int to, final double[] out )
+	{
+		final double u = this.u;
+		final double v = this.v;
+		final double r = this.r;
+
+		for ( int i = from; i < to; ++i )
+		{
+			final double x1 = xs[ i ] - u;
+			final double y1 = ys[ i ] - v;
+
+			out[ i ] = Math.abs( Math.sqrt( x1*x1 + y1*y1 ) - r );
+		}
+	}
+
 	@Override
 	public void set( final Circle m )
 	{
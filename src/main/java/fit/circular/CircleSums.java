@@ -0,0 +1,92 @@
+/*-
+ * #%L
+ * code for function fitting
+ * %%
+ * Copyright (C) 2015 - 2025 Developers
+ * %%
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * 3. Neither the name of the Preibisch Lab nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package fit.circular;
+
+import fit.SufficientStatistics;
+
+/**
+ * The raw moments up to order 3 of 2d points, sufficient to fit a {@link Circle}.
+ * 
+ * @author Stephan Preibisch
+ */
+public class CircleSums implements SufficientStatistics
+{
+	public int n;
+	public double sx, sy, sxx, sxy, syy, sxxx, sxxy, sxyy, syyy;
+
+	@Override
+	public void add( final double x, final double y )
+	{
+		final double xx = x * x;
+		final double yy = y * y;
+
+		++n;
+		sx += x;
+		sy += y;
+		sxx += xx;
+		sxy += x * y;
+		syy += yy;
+		sxxx += xx * x;
+		sxxy += xx * y;
+		sxyy += x * yy;
+		syyy += yy * y;
+	}
+
+	@Override
+	public void remove( final double x, final double y )
+	{
+		final double xx = x * x;
+		final double yy = y * y;
+
+		--n;
+		sx -= x;
+		sy -= y;
+		sxx -= xx;
+		sxy -= x * y;
+		syy -= yy;
+		sxxx -= xx * x;
+		sxxy -= xx * y;
+		sxyy -= x * yy;
+		syyy -= yy * y;
+	}
+
+	@Override
+	public void clear()
+	{
+		n = 0;
+		sx = sy = sxx = sxy = syy = sxxx = sxxy = sxyy = syyy = 0;
+	}
+
+	@Override
+	public int size() { return n; }
+}
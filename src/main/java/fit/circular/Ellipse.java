@@ -44,6 +44,8 @@ import org.ejml.interfaces.linsol.LinearSolver;
 import org.ejml.interfaces.linsol.LinearSolverDense;
 import org.ejml.dense.row.CommonOps_DDRM;
 
+import fit.PointStore;
+import fit.util.MatrixFunctions;
 import fit.util.TransformUtil;
 import ij.ImageJ;
 import ij.ImagePlus;
@@ -68,7 +70,7 @@ public class Ellipse extends AbstractShape2D< Ellipse >
 	 */
 	private static final long serialVersionUID = 5342301083570896246L;
 
-	final static int minNumPoints = 4;
+	final static int minNumPoints = 5;
 
 	/**
 	 * coefficients
@@ -85,6 +87,12 @@ public class Ellipse extends AbstractShape2D< Ellipse >
 	 */
 	protected AffineModel2D ellipseToUnitCircle;
 
+	/**
+	 * workspace of the five point solver
+	 */
+	final protected double[][] conicRows = new double[ minNumPoints ][ 6 ];
+	final protected double[] conic = new double[ 6 ], sampleX = new double[ minNumPoints ], sampleY = new double[ minNumPoints ];
+
 	/**
 	 * the function that computes the distance between a point and an ellipse
 	 */
@@ -210,42 +218,58 @@ public class Ellipse extends AbstractShape2D< Ellipse >
 		if ( numPoints < minNumPoints )
 			throw new NotEnoughDataPointsException( "Not enough points, at least " + minNumPoints + " are necessary and available are: " + numPoints );
 
-		// fitting code taken from: https://www.javatips.net/api/GeoRegression-master/main/src/georegression/fitting/ellipse/FitEllipseAlgebraic.java
-		// @author Peter Abeles (released under http://www.apache.org/licenses/LICENSE-2.0)
+		// Construct the design matrices. linear and quadratic
+		final DMatrixRMaj D1 = new DMatrixRMaj( numPoints, 3 );
+		final DMatrixRMaj D2 = new DMatrixRMaj( numPoints, 3 );
+		int index = 0;
 
-		// qudratic part of design matrix
-		final DMatrixRMaj D1 = new DMatrixRMaj( 3, 1 );
-		// linear part of design matrix
-		final DMatrixRMaj D2 = new DMatrixRMaj( 3, 1 );
+		for ( final Point p : points )
+		{
+			final double x = p.getW()[ 0 ];
+			final double y = p.getW()[ 1 ];
 
-		// quadratic part of scatter matrix
-		final DMatrixRMaj S1 = new DMatrixRMaj( 3, 3 );
-		// combined part of scatter matrix
-		final DMatrixRMaj S2 = new DMatrixRMaj( 3, 3 );
-		// linear part of scatter matrix
-		final DMatrixRMaj S3 = new DMatrixRMaj( 3, 3 );
-		// Reduced scatter matrix
-		final DMatrixRMaj M = new DMatrixRMaj( 3, 3 );
+			// fill in each row one at a time
+			D1.data[ index ] = x * x;
+			D2.data[ index++ ] = x;
+			D1.data[ index ] = x * y;
+			D2.data[ index++ ] = y;
+			D1.data[ index ] = y * y;
+			D2.data[ index++ ] = 1;
+		}
 
-		// storage for intermediate steps
-		final DMatrixRMaj T = new DMatrixRMaj( 3, 3 );
-		final DMatrixRMaj Ta1 = new DMatrixRMaj( 3, 1 );
-		final DMatrixRMaj S2_tran = new DMatrixRMaj( 3, 3 );
+		fitFunction( D1, D2 );
+	}
 
-		final LinearSolverDense<DMatrixRMaj> solver = LinearSolverFactory_DDRM.linear( 3 );
-		final EigenDecomposition< DMatrixRMaj > eigen = DecompositionFactory_DDRM.eig( 3, true, false );
+	@Override
+	public void fitFunction( final PointStore store, final int[] indices, final int from, final int to )
+			throws NotEnoughDataPointsException, IllDefinedDataPointsException
+	{
+		final int numPoints = to - from;
+
+		if ( numPoints < minNumPoints )
+			throw new NotEnoughDataPointsException( "Not enough points, at least " + minNumPoints + " are necessary and available are: " + numPoints );
 
-		final int N = points.size();
+		if ( numPoints == minNumPoints )
+		{
+			for ( int j = 0; j < numPoints; ++j )
+			{
+				sampleX[ j ] = store.x[ indices[ from + j ] ];
+				sampleY[ j ] = store.y[ indices[ from + j ] ];
+			}
+
+			fitConic( sampleX, sampleY );
+			return;
+		}
 
 		// Construct the design matrices. linear and quadratic
-		D1.reshape( N, 3 );
-		D2.reshape( N, 3 );
+		final DMatrixRMaj D1 = new DMatrixRMaj( numPoints, 3 );
+		final DMatrixRMaj D2 = new DMatrixRMaj( numPoints, 3 );
 		int index = 0;
 
-		for ( final Point p : points )
+		for ( int j = from; j < to; ++j )
 		{
-			final double x = p.getW()[ 0 ];
-			final double y = p.getW()[ 1 ];
+			final double x = store.x[ indices[ j ] ];
+			final double y = store.y[ indices[ j ] ];
 
 			// fill in each row one at a time
 			D1.data[ index ] = x * x;
@@ -256,6 +280,108 @@ public class Ellipse extends AbstractShape2D< Ellipse >
 			D2.data[ index++ ] = 1;
 		}
 
+		fitFunction( D1, D2 );
+	}
+
+	/**
+	 * The conic through five points, the minimal solver for RANSAC hypotheses. The points are centered
+	 * and scaled before solving the linear system, so the precision does not depend on their position.
+	 * 
+	 * @param x - the x of the five points
+	 * @param y - the y of the five points
+	 * @throws IllDefinedDataPointsException if the points do not define a unique conic or it is not an ellipse
+	 */
+	public void fitConic( final double[] x, final double[] y ) throws IllDefinedDataPointsException
+	{
+		final int n = minNumPoints;
+
+		double mx = 0, my = 0, scale = 0;
+
+		for ( int j = 0; j < n; ++j )
+		{
+			mx += x[ j ];
+			my += y[ j ];
+		}
+
+		mx /= n;
+		my /= n;
+
+		for ( int j = 0; j < n; ++j )
+			scale += Math.sqrt( ( x[ j ] - mx ) * ( x[ j ] - mx ) + ( y[ j ] - my ) * ( y[ j ] - my ) );
+
+		scale /= n;
+
+		if ( !( scale > 0 ) )
+			throw new IllDefinedDataPointsException( "Could not fit conic, all points are equal" );
+
+		// A*u^2 + B*u*v + C*v^2 + D*u + E*v + F = 0 with u = ( x - mx ) / scale, v = ( y - my ) / scale
+		for ( int j = 0; j < n; ++j )
+		{
+			final double u = ( x[ j ] - mx ) / scale;
+			final double v = ( y[ j ] - my ) / scale;
+			final double[] row = conicRows[ j ];
+
+			row[ 0 ] = u * u;
+			row[ 1 ] = u * v;
+			row[ 2 ] = v * v;
+			row[ 3 ] = u;
+			row[ 4 ] = v;
+			row[ 5 ] = 1;
+		}
+
+		try
+		{
+			MatrixFunctions.nullVector( conicRows, conic );
+		}
+		catch ( final NoninvertibleModelException e )
+		{
+			throw new IllDefinedDataPointsException( "Could not fit conic, the points are degenerate" );
+		}
+
+		// same sign as the least-squares fit, positive definite quadratic part
+		final double sign = conic[ 0 ] + conic[ 2 ] < 0 ? -1 : 1;
+		final double A = sign * conic[ 0 ], B = sign * conic[ 1 ], C = sign * conic[ 2 ];
+		final double D = sign * conic[ 3 ] * scale, E = sign * conic[ 4 ] * scale, F = sign * conic[ 5 ] * scale * scale;
+
+		if ( !( 4 * A * C - B * B > 0 ) )
+			throw new IllDefinedDataPointsException( "Could not fit ellipse, the conic through the points is not an ellipse" );
+
+		// multiplied by scale^2 and expanded
+		this.a = A;
+		this.b = B / 2;
+		this.c = C;
+		this.d = ( D - 2 * A * mx - B * my ) / 2;
+		this.e = ( E - B * mx - 2 * C * my ) / 2;
+		this.f = A * mx * mx + B * mx * my + C * my * my - D * mx - E * my + F;
+
+		computeEllipseParameters();
+	}
+
+	/**
+	 * Fits the ellipse given the quadratic (D1) and linear (D2) part of the design matrix
+	 */
+	protected void fitFunction( final DMatrixRMaj D1, final DMatrixRMaj D2 ) throws IllDefinedDataPointsException
+	{
+		// fitting code taken from: https://www.javatips.net/api/GeoRegression-master/main/src/georegression/fitting/ellipse/FitEllipseAlgebraic.java
+		// @author Peter Abeles (released under http://www.apache.org/licenses/LICENSE-2.0)
+
+		// quadratic part of scatter matrix
+		final DMatrixRMaj S1 = new DMatrixRMaj( 3, 3 );
+		// combined part of scatter matrix
+		final DMatrixRMaj S2 = new DMatrixRMaj( 3, 3 );
+		// linear part of scatter matrix
+		final DMatrixRMaj S3 = new DMatrixRMaj( 3, 3 );
+		// Reduced scatter matrix
+		final DMatrixRMaj M = new DMatrixRMaj( 3, 3 );
+
+		// storage for intermediate steps
+		final DMatrixRMaj T = new DMatrixRMaj( 3, 3 );
+		final DMatrixRMaj Ta1 = new DMatrixRMaj( 3, 1 );
+		final DMatrixRMaj S2_tran = new DMatrixRMaj( 3, 3 );
+
+		final LinearSolverDense<DMatrixRMaj> solver = LinearSolverFactory_DDRM.linear( 3 );
+		final EigenDecomposition< DMatrixRMaj > eigen = DecompositionFactory_DDRM.eig( 3, true, false );
+
 		// Compute scatter matrix
 		CommonOps_DDRM.multTransA( D1, D1, S1 ); // S1 = D1'*D1
 		CommonOps_DDRM.multTransA( D1, D2, S2 ); // S2 = D1'*D2
@@ -319,6 +445,12 @@ public class Ellipse extends AbstractShape2D< Ellipse >
 		return distF.distanceTo( point );
 	}
 
+	@Override
+	public void distanceTo( final double[] xs, final double[] ys, final int from, final int to, final double[] out )
+	{
+		distF.distanceTo( xs, ys, from, to, out );
+	}
+
 	@Override
 	public Ellipse copy()
 	{
@@ -85,6 +85,25 @@ public class EllipsePointDistance implements ShapePointDistance< Ellipse, Ellips
 		return closestPoint( e.rAxis0, e.rAxis1, i, iter );
 	}
 
+	@Override
+	public void distanceTo( final double[] xs, final double[] ys, final int from, final int to, final double[] out )
+	{
+		final AffineModel2D axisAlign = this.axisAlign;
+		final double rAxis0 = e.rAxis0;
+		final double rAxis1 = e.rAxis1;
+		final double[] i = new double[ 2 ];
+
+		for ( int j = from; j < to; ++j )
+		{
+			// we transform the intersection point into the axis-aligned ellipse
+			i[ 0 ] = xs[ j ];
+			i[ 1 ] = ys[ j ];
+			axisAlign.applyInPlace( i );
+
+			out[ j ] = closestPoint( rAxis0, rAxis1, i, iter );
+		}
+	}
+
 	private static final double nextT( final double t, final double px, final double py, final double a, final double b, final double a2, final double b2 )
 	{
 		final double cosT = Math.cos(t);
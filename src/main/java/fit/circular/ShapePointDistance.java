@@ -44,6 +44,17 @@ public interface ShapePointDistance< S extends ClosedContinousShape2D, D extends
 	 */
 	public double distanceTo( final Point point );
 
+	/*
+	 * computes the distance of many points to the closest point on the shape
+	 * 
+	 * @param xs - x-coordinates
+	 * @param ys - y-coordinates
+	 * @param from - first point (inclusive)
+	 * @param to - last point (exclusive)
+	 * @param out - out[ i ] is set to the distance of ( xs[ i ], ys[ i ] )
+	 */
+	public void distanceTo( final double[] xs, final double[] ys, final int from, final int to, final double[] out );
+
 	/*
 	 * called when the ellipse parameters change (fitting or setting)
 	 */
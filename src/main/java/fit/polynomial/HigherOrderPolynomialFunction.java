@@ -36,10 +36,12 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Random;
 
+import Jama.LUDecomposition;
 import Jama.Matrix;
 import Jama.QRDecomposition;
 import fit.AbstractFunction2D;
 import fit.PointFunctionMatch;
+import fit.PointStore;
 import fit.util.MatrixFunctions;
 import mpicbg.models.IllDefinedDataPointsException;
 import mpicbg.models.NotEnoughDataPointsException;
@@ -60,11 +62,16 @@ public class HigherOrderPolynomialFunction extends AbstractFunction2D< HigherOrd
 
 	public final double[] coeff;
 
+	// the points of a minimal sample and their divided differences
+	final double[] sampleX, sampleY;
+
 	public HigherOrderPolynomialFunction(final int degree)
 	{
 		this.degree = degree;
 		this.minNumPoints = degree + 1;
 		this.coeff = new double[degree + 1];
+		this.sampleX = new double[degree + 1];
+		this.sampleY = new double[degree + 1];
 	}
 
 	/**
@@ -114,6 +121,132 @@ public class HigherOrderPolynomialFunction extends AbstractFunction2D< HigherOrd
 			this.coeff[ j ] = coefficients.get( j, 0 );
 	}
 
+	@Override
+	public void fitFunction( final PointStore store, final int[] indices, final int from, final int to ) throws NotEnoughDataPointsException, IllDefinedDataPointsException
+	{
+		final int nPoints = to - from;
+
+		if ( nPoints < minNumPoints )
+			throw new NotEnoughDataPointsException("Not enough points, at least " + minNumPoints + " are necessary, available are " + nPoints );
+
+		if ( nPoints == minNumPoints )
+		{
+			for ( int i = 0; i < nPoints; ++i )
+			{
+				sampleX[ i ] = store.x[ indices[ from + i ] ];
+				sampleY[ i ] = store.y[ indices[ from + i ] ];
+			}
+
+			interpolate( sampleX, sampleY );
+			return;
+		}
+
+		// Vandermonde matrix
+		final double[][] vandermonde = new double[ nPoints ][ degree + 1 ];
+		final double[] y = new double[ nPoints ];
+
+		for ( int i = 0; i < nPoints; ++i )
+		{
+			final double x = store.x[ indices[ from + i ] ];
+
+			for ( int j = 0; j <= degree; ++j )
+				vandermonde[ i ][ j ] = NewtonRaphson.pow( x, j );
+
+			y[ i ] = store.y[ indices[ from + i ] ];
+		}
+
+		final Matrix X = new Matrix(vandermonde);
+
+		// create matrix from vector
+		final Matrix Y = new Matrix(y, nPoints);
+
+		// find least squares solution
+		final QRDecomposition qr = new QRDecomposition(X);
+
+		if ( !qr.isFullRank() )
+			throw new IllDefinedDataPointsException( "Less than " + minNumPoints + " distinct x, failed to fit function" );
+
+		final Matrix coefficients = qr.solve(Y);
+
+		for ( int j = degree; j >= 0; --j )
+			this.coeff[ j ] = coefficients.get( j, 0 );
+	}
+
+	/**
+	 * The polynomial through degree + 1 points (Newton's divided differences, expanded to the
+	 * coefficients), the minimal solver for RANSAC hypotheses.
+	 * 
+	 * @param x - the x of the points
+	 * @param y - the y of the points, it is overwritten with the divided differences
+	 * @throws IllDefinedDataPointsException if two x are equal
+	 */
+	public void interpolate( final double[] x, final double[] y ) throws IllDefinedDataPointsException
+	{
+		final int n = degree + 1;
+
+		for ( int k = 1; k < n; ++k )
+			for ( int i = n - 1; i >= k; --i )
+			{
+				if ( x[ i ] == x[ i - k ] )
+					throw new IllDefinedDataPointsException( "Two points have the same x, failed to fit function" );
+
+				y[ i ] = ( y[ i ] - y[ i - 1 ] ) / ( x[ i ] - x[ i - k ] );
+			}
+
+		// Horner's method on the Newton form, c = c * ( x - x_k ) + y_k
+		final double[] c = this.coeff;
+
+		for ( int j = 0; j < n; ++j )
+			c[ j ] = 0;
+
+		c[ 0 ] = y[ n - 1 ];
+
+		for ( int k = n - 2; k >= 0; --k )
+		{
+			for ( int j = n - 1 - k; j > 0; --j )
+				c[ j ] = c[ j - 1 ] - x[ k ] * c[ j ];
+
+			c[ 0 ] = y[ k ] - x[ k ] * c[ 0 ];
+		}
+	}
+
+	/**
+	 * Fits the polynomial to power sums (their degree must be &gt;= the degree of this polynomial)
+	 * by solving the normal equations.
+	 * 
+	 * @param sums - the power sums
+	 * @throws NotEnoughDataPointsException - if there are not enough points
+	 * @throws IllDefinedDataPointsException - if the normal equations are singular
+	 */
+	public void fitFunction( final PolynomialSums sums ) throws NotEnoughDataPointsException, IllDefinedDataPointsException
+	{
+		final int nPoints = sums.size();
+
+		if ( nPoints < minNumPoints )
+			throw new NotEnoughDataPointsException("Not enough points, at least " + minNumPoints + " are necessary, available are " + nPoints );
+
+		final double[][] delta = new double[ degree + 1 ][ degree + 1 ];
+		final double[] tetha = new double[ degree + 1 ];
+
+		for ( int r = 0; r <= degree; ++r )
+		{
+			for ( int c = 0; c <= degree; ++c )
+				delta[ r ][ c ] = sums.xPow[ r + c ];
+
+			tetha[ r ] = sums.xPowY[ r ];
+		}
+
+		final LUDecomposition lu = new LUDecomposition( new Matrix( delta ) );
+
+		if ( !lu.isNonsingular() )
+			throw new IllDefinedDataPointsException( "Cannot not invert Delta-Matrix, failed to fit function" );
+
+		final Matrix coefficients = lu.solve( new Matrix( tetha, degree + 1 ) );
+
+		for ( int j = degree; j >= 0; --j )
+			this.coeff[ j ] = coefficients.get( j, 0 );
+	}
+
 	public void fitFunction2(final Collection< Point > points ) throws NotEnoughDataPointsException, IllDefinedDataPointsException
 	{
 		final int numPoints = points.size();
@@ -175,6 +308,21 @@ public class HigherOrderPolynomialFunction extends AbstractFunction2D< HigherOrd
 		return new NewtonRaphson( rndx, degree ).run( x1, y1, coeff );
 	}
 
+	@Override
+	public void distanceTo( final double[] xs, final double[] ys, final int from, final int to, final double[] out )
+	{
+		final NewtonRaphson nr = new NewtonRaphson( rndx, degree );
+
+		for ( int i = from; i < to; ++i )
+		{
+			// same start values as a new NewtonRaphson for every point
+			if ( i > from )
+				nr.init();
+
+			out[ i ] = nr.run( xs[ i ], ys[ i ], coeff );
+		}
+	}
+
 	@Override
 	public void set( final HigherOrderPolynomialFunction p )
 	{
@@ -36,11 +36,15 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.HashSet;
 import java.util.List;
 
 import fit.AbstractFunction2D;
+import fit.IncrementalFunction;
 import fit.PointFunctionMatch;
+import fit.PointStore;
+import fit.ransac.HypothesisTest;
+import fit.ransac.Ransac;
+import fit.ransac.RansacSettings;
 import fit.util.MatrixFunctions;
 import mpicbg.models.AbstractModel;
 import mpicbg.models.IllDefinedDataPointsException;
@@ -51,7 +55,7 @@ import mpicbg.models.PointMatch;
 /**
  * @author Stephan Preibisch (stephan.preibisch@gmx.de) and Timothee Lionnet
  */
-public class LinearFunction extends AbstractFunction2D< LinearFunction > implements Polynomial< LinearFunction, Point >
+public class LinearFunction extends AbstractFunction2D< LinearFunction > implements Polynomial< LinearFunction, Point >, IncrementalFunction< PolynomialSums >
 {
 	private static final long serialVersionUID = 5289346951323596267L;
 
@@ -128,6 +132,73 @@ public class LinearFunction extends AbstractFunction2D< LinearFunction > impleme
 		this.n = delta[ 2 ] * tetha[ 0 ] + delta[ 3 ] * tetha[ 1 ];
 	}
 
+	@Override
+	public void fitFunction( final PointStore store, final int[] indices, final int from, final int to ) throws NotEnoughDataPointsException
+	{
+		final int numPoints = to - from;
+
+		if ( numPoints < minNumPoints )
+			throw new NotEnoughDataPointsException( "Not enough points, at least " + minNumPoints + " are necessary and available are: " + numPoints );
+
+		if ( numPoints == minNumPoints )
+		{
+			interpolate( store.x[ indices[ from ] ], store.y[ indices[ from ] ], store.x[ indices[ from + 1 ] ], store.y[ indices[ from + 1 ] ] );
+			return;
+		}
+
+		double sxx = 0, sx = 0, sxy = 0, sy = 0;
+
+		for ( int j = from; j < to; ++j )
+		{
+			final double x = store.x[ indices[ j ] ];
+			final double y = store.y[ indices[ j ] ];
+
+			sxx += x*x;
+			sx += x;
+
+			sxy += x*y;
+			sy += y;
+		}
+
+		solve( numPoints, sxx, sx, sxy, sy );
+	}
+
+	/**
+	 * The line through two points, the minimal solver for RANSAC hypotheses
+	 * (the slope is infinite or NaN if x1 == x2)
+	 */
+	public void interpolate( final double x1, final double y1, final double x2, final double y2 )
+	{
+		this.m = ( y2 - y1 ) / ( x2 - x1 );
+		this.n = y1 - m * x1;
+	}
+
+	@Override
+	public PolynomialSums createStatistics() { return new PolynomialSums( 1 ); }
+
+	/**
+	 * Fits the function to the first power sums (degree &gt;= 1)
+	 */
+	@Override
+	public void fitFunction( final PolynomialSums sums ) throws NotEnoughDataPointsException
+	{
+		final int numPoints = sums.size();
+
+		if ( numPoints < minNumPoints )
+			throw new NotEnoughDataPointsException( "Not enough points, at least " + minNumPoints + " are necessary and available are: " + numPoints );
+
+		solve( numPoints, sums.xPow[ 2 ], sums.xPow[ 1 ], sums.xPowY[ 1 ], sums.xPowY[ 0 ] );
+	}
+
+	protected void solve( final double numPoints, final double sxx, final double sx, final double sxy, final double sy )
+	{
+		// invert matrix (same as MatrixFunctions.invert2x2)
+		final double det = 1.0 / ( sxx*numPoints - sx*sx );
+
+		this.m = ( numPoints * det ) * sxy + ( -sx * det ) * sy;
+		this.n = ( -sx * det ) * sxy + ( sxx * det ) * sy;
+	}
+
 	@Override
 	public double distanceTo( final Point point )
 	{
@@ -137,6 +208,17 @@ public class LinearFunction extends AbstractFunction2D< LinearFunction > impleme
 		return Math.abs( y1 - m*x1 - n ) / ( Math.sqrt( m*m + 1 ) );
 	}
 
+	@Override
+	public void distanceTo( final double[] xs, final double[] ys, final int from, final int to, final double[] out )
+	{
+		final double m = this.m;
+		final double n = this.n;
+		final double norm = Math.sqrt( m*m + 1 );
+
+		for ( int i = from; i < to; ++i )
+			out[ i ] = Math.abs( ys[ i ] - m*xs[ i ] - n ) / norm;
+	}
+
 	@Override
 	public void set( final LinearFunction m )
 	{
@@ -182,7 +264,6 @@ public class LinearFunction extends AbstractFunction2D< LinearFunction > impleme
 	 * @return true if {@link AbstractModel} could be estimated and inliers is not
 	 *   empty, false otherwise.  If false, {@link AbstractModel} remains unchanged.
 	 */
-	@SuppressWarnings("deprecation")
 	final public < P extends PointFunctionMatch >boolean ransac(
 			final List< P > candidates,
 			final Collection< P > inliers,
@@ -195,71 +276,69 @@ public class LinearFunction extends AbstractFunction2D< LinearFunction > impleme
 			final double maxSlope )
 		throws NotEnoughDataPointsException
 	{
-		if ( candidates.size() < getMinNumMatches() )
-			throw new NotEnoughDataPointsException( candidates.size() + " data points are not enough to solve the Model, at least " + getMinNumMatches() + " data points required." );
+		return ransac( candidates, inliers, iterations, epsilon, minInlierRatio, minNumInliers, maxGapDim0, minSlope, maxSlope, new RansacSettings() );
+	}
 
-		cost = Double.MAX_VALUE;
+	final public < P extends PointFunctionMatch >boolean ransac(
+			final List< P > candidates,
+			final Collection< P > inliers,
+			final int iterations,
+			final double epsilon,
+			final double minInlierRatio,
+			final int minNumInliers,
+			final double maxGapDim0,
+			final double minSlope,
+			final double maxSlope,
+			final RansacSettings settings )
+		throws NotEnoughDataPointsException
+	{
+		inliers.clear();
 
-		final LinearFunction copy = copy();
-		final LinearFunction m = copy();
+		final PointStore store = PointStore.fromMatches( candidates );
 
-		inliers.clear();
+		if ( !ransac( store, iterations, epsilon, minInlierRatio, minNumInliers, maxGapDim0, minSlope, maxSlope, settings ) )
+			return false;
 
-		int i = 0;
-		final HashSet< P > minMatches = new HashSet< P >();
+		store.getInliers( candidates, inliers );
+		return true;
+	}
 
-A:		while ( i < iterations )
+	public boolean ransac(
+			final PointStore store,
+			final int iterations,
+			final double epsilon,
+			final double minInlierRatio,
+			final int minNumInliers,
+			final double maxGapDim0,
+			final double minSlope,
+			final double maxSlope,
+			final RansacSettings settings )
+		throws NotEnoughDataPointsException
+	{
+		final HypothesisTest< LinearFunction > test = new HypothesisTest< LinearFunction >()
 		{
-			// choose model.MIN_SET_SIZE disjunctive matches randomly
-			minMatches.clear();
-			for ( int j = 0; j < getMinNumMatches(); ++j )
+			@Override
+			public boolean test( final LinearFunction model, final PointStore store )
 			{
-				P p;
-				do
-				{
-					p = candidates.get( ( int )( rnd.nextDouble() * candidates.size() ) );
-				}
-				while ( minMatches.contains( p ) );
-				minMatches.add( p );
+				return model.test( store, epsilon, minInlierRatio, minNumInliers, maxGapDim0, minSlope, maxSlope );
 			}
-			try { m.fit( minMatches ); }
-			catch ( final IllDefinedDataPointsException e )
+
+			@Override
+			public boolean testResiduals( final LinearFunction model, final PointStore store )
 			{
-				++i;
-				continue;
+				store.clearInliers();
+				return model.testResiduals( store, epsilon, minInlierRatio, minNumInliers, maxGapDim0, minSlope, maxSlope );
 			}
 
-			final ArrayList< P > tempInliers = new ArrayList< P >();
+			@Override
+			public double getEpsilon() { return epsilon; }
+		};
 
-			int numInliers = 0;
-			boolean isGood = m.test( candidates, tempInliers, epsilon, minInlierRatio, minNumInliers, maxGapDim0, minSlope, maxSlope );
-			while ( isGood && numInliers < tempInliers.size() )
-			{
-				numInliers = tempInliers.size();
-				try { m.fit( tempInliers ); }
-				catch ( final IllDefinedDataPointsException e )
-				{
-					++i;
-					continue A;
-				}
-				isGood = m.test( candidates, tempInliers, epsilon, minInlierRatio, minNumInliers, maxGapDim0, minSlope, maxSlope );
-			}
-			if (
-					isGood &&
-					m.betterThan( copy ) &&
-					tempInliers.size() >= minNumInliers )
-			{
-				copy.set( m );
-				inliers.clear();
-				inliers.addAll( tempInliers );
-			}
-			++i;
-		}
-		if ( inliers.size() == 0 )
-			return false;
+		// sort once before the store is shared between threads
+		store.getXOrder();
 
-		set( copy );
-		return true;
+		// hypotheses with a wrong slope are rejected right after the minimal fit, the chunks are checked again in the test
+		return Ransac.ransac( this, store, iterations, minNumInliers, test, new SlopeConstraint( minSlope, maxSlope ), rnd, settings );
 	}
 
 	/*
@@ -358,19 +437,140 @@ A:		while ( i < iterations )
 		return ( inliers.size() >= minNumInliers && ir > minInlierRatio );
 	}
 
-	@SuppressWarnings("deprecation")
+	public boolean test(
+			final PointStore store,
+			final double epsilon,
+			final double minInlierRatio,
+			final int minNumInliers,
+			final double maxGapDim0,
+			final double minSlope,
+			final double maxSlope )
+	{
+		store.clearInliers();
+		computeResiduals( store );
+
+		return testResiduals( store, epsilon, minInlierRatio, minNumInliers, maxGapDim0, minSlope, maxSlope );
+	}
+
+	/**
+	 * Same as {@link #test(PointStore, double, double, int, double, double, double)}, but uses the residuals
+	 * that are already in the {@link PointStore}. The inliers must be cleared.
+	 */
+	public boolean testResiduals(
+			final PointStore store,
+			final double epsilon,
+			final double minInlierRatio,
+			final int minNumInliers,
+			final double maxGapDim0,
+			final double minSlope,
+			final double maxSlope )
+	{
+		final double[] x = store.x;
+		final double[] y = store.y;
+		final double[] residual = store.residual;
+		final int[] order = store.getXOrder();
+
+		// a single pass over the points sorted by x, find the largest chunk of inliers without
+		// a gap > maxGapDim0 and a valid slope, the slope is computed from the sums of each chunk
+		int maxStart = 0, maxSize = 0, start = 0, size = 0, total = 0;
+		double lastX = 0, sxx = 0, sx = 0, sxy = 0, sy = 0;
+
+		for ( int p = 0; p < order.length; ++p )
+		{
+			final int i = order[ p ];
+
+			if ( residual[ i ] < epsilon )
+			{
+				final double xi = x[ i ];
+
+				if ( size > 0 && xi - lastX > maxGapDim0 )
+				{
+					if ( size > maxSize && slopeFits( size, sxx, sx, sxy, sy, minSlope, maxSlope ) )
+					{
+						maxStart = start;
+						maxSize = size;
+					}
+
+					size = 0;
+				}
+
+				if ( size == 0 )
+				{
+					start = p;
+					sxx = sx = sxy = sy = 0;
+				}
+
+				++size;
+				++total;
+				sxx += xi*xi;
+				sx += xi;
+				sxy += xi*y[ i ];
+				sy += y[ i ];
+				lastX = xi;
+			}
+		}
+
+		// a single inlier is kept without testing the slope
+		if ( size > maxSize && ( total == 1 || slopeFits( size, sxx, sx, sxy, sy, minSlope, maxSlope ) ) )
+		{
+			maxStart = start;
+			maxSize = size;
+		}
+
+		final int[] inliers = store.inlierIndices;
+		int numInliers = 0;
+
+		for ( int p = maxStart; numInliers < maxSize; ++p )
+			if ( residual[ order[ p ] ] < epsilon )
+				inliers[ numInliers++ ] = order[ p ];
+
+		store.setInliers( numInliers );
+
+		final double ir = ( double )numInliers / ( double )store.size();
+		setCost( Math.max( 0.0, Math.min( 1.0, 1.0 - ir ) ) );
+
+		return ( numInliers >= minNumInliers && ir > minInlierRatio );
+	}
+
+	/**
+	 * @return true if the slope of the regression line given the sums of n points is within [minSlope, maxSlope]
+	 */
+	public static boolean slopeFits( final int n, final double sxx, final double sx, final double sxy, final double sy, final double minSlope, final double maxSlope )
+	{
+		if ( n < 2 )
+			return false;
+
+		final double m = ( n*sxy - sx*sy ) / ( n*sxx - sx*sx );
+
+		return m >= minSlope && m <= maxSlope;
+	}
+
+	/**
+	 * @return true if the slope of the regression line of the inliers is within [minSlope, maxSlope], the function is set to the regression line
+	 */
 	public static < P extends PointFunctionMatch > boolean slopeFits( final List< P > inliers, final LinearFunction function, final double minSlope, final double maxSlope )
 	{
-		try
+		final int n = inliers.size();
+
+		if ( n < function.getMinNumMatches() )
+			return false;
+
+		double sxx = 0, sx = 0, sxy = 0, sy = 0;
+
+		for ( final P p : inliers )
 		{
-			function.fit( inliers );
+			final double x = p.getP1().getW()[ 0 ];
+			final double y = p.getP1().getW()[ 1 ];
 
-			if ( function.getM() >= minSlope && function.getM() <= maxSlope )
-				return true;
+			sxx += x*x;
+			sx += x;
+			sxy += x*y;
+			sy += y;
 		}
-		catch ( Exception e ) {}
 
-		return false;
+		function.solve( n, sxx, sx, sxy, sy );
+
+		return function.getM() >= minSlope && function.getM() <= maxSlope;
 	}
 
 	@SuppressWarnings("deprecation")
@@ -54,12 +54,24 @@ public class NewtonRaphson
 
 	public NewtonRaphson( final Random rndx, final int degree )
 	{
-		// Initial guesses for Newton Raphson
 		this.rndx = rndx;
-		this.xc = rndx.nextFloat();
-		this.xcNew = rndx.nextFloat() * rndx.nextFloat();
 		this.degree = degree;
 		this.powCache = new double[ degree + 4 ];
+
+		init();
+	}
+
+	/**
+	 * Draws new initial guesses and resets the state, so the instance can be re-used for another point
+	 */
+	public void init()
+	{
+		// Initial guesses for Newton Raphson
+		this.xc = rndx.nextFloat();
+		this.xcNew = rndx.nextFloat() * rndx.nextFloat();
+
+		this.polyfunc = this.polyfuncdiff = this.delpolyfuncdiff = this.secdelpolyfuncdiff = 0;
+		this.damp = 1;
 	}
 
 	public double run( final double x, final double y, final double[] coeff )
@@ -0,0 +1,334 @@
+/*-
+ * #%L
+ * code for function fitting
+ * %%
+ * Copyright (C) 2015 - 2025 Developers
+ * %%
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * 3. Neither the name of the Preibisch Lab nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package fit.polynomial;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import fit.AbstractFunction2D;
+import fit.PointFunctionMatch;
+import fit.PointStore;
+import mpicbg.models.Point;
+import net.imglib2.util.Pair;
+import net.imglib2.util.ValuePair;
+
+/**
+ * Deterministic, optimal segmentation of a sequence of points (sorted by x) into
+ * polynomial segments. Minimizes the sum of squared residuals of all segments plus a
+ * penalty for each segment by dynamic programming with PELT pruning
+ * (Killick et al. 2012). The cost of a segment is computed in O(degree^3) from a
+ * {@link PolynomialMomentIndex}, so the runtime is close to linear in the number of points
+ * if there are many segments.
+ * 
+ * @author Stephan Preibisch
+ */
+public class OptimalSegmentation
+{
+	final PolynomialMomentIndex index;
+	final int degree, minLength;
+	final double penalty;
+
+	// re-used for computing the cost of a segment
+	final PolynomialSums sums;
+	final double[][] normal;
+
+	/**
+	 * @param x - x-coordinates, sorted
+	 * @param y - y-coordinates
+	 * @param degree - degree of the polynomials
+	 * @param penalty - the cost of an additional segment (in units of squared residuals)
+	 * @param minLength - the minimal number of points of a segment (at least degree + 1)
+	 */
+	public OptimalSegmentation( final double[] x, final double[] y, final int degree, final double penalty, final int minLength )
+	{
+		this.index = new PolynomialMomentIndex( x, y, degree );
+		this.degree = degree;
+		this.penalty = penalty;
+		this.minLength = Math.max( degree + 1, minLength );
+		this.sums = new PolynomialSums( degree );
+		this.normal = new double[ degree + 1 ][ degree + 2 ];
+	}
+
+	/**
+	 * @return the first point of each segment and the number of points (the end of the last segment),
+	 * or an empty array if there are less than minLength points
+	 */
+	public int[] segment()
+	{
+		final int n = index.size();
+
+		if ( n < minLength )
+			return new int[ 0 ];
+
+		// f[ t ] is the optimal cost of the points [0, t), last[ t ] the start of the last segment
+		final double[] f = new double[ n + 1 ];
+		final int[] last = new int[ n + 1 ];
+
+		// candidates for the start of the last segment (PELT keeps only those that can still be optimal),
+		// pruneAfter[ c ] is the last step at which candidate c is still needed
+		final int[] candidates = new int[ n + 1 ];
+		final double[] candidateCost = new double[ n + 1 ];
+		final int[] pruneAfter = new int[ n + 1 ];
+		int numCandidates = 1;
+
+		f[ 0 ] = -penalty;
+		candidates[ 0 ] = 0;
+		pruneAfter[ 0 ] = Integer.MAX_VALUE;
+
+		for ( int t = 1; t <= n; ++t )
+		{
+			f[ t ] = Double.POSITIVE_INFINITY;
+			last[ t ] = -1;
+
+			for ( int c = 0; c < numCandidates; ++c )
+			{
+				final int s = candidates[ c ];
+
+				if ( t - s < minLength )
+				{
+					candidateCost[ c ] = Double.NEGATIVE_INFINITY;
+					continue;
+				}
+
+				candidateCost[ c ] = f[ s ] + cost( s, t );
+
+				if ( candidateCost[ c ] + penalty < f[ t ] )
+				{
+					f[ t ] = candidateCost[ c ] + penalty;
+					last[ t ] = s;
+				}
+			}
+
+			// pruning, a start s that is already worse than the optimum at t will never be optimal for any end
+			// T >= t + minLength (then [t, T) is a valid last segment), but it may still be for the ends before
+			int numKept = 0;
+
+			for ( int c = 0; c < numCandidates; ++c )
+			{
+				if ( candidateCost[ c ] > f[ t ] )
+					pruneAfter[ c ] = Math.min( pruneAfter[ c ], t + minLength - 1 );
+
+				if ( pruneAfter[ c ] > t )
+				{
+					candidates[ numKept ] = candidates[ c ];
+					pruneAfter[ numKept++ ] = pruneAfter[ c ];
+				}
+			}
+
+			numCandidates = numKept;
+
+			if ( f[ t ] < Double.POSITIVE_INFINITY )
+			{
+				candidates[ numCandidates ] = t;
+				pruneAfter[ numCandidates++ ] = Integer.MAX_VALUE;
+			}
+		}
+
+		int numSegments = 0;
+		for ( int t = n; t > 0; t = last[ t ] )
+			++numSegments;
+
+		final int[] starts = new int[ numSegments + 1 ];
+		starts[ numSegments ] = n;
+
+		for ( int t = n, s = numSegments - 1; t > 0; t = last[ t ], --s )
+			starts[ s ] = last[ t ];
+
+		return starts;
+	}
+
+	/**
+	 * @return the sum of squared (vertical) residuals of the least-squares polynomial of the points [from, to)
+	 */
+	public double cost( final int from, final int to )
+	{
+		index.sums( from, to, sums );
+
+		final int m = degree + 1;
+
+		for ( int r = 0; r < m; ++r )
+		{
+			for ( int c = 0; c < m; ++c )
+				normal[ r ][ c ] = sums.xPow[ r + c ];
+
+			normal[ r ][ m ] = sums.xPowY[ r ];
+		}
+
+		// Gauss-Jordan elimination with partial pivoting
+		for ( int c = 0; c < m; ++c )
+		{
+			int p = c;
+			for ( int r = c + 1; r < m; ++r )
+				if ( Math.abs( normal[ r ][ c ] ) > Math.abs( normal[ p ][ c ] ) )
+					p = r;
+
+			if ( normal[ p ][ c ] == 0 )
+				return Double.POSITIVE_INFINITY;
+
+			final double[] tmp = normal[ c ];
+			normal[ c ] = normal[ p ];
+			normal[ p ] = tmp;
+
+			for ( int r = 0; r < m; ++r )
+			{
+				if ( r != c )
+				{
+					final double factor = normal[ r ][ c ] / normal[ c ][ c ];
+
+					for ( int k = c; k <= m; ++k )
+						normal[ r ][ k ] -= factor * normal[ c ][ k ];
+				}
+			}
+		}
+
+		// rss = sum( y^2 ) - coefficients * sum( x^k * y )
+		double rss = index.sumYY( from, to );
+
+		for ( int r = 0; r < m; ++r )
+			rss -= normal[ r ][ m ] / normal[ r ][ r ] * sums.xPowY[ r ];
+
+		return Math.max( 0, rss );
+	}
+
+	/**
+	 * Segments the points optimally and fits a function to each segment. The segmentation itself
+	 * is least-squares (not robust), so the function of each segment is refitted while trimming the
+	 * points farthest from it until all are within maxError, and only those points are returned.
+	 * 
+	 * @param points - the points (will be sorted by x)
+	 * @param function - the type of function (its degree is used for the segmentation)
+	 * @param penalty - the cost of an additional segment (in units of squared residuals)
+	 * @param minLength - the minimal number of points of a segment
+	 * @param maxError - the maximal distance of a point to the function of its segment
+	 * @param <P> the function
+	 * @return all segments with at least minLength points within maxError, the fitted function and these points of each segment
+	 */
+	public static < P extends AbstractFunction2D< P > & Polynomial< P, Point > > ArrayList< Pair< P, ArrayList< PointFunctionMatch > > > segment(
+			final List< ? extends Point > points,
+			final P function,
+			final double penalty,
+			final int minLength,
+			final double maxError )
+	{
+		final PointStore store = PointStore.fromPoints( points );
+		final int[] order = store.getXOrder();
+
+		final double[] x = new double[ order.length ];
+		final double[] y = new double[ order.length ];
+
+		for ( int i = 0; i < order.length; ++i )
+		{
+			x[ i ] = store.x[ order[ i ] ];
+			y[ i ] = store.y[ order[ i ] ];
+		}
+
+		final int[] starts = new OptimalSegmentation( x, y, function.degree(), penalty, minLength ).segment();
+		final ArrayList< Pair< P, ArrayList< PointFunctionMatch > > > segments = new ArrayList< Pair< P, ArrayList< PointFunctionMatch > > >();
+
+		final double[] residual = new double[ order.length ];
+		final int[] inliers = new int[ order.length ];
+
+		for ( int s = 0; s < starts.length - 1; ++s )
+		{
+			final P f = function.copy();
+
+			try
+			{
+				f.fitFunction( store, order, starts[ s ], starts[ s + 1 ] );
+
+				// the outliers pull the least-squares fit away, halve the accepted distance until all points are within maxError
+				double threshold = Double.MAX_VALUE;
+
+				while ( threshold > maxError )
+				{
+					f.distanceTo( x, y, starts[ s ], starts[ s + 1 ], residual );
+
+					double max = 0;
+					for ( int i = starts[ s ]; i < starts[ s + 1 ]; ++i )
+						if ( residual[ i ] <= threshold )
+							max = Math.max( max, residual[ i ] );
+
+					threshold = Math.max( maxError, max / 2 );
+
+					final int numInliers = inliers( residual, order, starts[ s ], starts[ s + 1 ], threshold, inliers );
+
+					if ( numInliers < minLength )
+						break;
+
+					f.fitFunction( store, inliers, 0, numInliers );
+				}
+			}
+			catch ( Exception e )
+			{
+				System.out.println( "Couldn't fit function: " + e );
+				continue;
+			}
+
+			f.distanceTo( x, y, starts[ s ], starts[ s + 1 ], residual );
+
+			final int numInliers = inliers( residual, order, starts[ s ], starts[ s + 1 ], maxError, inliers );
+
+			if ( numInliers < minLength )
+				continue;
+
+			final ArrayList< PointFunctionMatch > matches = new ArrayList< PointFunctionMatch >();
+
+			for ( int i = 0; i < numInliers; ++i )
+			{
+				final PointFunctionMatch pm = new PointFunctionMatch( points.get( inliers[ i ] ) );
+				pm.apply( f );
+				matches.add( pm );
+			}
+
+			segments.add( new ValuePair< P, ArrayList< PointFunctionMatch > >( f, matches ) );
+		}
+
+		return segments;
+	}
+
+	/**
+	 * Collects the indices order[ i ] of the sorted points [from, to) with residual[ i ] &lt;= maxError
+	 * 
+	 * @return the number of inliers
+	 */
+	protected static int inliers( final double[] residual, final int[] order, final int from, final int to, final double maxError, final int[] inliers )
+	{
+		int numInliers = 0;
+
+		for ( int i = from; i < to; ++i )
+			if ( residual[ i ] <= maxError )
+				inliers[ numInliers++ ] = order[ i ];
+
+		return numInliers;
+	}
+}
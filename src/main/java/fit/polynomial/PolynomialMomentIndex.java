@@ -0,0 +1,460 @@
+/*-
+ * #%L
+ * code for function fitting
+ * %%
+ * Copyright (C) 2015 - 2025 Developers
+ * %%
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * 3. Neither the name of the Preibisch Lab nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package fit.polynomial;
+
+import java.util.Arrays;
+import java.util.List;
+
+import mpicbg.models.IllDefinedDataPointsException;
+import mpicbg.models.NotEnoughDataPointsException;
+import mpicbg.models.Point;
+
+/**
+ * Power moments sum(x^k) and sum(x^k*y) of a sequence of points (e.g. a microtubule track
+ * sorted by frame). Given the index, the moments of any range of points [from, to) are
+ * computed in O(degree^2 * log(n)), and {@link LinearFunction}, {@link QuadraticFunction}
+ * and {@link HigherOrderPolynomialFunction} are fitted independent of the length of the range.
+ * 
+ * Global prefix sums lose all precision for a short range of a long track (the difference of
+ * two huge sums of high powers), so the moments are stored per block of points relative to the
+ * mean of the block and in a binary tree over the blocks relative to the mean of each node. The
+ * moments of a range are combined from two partial blocks and O(log(n)) nodes, each shifted
+ * binomially to the mean of the range and scaled by its spread; the fitted coefficients are
+ * transformed back.
+ * 
+ * @author Stephan Preibisch
+ */
+public class PolynomialMomentIndex
+{
+	/**
+	 * number of points per block
+	 */
+	public static final int BLOCK_SIZE = 16;
+
+	final int degree, numPoints, numLeaves;
+
+	// u = ( x - offset ) * scale
+	final double offset, scale;
+	final double[] u;
+
+	// localPow[ i ][ k ] = sum( ( u_j - mean_b )^k ), localPowY[ i ][ k ] = sum( ( u_j - mean_b )^k * y_j )
+	// for all j <= i of the block b of point i
+	final double[][] localPow, localPowY;
+
+	// moments of the nodes of the tree (leaves are the blocks) relative to the mean of each node
+	final double[][] nodePow, nodePowY;
+	final double[] nodeMean;
+
+	// yy[ i ] = sum_{j<i}( y_j^2 )
+	final double[] yy;
+
+	// binomial[ k ][ m ] = k over m
+	final double[][] binomial;
+
+	public PolynomialMomentIndex( final List< ? extends Point > points, final int degree )
+	{
+		this( getX( points ), getY( points ), degree );
+	}
+
+	public PolynomialMomentIndex( final double[] x, final double[] y, final int degree )
+	{
+		this.degree = degree;
+		this.numPoints = x.length;
+
+		double min = Double.MAX_VALUE, max = -Double.MAX_VALUE;
+
+		for ( final double v : x )
+		{
+			min = Math.min( min, v );
+			max = Math.max( max, v );
+		}
+
+		this.offset = numPoints == 0 ? 0 : ( min + max ) / 2;
+		this.scale = max > min ? 2 / ( max - min ) : 1;
+
+		final int numMoments = 2 * degree + 1;
+
+		this.binomial = new double[ numMoments ][ numMoments ];
+
+		for ( int k = 0; k < numMoments; ++k )
+		{
+			binomial[ k ][ 0 ] = binomial[ k ][ k ] = 1;
+
+			for ( int m = 1; m < k; ++m )
+				binomial[ k ][ m ] = binomial[ k - 1 ][ m - 1 ] + binomial[ k - 1 ][ m ];
+		}
+
+		this.u = new double[ numPoints ];
+		this.yy = new double[ numPoints + 1 ];
+
+		for ( int i = 0; i < numPoints; ++i )
+		{
+			u[ i ] = ( x[ i ] - offset ) * scale;
+			yy[ i + 1 ] = yy[ i ] + y[ i ] * y[ i ];
+		}
+
+		final int numBlocks = ( numPoints + BLOCK_SIZE - 1 ) / BLOCK_SIZE;
+
+		int numLeaves = 1;
+		while ( numLeaves < numBlocks )
+			numLeaves *= 2;
+
+		this.numLeaves = numLeaves;
+		this.localPow = new double[ numPoints ][ numMoments ];
+		this.localPowY = new double[ numPoints ][ degree + 1 ];
+		this.nodePow = new double[ 2 * numLeaves ][ numMoments ];
+		this.nodePowY = new double[ 2 * numLeaves ][ degree + 1 ];
+		this.nodeMean = new double[ 2 * numLeaves ];
+
+		for ( int b = 0; b < numBlocks; ++b )
+		{
+			final int from = b * BLOCK_SIZE;
+			final int to = Math.min( numPoints, from + BLOCK_SIZE );
+
+			double mean = 0;
+			for ( int i = from; i < to; ++i )
+				mean += u[ i ];
+			mean /= to - from;
+
+			for ( int i = from; i < to; ++i )
+			{
+				final double d = u[ i ] - mean;
+				double p = 1;
+
+				for ( int k = 0; k < numMoments; ++k )
+				{
+					localPow[ i ][ k ] = ( i > from ? localPow[ i - 1 ][ k ] : 0 ) + p;
+
+					if ( k <= degree )
+						localPowY[ i ][ k ] = ( i > from ? localPowY[ i - 1 ][ k ] : 0 ) + p * y[ i ];
+
+					p *= d;
+				}
+			}
+
+			nodeMean[ numLeaves + b ] = mean;
+			System.arraycopy( localPow[ to - 1 ], 0, nodePow[ numLeaves + b ], 0, numMoments );
+			System.arraycopy( localPowY[ to - 1 ], 0, nodePowY[ numLeaves + b ], 0, degree + 1 );
+		}
+
+		for ( int node = numLeaves - 1; node > 0; --node )
+		{
+			final int left = 2 * node, right = 2 * node + 1;
+			final double n = nodePow[ left ][ 0 ] + nodePow[ right ][ 0 ];
+
+			if ( n > 0 )
+			{
+				nodeMean[ node ] = ( nodePow[ left ][ 0 ] * nodeMean[ left ] + nodePow[ right ][ 0 ] * nodeMean[ right ] ) / n;
+
+				addShifted( nodePow[ left ], nodePowY[ left ], nodeMean[ left ] - nodeMean[ node ], nodePow[ node ], nodePowY[ node ] );
+				addShifted( nodePow[ right ], nodePowY[ right ], nodeMean[ right ] - nodeMean[ node ], nodePow[ node ], nodePowY[ node ] );
+			}
+		}
+	}
+
+	public int degree() { return degree; }
+	public int size() { return numPoints; }
+
+	/**
+	 * Computes the power sums of the points [from, to) in coordinates centered and scaled to the range
+	 * 
+	 * @param from - first point (inclusive)
+	 * @param to - last point (exclusive)
+	 * @param sums - the sums to fill (degree &lt;= the degree of the index)
+	 * @return sums
+	 */
+	public PolynomialSums sums( final int from, final int to, final PolynomialSums sums )
+	{
+		return sums( from, to, sums, null );
+	}
+
+	/**
+	 * Computes the power sums of the points [from, to) in the coordinates v = ( x - offset ) * scale,
+	 * where offset is the mean and 1/scale the standard deviation of x of the range.
+	 * 
+	 * @param from - first point (inclusive)
+	 * @param to - last point (exclusive)
+	 * @param sums - the sums to fill (degree &lt;= the degree of the index)
+	 * @param transform - if not null, will be set to { offset, scale } of the range
+	 * @return sums
+	 */
+	public PolynomialSums sums( final int from, final int to, final PolynomialSums sums, final double[] transform )
+	{
+		final double[] pow = sums.xPow;
+		final double[] powY = sums.xPowY;
+
+		Arrays.fill( pow, 0 );
+		Arrays.fill( powY, 0 );
+
+		if ( from >= to )
+		{
+			if ( transform != null )
+			{
+				transform[ 0 ] = offset;
+				transform[ 1 ] = scale;
+			}
+
+			return sums;
+		}
+
+		// accumulate relative to a point of the range
+		final double center = u[ ( from + to ) / 2 ];
+
+		final int firstBlock = from / BLOCK_SIZE;
+		final int lastBlock = ( to - 1 ) / BLOCK_SIZE;
+
+		if ( firstBlock == lastBlock )
+		{
+			addBlock( from, to, center, pow, powY );
+		}
+		else
+		{
+			addBlock( from, ( firstBlock + 1 ) * BLOCK_SIZE, center, pow, powY );
+			addBlock( lastBlock * BLOCK_SIZE, to, center, pow, powY );
+
+			// the full blocks in between from the tree
+			for ( int l = firstBlock + 1 + numLeaves, r = lastBlock + numLeaves; l < r; l /= 2, r /= 2 )
+			{
+				if ( ( l & 1 ) == 1 )
+				{
+					addShifted( nodePow[ l ], nodePowY[ l ], nodeMean[ l ] - center, pow, powY );
+					++l;
+				}
+
+				if ( ( r & 1 ) == 1 )
+				{
+					--r;
+					addShifted( nodePow[ r ], nodePowY[ r ], nodeMean[ r ] - center, pow, powY );
+				}
+			}
+		}
+
+		// shift to the mean of the range and scale by its spread
+		final double shift = pow[ 1 ] / pow[ 0 ];
+		final double mean = center + shift;
+
+		shift( pow, -shift );
+		shift( powY, -shift );
+
+		final double spread = pow.length > 2 && pow[ 2 ] > 0 ? Math.sqrt( pow[ 2 ] / pow[ 0 ] ) : 1;
+
+		double p = 1;
+		for ( int k = 0; k < pow.length; ++k )
+		{
+			pow[ k ] *= p;
+
+			if ( k < powY.length )
+				powY[ k ] *= p;
+
+			p /= spread;
+		}
+
+		if ( transform != null )
+		{
+			transform[ 0 ] = offset + mean / scale;
+			transform[ 1 ] = scale / spread;
+		}
+
+		return sums;
+	}
+
+	/**
+	 * @param from - first point (inclusive)
+	 * @param to - last point (exclusive)
+	 * @return sum( y^2 ) of the points [from, to)
+	 */
+	public double sumYY( final int from, final int to )
+	{
+		return yy[ to ] - yy[ from ];
+	}
+
+	/**
+	 * Fits the function to the points [from, to)
+	 */
+	public void fit( final LinearFunction f, final int from, final int to ) throws NotEnoughDataPointsException
+	{
+		final double[] transform = new double[ 2 ];
+
+		f.fitFunction( sums( from, to, new PolynomialSums( 1 ), transform ) );
+
+		final double[] c = toCoefficientsInX( new double[]{ f.n, f.m }, transform[ 0 ], transform[ 1 ] );
+
+		f.n = c[ 0 ];
+		f.m = c[ 1 ];
+	}
+
+	/**
+	 * Fits the function to the points [from, to)
+	 */
+	public void fit( final QuadraticFunction f, final int from, final int to ) throws NotEnoughDataPointsException, IllDefinedDataPointsException
+	{
+		final double[] transform = new double[ 2 ];
+
+		f.fitFunction( sums( from, to, new PolynomialSums( 2 ), transform ) );
+
+		final double[] c = toCoefficientsInX( new double[]{ f.c, f.b, f.a }, transform[ 0 ], transform[ 1 ] );
+
+		f.c = c[ 0 ];
+		f.b = c[ 1 ];
+		f.a = c[ 2 ];
+	}
+
+	/**
+	 * Fits the function to the points [from, to), its degree must be &lt;= the degree of the index
+	 */
+	public void fit( final HigherOrderPolynomialFunction f, final int from, final int to ) throws NotEnoughDataPointsException, IllDefinedDataPointsException
+	{
+		final double[] transform = new double[ 2 ];
+
+		f.fitFunction( sums( from, to, new PolynomialSums( f.degree ), transform ) );
+
+		final double[] c = toCoefficientsInX( f.coeff.clone(), transform[ 0 ], transform[ 1 ] );
+
+		System.arraycopy( c, 0, f.coeff, 0, c.length );
+	}
+
+	/**
+	 * Adds the moments of the points [from, to) of one block, shifted to center
+	 */
+	protected void addBlock( final int from, final int to, final double center, final double[] pow, final double[] powY )
+	{
+		final boolean blockStart = from % BLOCK_SIZE == 0;
+		final double delta = nodeMean[ numLeaves + from / BLOCK_SIZE ] - center;
+
+		for ( int k = 0; k < pow.length; ++k )
+		{
+			double p = 1;
+
+			for ( int m = k; m >= 0; --m )
+			{
+				pow[ k ] += binomial[ k ][ m ] * p * ( localPow[ to - 1 ][ m ] - ( blockStart ? 0 : localPow[ from - 1 ][ m ] ) );
+
+				if ( k < powY.length )
+					powY[ k ] += binomial[ k ][ m ] * p * ( localPowY[ to - 1 ][ m ] - ( blockStart ? 0 : localPowY[ from - 1 ][ m ] ) );
+
+				p *= delta;
+			}
+		}
+	}
+
+	/**
+	 * Adds moments relative to a point a to moments relative to a point b,
+	 * sum( ( u - b )^k ) = sum_m( k over m * delta^( k - m ) * sum( ( u - a )^m ) ) with delta = a - b
+	 */
+	protected void addShifted( final double[] srcPow, final double[] srcPowY, final double delta, final double[] pow, final double[] powY )
+	{
+		for ( int k = 0; k < pow.length; ++k )
+		{
+			double p = 1;
+
+			for ( int m = k; m >= 0; --m )
+			{
+				pow[ k ] += binomial[ k ][ m ] * p * srcPow[ m ];
+
+				if ( k < powY.length )
+					powY[ k ] += binomial[ k ][ m ] * p * srcPowY[ m ];
+
+				p *= delta;
+			}
+		}
+	}
+
+	/**
+	 * Shifts moments in place by delta
+	 */
+	protected void shift( final double[] pow, final double delta )
+	{
+		for ( int k = pow.length - 1; k > 0; --k )
+		{
+			double p = delta;
+
+			for ( int m = k - 1; m >= 0; --m )
+			{
+				pow[ k ] += binomial[ k ][ m ] * p * pow[ m ];
+				p *= delta;
+			}
+		}
+	}
+
+	/**
+	 * Transforms coefficients of a polynomial in u = ( x - offset ) * scale into
+	 * coefficients of the same polynomial in x.
+	 * 
+	 * @param coeff - coeff[ k ] is the coefficient of u^k, will be overwritten
+	 * @param offset - the offset of u
+	 * @param scale - the scale of u
+	 * @return the coefficients in x
+	 */
+	protected static double[] toCoefficientsInX( final double[] coeff, final double offset, final double scale )
+	{
+		final int d = coeff.length - 1;
+
+		// coefficients of ( x - offset )^k
+		for ( int k = 0; k <= d; ++k )
+			coeff[ k ] *= Math.pow( scale, k );
+
+		// expand by Horner's scheme, p(x) = c0 + (x - offset) * ( c1 + (x - offset) * ( ... ) )
+		final double[] result = new double[ d + 1 ];
+
+		for ( int k = d; k >= 0; --k )
+		{
+			// result = result * ( x - offset ) + coeff[ k ]
+			for ( int j = d; j > 0; --j )
+				result[ j ] = result[ j - 1 ] - offset * result[ j ];
+
+			result[ 0 ] = coeff[ k ] - offset * result[ 0 ];
+		}
+
+		return result;
+	}
+
+	protected static double[] getX( final List< ? extends Point > points )
+	{
+		final double[] x = new double[ points.size() ];
+
+		for ( int i = 0; i < x.length; ++i )
+			x[ i ] = points.get( i ).getW()[ 0 ];
+
+		return x;
+	}
+
+	protected static double[] getY( final List< ? extends Point > points )
+	{
+		final double[] y = new double[ points.size() ];
+
+		for ( int i = 0; i < y.length; ++i )
+			y[ i ] = points.get( i ).getW()[ 1 ];
+
+		return y;
+	}
+}
@@ -0,0 +1,116 @@
+/*-
+ * #%L
+ * code for function fitting
+ * %%
+ * Copyright (C) 2015 - 2025 Developers
+ * %%
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * 3. Neither the name of the Preibisch Lab nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package fit.polynomial;
+
+import fit.SufficientStatistics;
+
+/**
+ * The power sums sum(x^k), k=0...2*degree and sum(x^k*y), k=0...degree, which are
+ * the normal equations of a least-squares polynomial fit.
+ * 
+ * @author Stephan Preibisch
+ */
+public class PolynomialSums implements SufficientStatistics
+{
+	final int degree;
+
+	/**
+	 * xPow[ k ] = sum( x^k )
+	 */
+	final public double[] xPow;
+
+	/**
+	 * xPowY[ k ] = sum( x^k * y )
+	 */
+	final public double[] xPowY;
+
+	public PolynomialSums( final int degree )
+	{
+		this.degree = degree;
+		this.xPow = new double[ 2 * degree + 1 ];
+		this.xPowY = new double[ degree + 1 ];
+	}
+
+	public int degree() { return degree; }
+
+	@Override
+	public void add( final double x, final double y )
+	{
+		double p = 1;
+
+		for ( int k = 0; k <= degree; ++k )
+		{
+			xPow[ k ] += p;
+			xPowY[ k ] += p * y;
+			p *= x;
+		}
+
+		for ( int k = degree + 1; k < xPow.length; ++k )
+		{
+			xPow[ k ] += p;
+			p *= x;
+		}
+	}
+
+	@Override
+	public void remove( final double x, final double y )
+	{
+		double p = 1;
+
+		for ( int k = 0; k <= degree; ++k )
+		{
+			xPow[ k ] -= p;
+			xPowY[ k ] -= p * y;
+			p *= x;
+		}
+
+		for ( int k = degree + 1; k < xPow.length; ++k )
+		{
+			xPow[ k ] -= p;
+			p *= x;
+		}
+	}
+
+	@Override
+	public void clear()
+	{
+		for ( int k = 0; k < xPow.length; ++k )
+			xPow[ k ] = 0;
+
+		for ( int k = 0; k < xPowY.length; ++k )
+			xPowY[ k ] = 0;
+	}
+
+	@Override
+	public int size() { return ( int )Math.round( xPow[ 0 ] ); }
+}
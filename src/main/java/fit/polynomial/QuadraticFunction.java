@@ -37,7 +37,9 @@ import java.util.Collection;
 import java.util.Random;
 
 import fit.AbstractFunction2D;
+import fit.IncrementalFunction;
 import fit.PointFunctionMatch;
+import fit.PointStore;
 import fit.util.MatrixFunctions;
 import mpicbg.models.IllDefinedDataPointsException;
 import mpicbg.models.NoninvertibleModelException;
@@ -47,7 +49,7 @@ import mpicbg.models.Point;
 /**
  * @author Stephan Preibisch and Varun Kapoor
  */
-public class QuadraticFunction extends AbstractFunction2D< QuadraticFunction > implements Polynomial< QuadraticFunction, Point >
+public class QuadraticFunction extends AbstractFunction2D< QuadraticFunction > implements Polynomial< QuadraticFunction, Point >, IncrementalFunction< PolynomialSums >
 {
 	private static final long serialVersionUID = 5289346951323596267L;
 
@@ -57,6 +59,9 @@ public class QuadraticFunction extends AbstractFunction2D< QuadraticFunction > i
 	final int minNumPoints = 3;
 	double a, b, c; // a*x*x + b*x + c
 
+	// re-used when fitting to a PointStore (every RANSAC thread has its own instance)
+	final double[] delta = new double[ 9 ];
+
 	public QuadraticFunction() { this( 0, 0, 0 ); }
 	public QuadraticFunction( final double a, final double b, final double c )
 	{
@@ -144,6 +149,118 @@ public class QuadraticFunction extends AbstractFunction2D< QuadraticFunction > i
 		this.c = delta[ 6 ] * tetha[ 0 ] + delta[ 7 ] * tetha[ 1 ] + delta[ 8 ] * tetha[ 2 ];
 	}
 
+	@Override
+	public void fitFunction( final PointStore store, final int[] indices, final int from, final int to ) throws NotEnoughDataPointsException, IllDefinedDataPointsException
+	{
+		final int numPoints = to - from;
+
+		if ( numPoints < minNumPoints )
+			throw new NotEnoughDataPointsException( "Not enough points, at least " + minNumPoints + " are necessary and available are: " + numPoints );
+
+		if ( numPoints == minNumPoints )
+		{
+			interpolate(
+					store.x[ indices[ from ] ], store.y[ indices[ from ] ],
+					store.x[ indices[ from + 1 ] ], store.y[ indices[ from + 1 ] ],
+					store.x[ indices[ from + 2 ] ], store.y[ indices[ from + 2 ] ] );
+			return;
+		}
+
+		// compute matrices
+		double sxxxx = 0, sxxx = 0, sxx = 0, sx = 0, sxxy = 0, sxy = 0, sy = 0;
+
+		for ( int j = from; j < to; ++j )
+		{
+			final double x = store.x[ indices[ j ] ];
+			final double y = store.y[ indices[ j ] ];
+
+			final double xx = x*x;
+
+			sxxxx += xx * xx;
+			sxxx += xx * x;
+			sxx += xx;
+			sx += x;
+
+			sxxy += xx * y;
+			sxy += x * y;
+			sy += y;
+		}
+
+		solve( numPoints, sxxxx, sxxx, sxx, sx, sxxy, sxy, sy );
+	}
+
+	/**
+	 * The parabola through three points (Lagrange interpolation with divided differences),
+	 * the minimal solver for RANSAC hypotheses
+	 * 
+	 * @throws IllDefinedDataPointsException if two x are equal
+	 */
+	public void interpolate(
+			final double x1, final double y1,
+			final double x2, final double y2,
+			final double x3, final double y3 ) throws IllDefinedDataPointsException
+	{
+		if ( x1 == x2 || x1 == x3 || x2 == x3 )
+		{
+			this.a = this.b = this.c = 0;
+			throw new IllDefinedDataPointsException( "Two points have the same x, failed to fit function" );
+		}
+
+		final double d1 = ( y2 - y1 ) / ( x2 - x1 );
+		final double d2 = ( y3 - y2 ) / ( x3 - x2 );
+
+		// y1 + d1 * ( x - x1 ) + a * ( x - x1 ) * ( x - x2 )
+		this.a = ( d2 - d1 ) / ( x3 - x1 );
+		this.b = d1 - a * ( x1 + x2 );
+		this.c = y1 - d1 * x1 + a * x1 * x2;
+	}
+
+	@Override
+	public PolynomialSums createStatistics() { return new PolynomialSums( 2 ); }
+
+	/**
+	 * Fits the function to the first power sums (degree &gt;= 2)
+	 */
+	@Override
+	public void fitFunction( final PolynomialSums sums ) throws NotEnoughDataPointsException, IllDefinedDataPointsException
+	{
+		final int numPoints = sums.size();
+
+		if ( numPoints < minNumPoints )
+			throw new NotEnoughDataPointsException( "Not enough points, at least " + minNumPoints + " are necessary and available are: " + numPoints );
+
+		final double[] p = sums.xPow;
+		final double[] py = sums.xPowY;
+
+		solve( numPoints, p[ 4 ], p[ 3 ], p[ 2 ], p[ 1 ], py[ 2 ], py[ 1 ], py[ 0 ] );
+	}
+
+	protected void solve(
+			final double numPoints,
+			final double sxxxx, final double sxxx, final double sxx, final double sx,
+			final double sxxy, final double sxy, final double sy ) throws IllDefinedDataPointsException
+	{
+		final double[] delta = this.delta;
+		delta[ 0 ] = sxxxx; delta[ 1 ] = sxxx; delta[ 2 ] = sxx;
+		delta[ 3 ] = sxxx; delta[ 4 ] = sxx; delta[ 5 ] = sx;
+		delta[ 6 ] = sxx; delta[ 7 ] = sx; delta[ 8 ] = numPoints;
+
+		// invert matrix
+		try
+		{
+			MatrixFunctions.invert3x3( delta );
+		}
+		catch ( final NoninvertibleModelException e )
+		{
+			this.a = this.b = this.c = 0;
+			throw new IllDefinedDataPointsException( "Cannot not invert Delta-Matrix, failed to fit function" );
+		}
+
+		this.a = delta[ 0 ] * sxxy + delta[ 1 ] * sxy + delta[ 2 ] * sy;
+		this.b = delta[ 3 ] * sxxy + delta[ 4 ] * sxy + delta[ 5 ] * sy;
+		this.c = delta[ 6 ] * sxxy + delta[ 7 ] * sxy + delta[ 8 ] * sy;
+	}
+
 	@Override
 	public double distanceTo( final Point point )
 	{
@@ -157,6 +274,35 @@ public class QuadraticFunction extends AbstractFunction2D< QuadraticFunction > i
 		final double a1 = (2 * this.c * this.a - 2 * this.a * y1 + 1 + this.b * this.b ) / a3;
 		final double a0 = (this.c * this.b - y1 * this.b - x1) / a3 ;
 
+		return distanceTo( x1, y1, a2, a1, a0 );
+	}
+
+	@Override
+	public void distanceTo( final double[] xs, final double[] ys, final int from, final int to, final double[] out )
+	{
+		// the parts of the cubic x^3 + a2*x^2 + a1*x + a0 that do not depend on the point
+		final double a3 = 2 * this.a * this.a ;
+		final double a2 = 3 * this.b * this.a  / a3 ;
+		final double a1c = (2 * this.c * this.a + 1 + this.b * this.b ) / a3;
+		final double a1y = 1 / this.a;
+		final double a0c = this.c * this.b / a3;
+		final double a0y = this.b / a3;
+		final double a0x = 1 / a3;
+
+		for ( int i = from; i < to; ++i )
+		{
+			final double x1 = xs[ i ];
+			final double y1 = ys[ i ];
+
+			out[ i ] = distanceTo( x1, y1, a2, a1c - y1 * a1y, a0c - y1 * a0y - x1 * a0x );
+		}
+	}
+
+	/*
+	 * the distance of ( x1, y1 ) is the minimum of the distances to the real roots of the cubic x^3 + a2*x^2 + a1*x + a0
+	 */
+	protected double distanceTo( final double x1, final double y1, final double a2, final double a1, final double a0 )
+	{
 		final double p = (3 * a1 - a2 * a2) / 3;
 		final double q = (-9 * a1 * a2  + 27 * a0  + 2 * a2 * a2 * a2) / 27 ;
 
@@ -168,8 +314,9 @@ public class QuadraticFunction extends AbstractFunction2D< QuadraticFunction > i
 		
 		if ( tmp2 > 0 )
 		{
-			final double aBar = Math.cbrt(-q/2 + Math.sqrt( q * q / 4 + p * p * p / 27));
-			final double bBar = Math.cbrt(-q/2 - Math.sqrt( q * q / 4 + p * p * p / 27));
+			final double sqrtTmp2 = Math.sqrt( tmp2 );
+			final double aBar = Math.cbrt(-q/2 + sqrtTmp2);
+			final double bBar = Math.cbrt(-q/2 - sqrtTmp2);
 
 			xc1 = xc2 = xc3 = aBar + bBar -  a2 / 3;
 		}
@@ -0,0 +1,468 @@
+/*-
+ * #%L
+ * code for function fitting
+ * %%
+ * Copyright (C) 2015 - 2025 Developers
+ * %%
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * 3. Neither the name of the Preibisch Lab nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package fit.polynomial;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import fit.PointStore;
+import mpicbg.models.IllDefinedDataPointsException;
+import mpicbg.models.NotEnoughDataPointsException;
+
+/**
+ * Fits a {@link LinearFunction} robustly without sampling hypotheses, an alternative to
+ * {@link LinearFunction#ransac(PointStore, int, double, double, int, double, double, double, fit.ransac.RansacSettings)}
+ * if the points have a single dominant linear trend. The result does not depend on random numbers.
+ * 
+ * The slope is either the Theil-Sen estimator (the median of the slopes of all pairs of points, breakdown
+ * point 29%) or the repeated median (the median over all points of the median slope to all other points,
+ * breakdown point 50%). The intercept is the median of y - m*x. Pairs of points with the same x are ignored.
+ * 
+ * Theil-Sen runs in O(n log n) expected time, the median slope is selected by randomly shrinking an interval
+ * of slopes (Matousek 1991, Dillencourt et al. 1992). The number of slopes in an interval (s0, s1] is the
+ * number of pairs of points whose order by y - s*x differs for s0 and s1, the inversions are counted (or
+ * sampled) with a merge sort. The repeated median takes O(n^2) time and O(n) memory.
+ * 
+ * @author Stephan Preibisch
+ */
+public class RobustLinearEstimator
+{
+	final boolean repeatedMedian;
+
+	// only affects the running time
+	final Random rnd = new Random( 3 );
+
+	/**
+	 * A Theil-Sen estimator
+	 */
+	public RobustLinearEstimator() { this( false ); }
+
+	/**
+	 * @param repeatedMedian - use the repeated median instead of Theil-Sen
+	 */
+	public RobustLinearEstimator( final boolean repeatedMedian )
+	{
+		this.repeatedMedian = repeatedMedian;
+	}
+
+	/**
+	 * Fits the function robustly to all points, then computes the inliers as
+	 * {@link LinearFunction#test(PointStore, double, double, int, double, double, double)} does.
+	 * 
+	 * @return true if there are enough inliers and the slopes fit
+	 */
+	public boolean fit(
+			final LinearFunction function,
+			final PointStore store,
+			final double epsilon,
+			final double minInlierRatio,
+			final int minNumInliers,
+			final double maxGapDim0,
+			final double minSlope,
+			final double maxSlope ) throws NotEnoughDataPointsException, IllDefinedDataPointsException
+	{
+		estimate( function, store );
+
+		return new SlopeConstraint( minSlope, maxSlope ).isValid( function ) &&
+				function.test( store, epsilon, minInlierRatio, minNumInliers, maxGapDim0, minSlope, maxSlope );
+	}
+
+	/**
+	 * Fits the function robustly to all points of the store.
+	 * 
+	 * @throws NotEnoughDataPointsException if there are less than two points
+	 * @throws IllDefinedDataPointsException if all points have the same x
+	 */
+	public void estimate( final LinearFunction function, final PointStore store ) throws NotEnoughDataPointsException, IllDefinedDataPointsException
+	{
+		if ( store.size() < function.getMinNumPoints() )
+			throw new NotEnoughDataPointsException( "Not enough points, at least " + function.getMinNumPoints() + " are necessary and available are: " + store.size() );
+
+		final double m = repeatedMedian ? repeatedMedianSlope( store.x, store.y ) : theilSenSlope( store.x, store.y );
+
+		final double[] intercepts = new double[ store.size() ];
+
+		for ( int i = 0; i < intercepts.length; ++i )
+			intercepts[ i ] = store.y[ i ] - m * store.x[ i ];
+
+		function.m = m;
+		function.n = median( intercepts, intercepts.length, rnd );
+	}
+
+	/**
+	 * @return the median of the slopes of all pairs of points with different x
+	 * @throws IllDefinedDataPointsException if all points have the same x
+	 */
+	public double theilSenSlope( final double[] x, final double[] y ) throws IllDefinedDataPointsException
+	{
+		final int[] first = order( x, y, Double.NEGATIVE_INFINITY, false );
+		final int[] last = order( x, y, Double.POSITIVE_INFINITY, false );
+
+		// all pairs with different x
+		final long numSlopes = inversions( x, y, first, last, null, null );
+
+		if ( numSlopes == 0 )
+			throw new IllDefinedDataPointsException( "All points have the same x, cannot compute a slope" );
+
+		if ( numSlopes % 2 == 1 )
+			return select( x, y, first, last, numSlopes, numSlopes / 2 );
+		else
+			return ( select( x, y, first, last, numSlopes, numSlopes / 2 - 1 ) + select( x, y, first, last, numSlopes, numSlopes / 2 ) ) / 2;
+	}
+
+	/**
+	 * @return the k'th smallest (starting at 0) of all numSlopes slopes
+	 */
+	protected double select( final double[] x, final double[] y, final int[] first, final int[] last, final long numSlopes, final long k )
+	{
+		final int n = x.length;
+
+		// the k'th slope is in ( lo, hi ], numLo slopes are <= lo and numHi slopes are <= hi
+		int[] orderLo = first, orderHi = last;
+		long numLo = 0, numHi = numSlopes;
+
+		for ( int iteration = 0; ; ++iteration )
+		{
+			final long num = numHi - numLo;
+
+			// few enough to compute all of them (the iterations are only limited in case rounding errors prevent convergence)
+			if ( num <= 8L * n || iteration >= 64 )
+			{
+				final double[] slopes = new double[ ( int )Math.min( Integer.MAX_VALUE - 8, num ) ];
+				final int count = ( int )Math.min( slopes.length, inversions( x, y, orderLo, orderHi, null, slopes ) );
+
+				return select( slopes, 0, count, ( int )Math.max( 0, Math.min( count - 1, k - numLo ) ), rnd );
+			}
+
+			// a random sample of the slopes in the interval, its quantiles around the k'th one are the new interval
+			final int r = n;
+			final long[] ranks = new long[ r ];
+
+			for ( int j = 0; j < r; ++j )
+				ranks[ j ] = Math.min( num - 1, ( long )( rnd.nextDouble() * num ) );
+
+			Arrays.sort( ranks );
+
+			final double[] sample = new double[ r ];
+			inversions( x, y, orderLo, orderHi, ranks, sample );
+			Arrays.sort( sample );
+
+			final int index = ( int )( ( double )( k - numLo ) / num * r );
+			final int delta = ( int )Math.ceil( 3 * Math.sqrt( r ) );
+
+			for ( final int j : new int[]{ Math.max( 0, index - delta ), Math.min( r - 1, index + delta ) } )
+			{
+				final double s = sample[ j ];
+				final int[] orderS = order( x, y, s, false );
+				final long numS = inversions( x, y, first, orderS, null, null );
+
+				if ( numS <= k )
+				{
+					if ( numS > numLo )
+					{
+						orderLo = orderS;
+						numLo = numS;
+					}
+				}
+				else if ( numS < numHi )
+				{
+					// the k'th slope could be s itself (if it occurs several times)
+					if ( inversions( x, y, first, order( x, y, s, true ), null, null ) <= k )
+						return s;
+
+					orderHi = orderS;
+					numHi = numS;
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return the median over all points of the median of the slopes to all other points with a different x
+	 * @throws IllDefinedDataPointsException if all points have the same x
+	 */
+	public double repeatedMedianSlope( final double[] x, final double[] y ) throws IllDefinedDataPointsException
+	{
+		final int n = x.length;
+		final double[] slopes = new double[ n ];
+		final double[] medians = new double[ n ];
+		int numMedians = 0;
+
+		for ( int i = 0; i < n; ++i )
+		{
+			int numSlopes = 0;
+
+			for ( int j = 0; j < n; ++j )
+				if ( x[ j ] != x[ i ] )
+					slopes[ numSlopes++ ] = ( y[ j ] - y[ i ] ) / ( x[ j ] - x[ i ] );
+
+			if ( numSlopes > 0 )
+				medians[ numMedians++ ] = median( slopes, numSlopes, rnd );
+		}
+
+		if ( numMedians == 0 )
+			throw new IllDefinedDataPointsException( "All points have the same x, cannot compute a slope" );
+
+		return median( medians, numMedians, rnd );
+	}
+
+	/**
+	 * The order of the points by y - s*x, points with the same y - s*x are sorted by x descending
+	 * (by x ascending if strict), then by y and index. For s = -infinity it is the order by x, for
+	 * s = +infinity by x descending.
+	 * 
+	 * Two points with different x are in a different order than for s = -infinity if their slope is
+	 * &lt;= s (&lt; s if strict).
+	 */
+	protected static int[] order( final double[] x, final double[] y, final double s, final boolean strict )
+	{
+		final int n = x.length;
+		final double[] p = new double[ n ];
+		final double[] q = new double[ n ];
+
+		for ( int i = 0; i < n; ++i )
+		{
+			if ( s == Double.NEGATIVE_INFINITY )
+			{
+				p[ i ] = x[ i ];
+				q[ i ] = y[ i ];
+			}
+			else if ( s == Double.POSITIVE_INFINITY )
+			{
+				p[ i ] = -x[ i ];
+				q[ i ] = y[ i ];
+			}
+			else
+			{
+				p[ i ] = y[ i ] - s * x[ i ];
+				q[ i ] = strict ? x[ i ] : -x[ i ];
+			}
+		}
+
+		final int[] order = new int[ n ];
+		for ( int i = 0; i < n; ++i )
+			order[ i ] = i;
+
+		final int[] tmp = new int[ n ];
+
+		// bottom-up merge sort
+		int[] from = order, to = tmp;
+
+		for ( int width = 1; width < n; width *= 2 )
+		{
+			for ( int start = 0; start < n; start += 2 * width )
+			{
+				final int mid = Math.min( n, start + width ), end = Math.min( n, start + 2 * width );
+				int a = start, b = mid, t = start;
+
+				while ( a < mid && b < end )
+					to[ t++ ] = compare( from[ b ], from[ a ], p, q, y ) < 0 ? from[ b++ ] : from[ a++ ];
+
+				while ( a < mid )
+					to[ t++ ] = from[ a++ ];
+
+				while ( b < end )
+					to[ t++ ] = from[ b++ ];
+			}
+
+			final int[] swap = from;
+			from = to;
+			to = swap;
+		}
+
+		return from;
+	}
+
+	protected static int compare( final int i, final int j, final double[] p, final double[] q, final double[] y )
+	{
+		if ( p[ i ] != p[ j ] )
+			return p[ i ] < p[ j ] ? -1 : 1;
+		else if ( q[ i ] != q[ j ] )
+			return q[ i ] < q[ j ] ? -1 : 1;
+		else if ( y[ i ] != y[ j ] )
+			return y[ i ] < y[ j ] ? -1 : 1;
+		else
+			return Integer.compare( i, j );
+	}
+
+	/**
+	 * Counts the pairs of points that are in a different order in a and b (merge sort of the positions
+	 * in a in the order of b). The slopes of some of them (ranks, sorted ascending) or all of them
+	 * (if ranks is null) are stored in slopes if slopes is not null.
+	 * 
+	 * @return the number of pairs
+	 */
+	protected static long inversions( final double[] x, final double[] y, final int[] a, final int[] b, final long[] ranks, final double[] slopes )
+	{
+		final int n = a.length;
+		final int[] position = new int[ n ];
+
+		for ( int i = 0; i < n; ++i )
+			position[ a[ i ] ] = i;
+
+		int[] from = new int[ n ], to = new int[ n ];
+
+		for ( int i = 0; i < n; ++i )
+			from[ i ] = position[ b[ i ] ];
+
+		long count = 0;
+		int next = 0;
+
+		for ( int width = 1; width < n; width *= 2 )
+		{
+			for ( int start = 0; start < n; start += 2 * width )
+			{
+				final int mid = Math.min( n, start + width ), end = Math.min( n, start + 2 * width );
+				int l = start, r = mid, t = start;
+
+				while ( l < mid && r < end )
+				{
+					if ( from[ r ] < from[ l ] )
+					{
+						// from[ r ] is before all of from[ l ... mid - 1 ] in a, but after them in b
+						final int c = mid - l;
+
+						if ( slopes != null )
+						{
+							final int j = a[ from[ r ] ];
+
+							if ( ranks == null )
+							{
+								for ( int k = l; k < mid && next < slopes.length; ++k )
+									slopes[ next++ ] = slope( x, y, a[ from[ k ] ], j );
+							}
+							else
+							{
+								while ( next < ranks.length && ranks[ next ] < count + c )
+								{
+									slopes[ next ] = slope( x, y, a[ from[ l + ( int )( ranks[ next ] - count ) ] ], j );
+									++next;
+								}
+							}
+						}
+
+						count += c;
+						to[ t++ ] = from[ r++ ];
+					}
+					else
+					{
+						to[ t++ ] = from[ l++ ];
+					}
+				}
+
+				while ( l < mid )
+					to[ t++ ] = from[ l++ ];
+
+				while ( r < end )
+					to[ t++ ] = from[ r++ ];
+			}
+
+			final int[] swap = from;
+			from = to;
+			to = swap;
+		}
+
+		return count;
+	}
+
+	protected static double slope( final double[] x, final double[] y, final int i, final int j )
+	{
+		return ( y[ j ] - y[ i ] ) / ( x[ j ] - x[ i ] );
+	}
+
+	/**
+	 * @return the median of the first n values (the mean of the two middle ones if n is even), the order of the values changes
+	 */
+	public static double median( final double[] values, final int n, final Random rnd )
+	{
+		final double upper = select( values, 0, n, n / 2, rnd );
+
+		if ( n % 2 == 1 )
+			return upper;
+
+		// after the selection all values before n / 2 are smaller or equal
+		double lower = values[ 0 ];
+		for ( int i = 1; i < n / 2; ++i )
+			lower = Math.max( lower, values[ i ] );
+
+		return ( lower + upper ) / 2;
+	}
+
+	/**
+	 * Randomized selection (quickselect with a three-way partition), afterwards the values in [from, to) are
+	 * partitioned around the k'th smallest value.
+	 * 
+	 * @return the k'th smallest value of values[ from ... to - 1 ], k starts at 0 (relative to from)
+	 */
+	public static double select( final double[] values, int from, int to, final int k, final Random rnd )
+	{
+		final int target = from + k;
+
+		while ( to - from > 1 )
+		{
+			final double pivot = values[ from + rnd.nextInt( to - from ) ];
+
+			// [from, lt) < pivot, [lt, i) == pivot, [gt, to) > pivot
+			int lt = from, i = from, gt = to;
+
+			while ( i < gt )
+			{
+				final double v = values[ i ];
+
+				if ( v < pivot )
+				{
+					values[ i++ ] = values[ lt ];
+					values[ lt++ ] = v;
+				}
+				else if ( v > pivot )
+				{
+					values[ i ] = values[ --gt ];
+					values[ gt ] = v;
+				}
+				else
+				{
+					++i;
+				}
+			}
+
+			if ( target < lt )
+				to = lt;
+			else if ( target >= gt )
+				from = gt;
+			else
+				return pivot;
+		}
+
+		return values[ target ];
+	}
+}
@@ -0,0 +1,137 @@
+/*-
+ * #%L
+ * code for function fitting
+ * %%
+ * Copyright (C) 2015 - 2025 Developers
+ * %%
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * 3. Neither the name of the Preibisch Lab nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package fit.ransac;
+
+import java.util.Arrays;
+
+/**
+ * Wraps a {@link Sampler} and skips minimal samples that were drawn before (in any order). The
+ * sorted indices of a sample are packed into a long and stored in an open-addressing hash set,
+ * so it only works if k * log2(n) &lt; 64 (see {@link #canPack(int, int)}).
+ * 
+ * @author Stephan Preibisch
+ */
+public class DistinctSampler implements Sampler
+{
+	// how often a repeated sample is redrawn before it is used anyway
+	final static int MAX_REDRAWS = 100;
+
+	final Sampler sampler;
+	final int bits;
+	final int[] sorted;
+
+	// the packed samples + 1 (0 means empty)
+	final long[] table;
+	final int mask;
+	int size = 0;
+
+	/**
+	 * @param sampler - draws the samples
+	 * @param numCandidates - the number of candidates
+	 * @param sampleSize - the size of a minimal sample
+	 * @param maxNumSamples - how many samples are drawn at most (the size of the hash set)
+	 */
+	public DistinctSampler( final Sampler sampler, final int numCandidates, final int sampleSize, final int maxNumSamples )
+	{
+		this.sampler = sampler;
+		this.bits = bits( numCandidates );
+		this.sorted = new int[ sampleSize ];
+
+		final int capacity = Integer.highestOneBit( Math.max( 2, maxNumSamples ) * 2 - 1 ) * 2;
+		this.table = new long[ capacity ];
+		this.mask = capacity - 1;
+	}
+
+	@Override
+	public boolean drawSample( final int[] sample )
+	{
+		for ( int t = 0; t < MAX_REDRAWS; ++t )
+		{
+			if ( !sampler.drawSample( sample ) )
+				return false;
+
+			// the set is full (more samples than expected), do not deduplicate anymore
+			if ( size * 2 > table.length || add( pack( sample ) ) )
+				return true;
+		}
+
+		return true;
+	}
+
+	protected long pack( final int[] sample )
+	{
+		System.arraycopy( sample, 0, sorted, 0, sample.length );
+		Arrays.sort( sorted );
+
+		long key = 0;
+
+		for ( int j = 0; j < sorted.length; ++j )
+			key |= ( long )sorted[ j ] << ( j * bits );
+
+		return key + 1;
+	}
+
+	/**
+	 * @return true if the key was not in the set
+	 */
+	protected boolean add( final long key )
+	{
+		int i = ( int )( TddPreTest.mix( key ) & mask );
+
+		while ( table[ i ] != 0 )
+		{
+			if ( table[ i ] == key )
+				return false;
+
+			i = ( i + 1 ) & mask;
+		}
+
+		table[ i ] = key;
+		++size;
+
+		return true;
+	}
+
+	protected static int bits( final int numCandidates )
+	{
+		return Math.max( 1, 32 - Integer.numberOfLeadingZeros( numCandidates - 1 ) );
+	}
+
+	/**
+	 * @return true if a sample can be packed into a long
+	 */
+	public static boolean canPack( final int numCandidates, final int sampleSize )
+	{
+		return sampleSize * bits( numCandidates ) <= 63;
+	}
+}
@@ -0,0 +1,104 @@
+/*-
+ * #%L
+ * code for function fitting
+ * %%
+ * Copyright (C) 2015 - 2025 Developers
+ * %%
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * 3. Neither the name of the Preibisch Lab nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package fit.ransac;
+
+/**
+ * Enumerates all minimal samples (combinations of k out of n in lexicographic order), used
+ * instead of random sampling if there are not more combinations than iterations.
+ * 
+ * @author Stephan Preibisch
+ */
+public class ExhaustiveSampler implements Sampler
+{
+	final int n;
+	final int[] combination;
+	boolean first = true;
+
+	public ExhaustiveSampler( final int numCandidates, final int sampleSize )
+	{
+		this.n = numCandidates;
+		this.combination = new int[ sampleSize ];
+
+		for ( int j = 0; j < sampleSize; ++j )
+			combination[ j ] = j;
+	}
+
+	@Override
+	public boolean drawSample( final int[] sample )
+	{
+		final int k = combination.length;
+
+		if ( k > n )
+			return false;
+
+		if ( first )
+		{
+			first = false;
+		}
+		else
+		{
+			// the last position that can still be increased
+			int j = k - 1;
+			while ( j >= 0 && combination[ j ] == n - k + j )
+				--j;
+
+			if ( j < 0 )
+				return false;
+
+			++combination[ j ];
+
+			for ( int i = j + 1; i < k; ++i )
+				combination[ i ] = combination[ i - 1 ] + 1;
+		}
+
+		System.arraycopy( combination, 0, sample, 0, k );
+
+		return true;
+	}
+
+	/**
+	 * @return the number of combinations C(n, k) (as double, it can be huge)
+	 */
+	public static double numCombinations( final int n, final int k )
+	{
+		if ( k > n )
+			return 0;
+
+		double c = 1;
+
+		for ( int i = 0; i < k; ++i )
+			c = c * ( n - i ) / ( i + 1 );
+
+		return Math.round( c );
+	}
+}
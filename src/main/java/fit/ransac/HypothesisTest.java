@@ -0,0 +1,71 @@
+/*-
+ * #%L
+ * code for function fitting
+ * %%
+ * Copyright (C) 2015 - 2025 Developers
+ * %%
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * 3. Neither the name of the Preibisch Lab nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package fit.ransac;
+
+import fit.PointStore;
+
+/**
+ * Tests a single RANSAC hypothesis against all candidates, this is where the
+ * model-specific constraints (max gap, slope, area, ...) are applied.
+ * 
+ * @author Stephan Preibisch
+ *
+ * @param <M> the model
+ */
+public interface HypothesisTest< M >
+{
+	/**
+	 * Computes the residuals and inliers of all points in the store,
+	 * sets the cost of the model.
+	 *
+	 * @param model - the hypothesis
+	 * @param store - all candidates, the residuals and inliers are updated
+	 * @return true if the hypothesis is acceptable
+	 */
+	public boolean test( final M model, final PointStore store );
+
+	/**
+	 * Same as {@link #test(Object, PointStore)}, but the residuals of all points are already
+	 * in the store (e.g. computed by a {@link PreTest}).
+	 *
+	 * @param model - the hypothesis
+	 * @param store - all candidates with the residuals of the hypothesis, the inliers are updated
+	 * @return true if the hypothesis is acceptable
+	 */
+	public boolean testResiduals( final M model, final PointStore store );
+
+	/**
+	 * @return the maximal residual of an inlier (used by a {@link PreTest})
+	 */
+	public double getEpsilon();
+}
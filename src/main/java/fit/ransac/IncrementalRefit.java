@@ -0,0 +1,136 @@
+/*-
+ * #%L
+ * code for function fitting
+ * %%
+ * Copyright (C) 2015 - 2025 Developers
+ * %%
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * 3. Neither the name of the Preibisch Lab nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package fit.ransac;
+
+import fit.IncrementalFunction;
+import fit.PointStore;
+import fit.SufficientStatistics;
+import mpicbg.models.IllDefinedDataPointsException;
+import mpicbg.models.NotEnoughDataPointsException;
+
+/**
+ * Refits an {@link IncrementalFunction} to the inliers of a {@link PointStore}, only
+ * the inliers that changed since the last fit are added to or removed from the
+ * {@link SufficientStatistics}. Used by the refinement loop of {@link Ransac}.
+ * 
+ * @author Stephan Preibisch
+ *
+ * @param <S> the statistics
+ */
+public class IncrementalRefit< S extends SufficientStatistics >
+{
+	final IncrementalFunction< S > function;
+	final S statistics;
+
+	// the points that are currently part of the statistics
+	final boolean[] fitted;
+	final int[] fittedIndices;
+	int numFitted = 0;
+
+	public IncrementalRefit( final IncrementalFunction< S > function, final int numPoints )
+	{
+		this.function = function;
+		this.statistics = function.createStatistics();
+		this.fitted = new boolean[ numPoints ];
+		this.fittedIndices = new int[ numPoints ];
+	}
+
+	/**
+	 * @param function - the function
+	 * @param numPoints - the number of points in the store
+	 * @return a new {@link IncrementalRefit} or null if the function is not an {@link IncrementalFunction}
+	 */
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	public static IncrementalRefit< ? > create( final Object function, final int numPoints )
+	{
+		if ( function instanceof IncrementalFunction )
+			return new IncrementalRefit( ( IncrementalFunction )function, numPoints );
+		else
+			return null;
+	}
+
+	/**
+	 * Removes all points
+	 */
+	public void clear()
+	{
+		for ( int j = 0; j < numFitted; ++j )
+			fitted[ fittedIndices[ j ] ] = false;
+
+		numFitted = 0;
+		statistics.clear();
+	}
+
+	/**
+	 * Updates the statistics to the current inliers of the store and fits the function.
+	 * 
+	 * @param store - the store (same points as all previous calls since {@link #clear()})
+	 * @throws NotEnoughDataPointsException - if there are not enough inliers
+	 * @throws IllDefinedDataPointsException - if the inliers are ill-defined
+	 */
+	public void fit( final PointStore store ) throws NotEnoughDataPointsException, IllDefinedDataPointsException
+	{
+		final double[] x = store.x;
+		final double[] y = store.y;
+
+		// remove the points that are not inliers anymore
+		for ( int j = 0; j < numFitted; ++j )
+		{
+			final int i = fittedIndices[ j ];
+
+			if ( !store.inlierMask[ i ] )
+			{
+				statistics.remove( x[ i ], y[ i ] );
+				fitted[ i ] = false;
+			}
+		}
+
+		// add the new inliers
+		for ( int j = 0; j < store.numInliers(); ++j )
+		{
+			final int i = store.inlierIndices[ j ];
+
+			if ( !fitted[ i ] )
+			{
+				statistics.add( x[ i ], y[ i ] );
+				fitted[ i ] = true;
+			}
+
+			fittedIndices[ j ] = i;
+		}
+
+		numFitted = store.numInliers();
+
+		function.fitFunction( statistics );
+	}
+}
@@ -0,0 +1,67 @@
+/*-
+ * #%L
+ * code for function fitting
+ * %%
+ * Copyright (C) 2015 - 2025 Developers
+ * %%
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * 3. Neither the name of the Preibisch Lab nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package fit.ransac;
+
+/**
+ * The penalty of an information criterion for the number of parameters of a model, it is added
+ * to -2 log( likelihood ) to compare models of different complexity (see {@link MultiModelRansac}).
+ * 
+ * @author Stephan Preibisch
+ */
+public interface InformationCriterion
+{
+	/**
+	 * Akaike information criterion, 2k
+	 */
+	public static final InformationCriterion AIC = new InformationCriterion()
+	{
+		@Override
+		public double penalty( final int numParameters, final int numPoints ) { return 2.0 * numParameters; }
+	};
+
+	/**
+	 * Bayesian information criterion, k log( n ), prefers simpler models than AIC for more than 7 points
+	 */
+	public static final InformationCriterion BIC = new InformationCriterion()
+	{
+		@Override
+		public double penalty( final int numParameters, final int numPoints ) { return numParameters * Math.log( numPoints ); }
+	};
+
+	/**
+	 * @param numParameters - the number of parameters of the model
+	 * @param numPoints - the number of points the likelihood is computed on
+	 * @return the penalty
+	 */
+	public double penalty( final int numParameters, final int numPoints );
+}
@@ -0,0 +1,504 @@
+/*-
+ * #%L
+ * code for function fitting
+ * %%
+ * Copyright (C) 2015 - 2025 Developers
+ * %%
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * 3. Neither the name of the Preibisch Lab nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package fit.ransac;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Random;
+
+import fit.AbstractFunction2D;
+import fit.PointStore;
+import mpicbg.models.IllDefinedDataPointsException;
+import mpicbg.models.NotEnoughDataPointsException;
+
+/**
+ * J-linkage (Toldo and Fusiello, 2008), finds several functions (e.g. all segments of a microtubule
+ * kymograph) from one pool of hypotheses instead of running RANSAC again after removing the inliers of
+ * every function found. Every hypothesis is fitted to a minimal sample and tested like in {@link Ransac}
+ * (epsilon, minNumInliers and maxGapDim0), its inliers are the points that prefer it. The preference set
+ * of a point is a bitset over all hypotheses, the preference set of a cluster of points is the intersection
+ * of the preference sets of its points. Starting with one cluster per point, the two clusters with the
+ * smallest Jaccard distance of their preference sets are merged until all clusters have disjoint preference
+ * sets. Finally the model is fitted to every cluster with enough points and tested again, points that are
+ * not part of any function are outliers.
+ * 
+ * Points of one function only share hypotheses if the minimal samples are drawn from the same function, so a
+ * {@link LocalitySamplerFactory} or {@link NeighborhoodSamplerFactory} should be set in the {@link RansacSettings}
+ * if there are many functions. The random number generator (seed), the {@link Sampler}, the {@link Constraint},
+ * the deadline and the {@link CancellationToken} of the settings are used (an expired deadline only stops the
+ * sampling), it always runs single-threaded.
+ * 
+ * @author Stephan Preibisch
+ */
+public class JLinkage
+{
+	private JLinkage() {}
+
+	/**
+	 * @param model - the type of function, it is not modified
+	 * @param store - the points, they are not modified
+	 * @param numHypotheses - the number of minimal samples
+	 * @param epsilon maximal allowed transfer error
+	 * @param minNumInliers minimally required absolute number of inliers of a hypothesis and of a function
+	 * @param maxGapDim0 max distance between points on the x-axis (will keep the larger set of points)
+	 * @param labels - if not null, the index of the function of every point is stored in it (-1 for outliers)
+	 * @param settings - seed, sampler etc. (can be null)
+	 * 
+	 * @throws NotEnoughDataPointsException if there are not enough points for the model
+	 * 
+	 * @return the functions, sorted by their number of inliers (descending)
+	 */
+	public static < M extends AbstractFunction2D< M > > ArrayList< M > fit(
+			final M model,
+			final PointStore store,
+			final int numHypotheses,
+			final double epsilon,
+			final int minNumInliers,
+			final double maxGapDim0,
+			final int[] labels,
+			final RansacSettings settings )
+		throws NotEnoughDataPointsException
+	{
+		final int minNumMatches = model.getMinNumMatches();
+		final int n = store.size();
+
+		if ( n < minNumMatches )
+			throw new NotEnoughDataPointsException( n + " data points are not enough to solve the Model, at least " + minNumMatches + " data points required." );
+
+		final long[] preferences = preferences( model, store, numHypotheses, epsilon, minNumInliers, maxGapDim0, settings );
+		final int[] clusterOf = cluster( preferences, n );
+
+		// the points of every cluster with enough points
+		final int[] size = new int[ n ];
+
+		for ( int i = 0; i < n; ++i )
+			++size[ clusterOf[ i ] ];
+
+		final int[][] clusters = new int[ n ][];
+		final int[] numPoints = new int[ n ];
+
+		for ( int i = 0; i < n; ++i )
+		{
+			final int c = clusterOf[ i ];
+
+			if ( size[ c ] < Math.max( minNumInliers, minNumMatches ) )
+				continue;
+
+			if ( clusters[ c ] == null )
+				clusters[ c ] = new int[ size[ c ] ];
+
+			clusters[ c ][ numPoints[ c ]++ ] = i;
+		}
+
+		// fit and test the model on the points of every cluster
+		final ArrayList< M > functions = new ArrayList< M >();
+		final ArrayList< int[] > inliers = new ArrayList< int[] >();
+
+		for ( final int[] points : clusters )
+		{
+			if ( points == null )
+				continue;
+
+			final double[] x = new double[ points.length ];
+			final double[] y = new double[ points.length ];
+
+			for ( int j = 0; j < points.length; ++j )
+			{
+				x[ j ] = store.x[ points[ j ] ];
+				y[ j ] = store.y[ points[ j ] ];
+			}
+
+			final PointStore cluster = new PointStore( x, y );
+			final M function = model.copy();
+
+			if ( fitCluster( function, cluster, epsilon, minNumInliers, maxGapDim0 ) )
+			{
+				final int[] clusterInliers = new int[ cluster.numInliers() ];
+
+				for ( int j = 0; j < clusterInliers.length; ++j )
+					clusterInliers[ j ] = points[ cluster.inlierIndices[ j ] ];
+
+				functions.add( function );
+				inliers.add( clusterInliers );
+			}
+		}
+
+		// by the number of inliers, ties by their first point
+		final ArrayList< Integer > order = new ArrayList< Integer >();
+
+		for ( int j = 0; j < functions.size(); ++j )
+			order.add( j );
+
+		Collections.sort( order, new Comparator< Integer >()
+		{
+			@Override
+			public int compare( final Integer j1, final Integer j2 )
+			{
+				return Integer.compare( inliers.get( j2 ).length, inliers.get( j1 ).length );
+			}
+		} );
+
+		final ArrayList< M > sorted = new ArrayList< M >();
+
+		if ( labels != null )
+			for ( int i = 0; i < n; ++i )
+				labels[ i ] = -1;
+
+		for ( final int j : order )
+		{
+			if ( labels != null )
+				for ( final int i : inliers.get( j ) )
+					labels[ i ] = sorted.size();
+
+			sorted.add( functions.get( j ) );
+		}
+
+		return sorted;
+	}
+
+	/**
+	 * Merges the two clusters with the smallest Jaccard distance of their preference sets until all clusters
+	 * have disjoint preference sets (ties are merged in the order of their first points). The preference sets
+	 * are modified.
+	 * 
+	 * @param preferences - the preference sets of all n points
+	 * @param n - the number of points
+	 * 
+	 * @return the first point of the cluster of every point
+	 */
+	protected static int[] cluster( final long[] preferences, final int n )
+	{
+		final int words = preferences.length / n;
+
+		// clusters are linked lists of points, a cluster is represented by its first point
+		final int[] next = new int[ n ];
+		final int[] last = new int[ n ];
+		final boolean[] active = new boolean[ n ];
+
+		// the number of hypotheses in the preference set of every cluster
+		final int[] cardinality = new int[ n ];
+
+		for ( int i = 0; i < n; ++i )
+		{
+			next[ i ] = -1;
+			last[ i ] = i;
+			active[ i ] = true;
+			cardinality[ i ] = cardinality( i, preferences, words );
+		}
+
+		// the clusters that share hypotheses with every cluster (ascending), the preference
+		// sets only shrink, so these lists only shrink as well
+		final int[][] neighbors = new int[ n ][ 8 ];
+		final int[] numNeighbors = new int[ n ];
+
+		findNeighbors( preferences, words, cardinality, neighbors, numNeighbors );
+
+		// the nearest cluster of every cluster (with a larger index, -1 if there is none)
+		final int[] nearest = new int[ n ];
+		final double[] distance = new double[ n ];
+
+		for ( int i = 0; i < n; ++i )
+			findNearest( i, preferences, words, cardinality, active, neighbors, numNeighbors, nearest, distance );
+
+		while ( true )
+		{
+			int a = -1;
+
+			for ( int i = 0; i < n; ++i )
+				if ( active[ i ] && nearest[ i ] >= 0 && ( a < 0 || distance[ i ] < distance[ a ] ) )
+					a = i;
+
+			if ( a < 0 )
+				break;
+
+			// merge b into a
+			final int b = nearest[ a ];
+
+			for ( int w = 0; w < words; ++w )
+				preferences[ a * words + w ] &= preferences[ b * words + w ];
+
+			cardinality[ a ] = cardinality( a, preferences, words );
+
+			next[ last[ a ] ] = b;
+			last[ a ] = last[ b ];
+			active[ b ] = false;
+
+			// only distances to the merged cluster change, clusters that had a or b as nearest
+			// cluster are neighbors of a or b
+			for ( final int c : new int[]{ a, b } )
+			{
+				for ( int k = 0; k < numNeighbors[ c ]; ++k )
+				{
+					final int i = neighbors[ c ][ k ];
+
+					if ( !active[ i ] || i == a )
+						continue;
+
+					if ( nearest[ i ] == a || nearest[ i ] == b )
+					{
+						findNearest( i, preferences, words, cardinality, active, neighbors, numNeighbors, nearest, distance );
+					}
+					else if ( i < a && c == a )
+					{
+						final double d = jaccardDistance( i, a, preferences, words, cardinality );
+
+						if ( d < 1 && ( nearest[ i ] < 0 || d < distance[ i ] || ( d == distance[ i ] && a < nearest[ i ] ) ) )
+						{
+							nearest[ i ] = a;
+							distance[ i ] = d;
+						}
+					}
+				}
+			}
+
+			findNearest( a, preferences, words, cardinality, active, neighbors, numNeighbors, nearest, distance );
+		}
+
+		final int[] cluster = new int[ n ];
+
+		for ( int c = 0; c < n; ++c )
+			if ( active[ c ] )
+				for ( int i = c; i >= 0; i = next[ i ] )
+					cluster[ i ] = c;
+
+		return cluster;
+	}
+
+	/**
+	 * @return the preference sets of all points, words = ceil( #hypotheses / 64 ) longs per point
+	 */
+	protected static < M extends AbstractFunction2D< M > > long[] preferences(
+			final M model,
+			final PointStore store,
+			final int numHypotheses,
+			final double epsilon,
+			final int minNumInliers,
+			final double maxGapDim0,
+			final RansacSettings settings )
+		throws NotEnoughDataPointsException
+	{
+		@SuppressWarnings( "unchecked" )
+		final Constraint< M > constraint = settings == null ? null : ( Constraint< M > )settings.getConstraint();
+
+		final int minNumMatches = model.getMinNumMatches();
+		final int n = store.size();
+		final int words = Math.max( 1, ( numHypotheses + 63 ) / 64 );
+		final long[] preferences = new long[ n * words ];
+
+		final Random random = settings == null ? model.getRandom() : settings.getRandom( model.getRandom() );
+		final Sampler sampler = Ransac.createSampler( store, numHypotheses, minNumMatches, random, settings );
+		final int[] sample = new int[ minNumMatches ];
+		final PointStore tmp = store.shareCoordinates();
+		final M m = model.copy();
+
+		for ( int h = 0; h < numHypotheses; ++h )
+		{
+			if ( ( settings != null && settings.isExpired() ) || !sampler.drawSample( sample ) )
+				break;
+
+			try
+			{
+				m.fitFunction( tmp, sample, 0, minNumMatches );
+			}
+			catch ( final IllDefinedDataPointsException e )
+			{
+				continue;
+			}
+
+			if ( constraint != null && !constraint.isValid( m ) )
+				continue;
+
+			if ( !m.test( tmp, epsilon, 0, minNumInliers, maxGapDim0 ) )
+				continue;
+
+			final int word = h >>> 6;
+			final long bit = 1L << ( h & 63 );
+
+			for ( int j = 0; j < tmp.numInliers(); ++j )
+				preferences[ tmp.inlierIndices[ j ] * words + word ] |= bit;
+		}
+
+		return preferences;
+	}
+
+	/**
+	 * Fits the function to the cluster and refits it to its inliers until they do not change anymore
+	 * 
+	 * @return true if the function has enough inliers
+	 */
+	protected static < M extends AbstractFunction2D< M > > boolean fitCluster(
+			final M function,
+			final PointStore cluster,
+			final double epsilon,
+			final int minNumInliers,
+			final double maxGapDim0 )
+		throws NotEnoughDataPointsException
+	{
+		int numInliers = cluster.size();
+
+		for ( int j = 0; j < numInliers; ++j )
+			cluster.addInlier( j );
+
+		do
+		{
+			numInliers = cluster.numInliers();
+
+			try
+			{
+				function.fitFunction( cluster, cluster.inlierIndices, 0, numInliers );
+			}
+			catch ( final IllDefinedDataPointsException e )
+			{
+				return false;
+			}
+
+			if ( !function.test( cluster, epsilon, 0, minNumInliers, maxGapDim0 ) || cluster.numInliers() < function.getMinNumMatches() )
+				return false;
+		}
+		while ( cluster.numInliers() != numInliers );
+
+		return true;
+	}
+
+	/**
+	 * Updates the nearest cluster (with a larger index) of cluster i, removes clusters that
+	 * do not exist anymore or do not share hypotheses from its neighbors
+	 */
+	protected static void findNearest(
+			final int i,
+			final long[] preferences,
+			final int words,
+			final int[] cardinality,
+			final boolean[] active,
+			final int[][] neighbors,
+			final int[] numNeighbors,
+			final int[] nearest,
+			final double[] distance )
+	{
+		final int[] list = neighbors[ i ];
+		int numRemaining = 0;
+
+		nearest[ i ] = -1;
+		distance[ i ] = 1;
+
+		for ( int k = 0; k < numNeighbors[ i ]; ++k )
+		{
+			final int j = list[ k ];
+
+			if ( !active[ j ] )
+				continue;
+
+			final double d = jaccardDistance( i, j, preferences, words, cardinality );
+
+			if ( d == 1 )
+				continue;
+
+			list[ numRemaining++ ] = j;
+
+			if ( j > i && d < distance[ i ] )
+			{
+				nearest[ i ] = j;
+				distance[ i ] = d;
+			}
+		}
+
+		numNeighbors[ i ] = numRemaining;
+	}
+
+	/**
+	 * Finds the neighbors of all points, the lists are sorted
+	 */
+	protected static void findNeighbors( final long[] preferences, final int words, final int[] cardinality, final int[][] neighbors, final int[] numNeighbors )
+	{
+		final int n = cardinality.length;
+
+		for ( int i = 0; i < n; ++i )
+		{
+			if ( cardinality[ i ] == 0 )
+				continue;
+
+			for ( int j = i + 1; j < n; ++j )
+			{
+				if ( cardinality[ j ] == 0 )
+					continue;
+
+				boolean shared = false;
+
+				for ( int w = 0, a = i * words, b = j * words; !shared && w < words; ++w, ++a, ++b )
+					shared = ( preferences[ a ] & preferences[ b ] ) != 0;
+
+				if ( shared )
+				{
+					addNeighbor( neighbors, numNeighbors, i, j );
+					addNeighbor( neighbors, numNeighbors, j, i );
+				}
+			}
+		}
+	}
+
+	protected static void addNeighbor( final int[][] neighbors, final int[] numNeighbors, final int i, final int j )
+	{
+		if ( numNeighbors[ i ] == neighbors[ i ].length )
+			neighbors[ i ] = Arrays.copyOf( neighbors[ i ], neighbors[ i ].length * 2 );
+
+		neighbors[ i ][ numNeighbors[ i ]++ ] = j;
+	}
+
+	/**
+	 * @return 1 - |A and B| / |A or B| of the preference sets of the clusters i and j (1 if they are disjoint)
+	 */
+	protected static double jaccardDistance( final int i, final int j, final long[] preferences, final int words, final int[] cardinality )
+	{
+		int intersection = 0;
+
+		for ( int w = 0, a = i * words, b = j * words; w < words; ++w, ++a, ++b )
+			intersection += Long.bitCount( preferences[ a ] & preferences[ b ] );
+
+		return intersection == 0 ? 1 : 1 - ( double )intersection / ( cardinality[ i ] + cardinality[ j ] - intersection );
+	}
+
+	/**
+	 * @return the number of hypotheses in the preference set of cluster i
+	 */
+	protected static int cardinality( final int i, final long[] preferences, final int words )
+	{
+		int cardinality = 0;
+
+		for ( int w = 0, a = i * words; w < words; ++w, ++a )
+			cardinality += Long.bitCount( preferences[ a ] );
+
+		return cardinality;
+	}
+}
@@ -0,0 +1,197 @@
+/*-
+ * #%L
+ * code for function fitting
+ * %%
+ * Copyright (C) 2015 - 2025 Developers
+ * %%
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * 3. Neither the name of the Preibisch Lab nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package fit.ransac;
+
+import java.util.Random;
+
+import fit.AbstractFunction;
+import fit.PointStore;
+import mpicbg.models.IllDefinedDataPointsException;
+import mpicbg.models.NotEnoughDataPointsException;
+
+/**
+ * The local optimization of LO-RANSAC (Chum et al. 2003, Lebeda et al. 2012). It is only applied when RANSAC
+ * finds a new best hypothesis: an inner RANSAC draws non-minimal samples from its inliers, each fit is refined
+ * by iterative least squares on the inliers of a threshold that shrinks from a multiple of epsilon to epsilon,
+ * and the result is tested with the constraints of the RANSAC. Finally the best hypothesis is fitted to its inliers. If local optimization is used, RANSAC does
+ * not refine every acceptable hypothesis anymore.
+ * 
+ * It only needs the least-squares fit and the distances of the model, so it works for all {@link AbstractFunction}s
+ * (e.g. {@link fit.AbstractFunction2D} and {@link fit.circular.AbstractShape2D}).
+ * 
+ * @author Stephan Preibisch
+ */
+public class LocalOptimization
+{
+	final int numIterations, maxSampleSizeFactor, numSteps;
+	final double thresholdMultiplier;
+
+	/**
+	 * @param numIterations - the number of non-minimal samples of the inner RANSAC
+	 * @param maxSampleSizeFactor - the non-minimal samples have at most this many times the size of a minimal sample (and at most half the inliers)
+	 * @param thresholdMultiplier - the first threshold of the iterative least squares is this multiple of epsilon
+	 * @param numSteps - the number of least-squares fits while the threshold shrinks to epsilon
+	 */
+	public LocalOptimization( final int numIterations, final int maxSampleSizeFactor, final double thresholdMultiplier, final int numSteps )
+	{
+		this.numIterations = numIterations;
+		this.maxSampleSizeFactor = maxSampleSizeFactor;
+		this.thresholdMultiplier = thresholdMultiplier;
+		this.numSteps = Math.max( 1, numSteps );
+	}
+
+	public LocalOptimization()
+	{
+		this( 10, 7, 3, 4 );
+	}
+
+	/**
+	 * @param best - the best hypothesis, is updated if a better one is found
+	 * @param store - contains the inliers of the best hypothesis, is updated if a better one is found
+	 * @param m - a model to work with
+	 * @param tmp - a store to work with that shares the coordinates of store
+	 * @param test - the test of the RANSAC
+	 * @param minNumInliers - minimally required absolute number of inliers
+	 * @param rnd - draws the non-minimal samples
+	 * @param <M> the model
+	 * @return true if a better hypothesis was found
+	 * @throws NotEnoughDataPointsException if the test throws it
+	 */
+	public < M extends AbstractFunction< M > > boolean optimize(
+			final M best,
+			final PointStore store,
+			final M m,
+			final PointStore tmp,
+			final HypothesisTest< M > test,
+			final int minNumInliers,
+			final Random rnd )
+		throws NotEnoughDataPointsException
+	{
+		final int minNumMatches = best.getMinNumMatches();
+		final double epsilon = test.getEpsilon();
+
+		boolean improved = false;
+
+		for ( int it = 0; it < numIterations; ++it )
+		{
+			final int numInliers = store.numInliers();
+			final int k = Math.min( maxSampleSizeFactor * minNumMatches, numInliers / 2 );
+
+			if ( k < minNumMatches )
+				break;
+
+			final int[] sample = drawSample( store, k, rnd );
+
+			try
+			{
+				m.fitFunction( store, sample, 0, k );
+
+				// iterative least squares with a shrinking threshold
+				for ( int step = 0; step < numSteps; ++step )
+				{
+					final double threshold = numSteps == 1 ? epsilon :
+						epsilon * ( thresholdMultiplier - ( thresholdMultiplier - 1 ) * step / ( numSteps - 1 ) );
+
+					tmp.clearInliers();
+					m.computeResiduals( tmp );
+
+					for ( int i = 0; i < tmp.size(); ++i )
+						if ( tmp.residual[ i ] < threshold )
+							tmp.addInlier( i );
+
+					if ( tmp.numInliers() < minNumMatches )
+						break;
+
+					m.fitFunction( tmp, tmp.inlierIndices, 0, tmp.numInliers() );
+				}
+			}
+			catch ( final IllDefinedDataPointsException e )
+			{
+				continue;
+			}
+
+			if ( test.test( m, tmp ) && tmp.numInliers() >= minNumInliers && m.betterThan( best ) )
+			{
+				best.set( m );
+				store.setInliers( tmp );
+				improved = true;
+			}
+		}
+
+		// least squares on the inliers of the best hypothesis as long as it gains inliers (keep it if it is not worse)
+		for ( int numInliers = 0; numInliers < store.numInliers(); )
+		{
+			numInliers = store.numInliers();
+
+			m.set( best );
+
+			try { m.fitFunction( store, store.inlierIndices, 0, numInliers ); }
+			catch ( final IllDefinedDataPointsException e )
+			{
+				break;
+			}
+
+			if ( test.test( m, tmp ) && tmp.numInliers() >= minNumInliers && !best.betterThan( m ) )
+			{
+				best.set( m );
+				store.setInliers( tmp );
+				improved = true;
+			}
+		}
+
+		return improved;
+	}
+
+	/**
+	 * Draws k distinct inliers of the store (partial Fisher-Yates on a copy of the inliers)
+	 * 
+	 * @return the sample in the first k entries
+	 */
+	protected static int[] drawSample( final PointStore store, final int k, final Random rnd )
+	{
+		final int numInliers = store.numInliers();
+		final int[] sample = new int[ numInliers ];
+
+		System.arraycopy( store.inlierIndices, 0, sample, 0, numInliers );
+
+		for ( int j = 0; j < k; ++j )
+		{
+			final int r = j + rnd.nextInt( numInliers - j );
+			final int tmp = sample[ r ];
+			sample[ r ] = sample[ j ];
+			sample[ j ] = tmp;
+		}
+
+		return sample;
+	}
+}
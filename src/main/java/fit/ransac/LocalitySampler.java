@@ -0,0 +1,143 @@
+/*-
+ * #%L
+ * code for function fitting
+ * %%
+ * Copyright (C) 2015 - 2025 Developers
+ * %%
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * 3. Neither the name of the Preibisch Lab nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package fit.ransac;
+
+import java.util.Random;
+
+/**
+ * Draws the first point of a minimal sample uniformly and the remaining points among
+ * the points whose x-coordinate is at most a radius away from it. For functions in 2d that
+ * only accept inliers without large gaps on the x-axis (maxGapDim0), most hypotheses then
+ * come from points that can actually belong to the same segment.
+ * 
+ * @author Stephan Preibisch
+ */
+public class LocalitySampler implements Sampler
+{
+	// how often we try to find a first point with enough neighbors before drawing uniformly
+	final static int MAX_TRIES = 100;
+
+	final int[] xOrder, from, to;
+	final Random rnd;
+	final int[] positions;
+
+	/**
+	 * @param x - the x-coordinates of all candidates
+	 * @param xOrder - the indices of the candidates sorted by x
+	 * @param radius - the maximal distance on the x-axis of the remaining points to the first point
+	 * @param sampleSize - the size of a minimal sample
+	 * @param rnd - the random number generator
+	 */
+	public LocalitySampler( final double[] x, final int[] xOrder, final double radius, final int sampleSize, final Random rnd )
+	{
+		final int n = xOrder.length;
+
+		this.xOrder = xOrder;
+		this.rnd = rnd;
+		this.positions = new int[ sampleSize ];
+
+		// the window [from, to) of positions in xOrder for each position
+		this.from = new int[ n ];
+		this.to = new int[ n ];
+
+		for ( int p = 0, lo = 0, hi = 0; p < n; ++p )
+		{
+			final double xp = x[ xOrder[ p ] ];
+
+			while ( x[ xOrder[ lo ] ] < xp - radius )
+				++lo;
+
+			while ( hi < n && x[ xOrder[ hi ] ] <= xp + radius )
+				++hi;
+
+			from[ p ] = lo;
+			to[ p ] = hi;
+		}
+	}
+
+	@Override
+	public boolean drawSample( final int[] sample )
+	{
+		final int n = xOrder.length;
+		final int k = sample.length;
+
+		if ( k > n )
+			return false;
+
+		for ( int t = 0; t < MAX_TRIES; ++t )
+		{
+			final int p = rnd.nextInt( n );
+
+			if ( to[ p ] - from[ p ] >= k )
+			{
+				positions[ 0 ] = p;
+				drawDistinct( from[ p ], to[ p ], k );
+
+				for ( int j = 0; j < k; ++j )
+					sample[ j ] = xOrder[ positions[ j ] ];
+
+				return true;
+			}
+		}
+
+		// the points are too sparse for the radius
+		positions[ 0 ] = rnd.nextInt( n );
+		drawDistinct( 0, n, k );
+
+		for ( int j = 0; j < k; ++j )
+			sample[ j ] = xOrder[ positions[ j ] ];
+
+		return true;
+	}
+
+	/**
+	 * Draws positions[1...k) distinct from each other and positions[0] in [lo, hi)
+	 */
+	protected void drawDistinct( final int lo, final int hi, final int k )
+	{
+		for ( int j = 1; j < k; ++j )
+		{
+			boolean distinct;
+
+			do
+			{
+				positions[ j ] = lo + rnd.nextInt( hi - lo );
+				distinct = true;
+
+				for ( int i = 0; i < j && distinct; ++i )
+					distinct = positions[ i ] != positions[ j ];
+			}
+			while ( !distinct );
+		}
+	}
+}
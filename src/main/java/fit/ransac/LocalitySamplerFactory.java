@@ -0,0 +1,71 @@
+/*-
+ * #%L
+ * code for function fitting
+ * %%
+ * Copyright (C) 2015 - 2025 Developers
+ * %%
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * 3. Neither the name of the Preibisch Lab nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package fit.ransac;
+
+import java.util.Random;
+
+import fit.PointStore;
+
+/**
+ * Creates {@link LocalitySampler}s, the radius should be a multiple of the maxGapDim0
+ * of the RANSAC (but large enough that a minimal sample can determine the function well).
+ * 
+ * @author Stephan Preibisch
+ */
+public class LocalitySamplerFactory implements SamplerFactory
+{
+	final double radius;
+
+	/**
+	 * @param radius - the maximal distance on the x-axis of the points of a minimal sample to its first point
+	 */
+	public LocalitySamplerFactory( final double radius )
+	{
+		this.radius = radius;
+	}
+
+	/**
+	 * @param maxGapDim0 - the maximal gap on the x-axis between inliers
+	 * @param numGaps - the radius in multiples of maxGapDim0
+	 */
+	public LocalitySamplerFactory( final double maxGapDim0, final double numGaps )
+	{
+		this( maxGapDim0 * numGaps );
+	}
+
+	@Override
+	public LocalitySampler create( final PointStore store, final int sampleSize, final Random rnd )
+	{
+		return new LocalitySampler( store.x, store.getXOrder(), radius, sampleSize, rnd );
+	}
+}
@@ -0,0 +1,105 @@
+/*-
+ * #%L
+ * code for function fitting
+ * %%
+ * Copyright (C) 2015 - 2025 Developers
+ * %%
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * 3. Neither the name of the Preibisch Lab nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package fit.ransac;
+
+import fit.PointStore;
+
+/**
+ * MLESAC (Torr and Zisserman 2000), the negative log-likelihood of a mixture of Gaussian
+ * inliers (sigma = epsilon / 2) and uniformly distributed outliers. The mixing parameter is
+ * estimated by a few EM iterations. Candidates that are not inliers (e.g. because of a gap)
+ * count as outliers. The likelihood of each candidate is relative to a perfect inlier, so the
+ * cost is non-negative.
+ * 
+ * @author Stephan Preibisch
+ */
+public class MlesacScoring implements Scoring
+{
+	final double outlierRange;
+	final int numIterations;
+
+	/**
+	 * @param outlierRange - the range of the residuals of outliers (e.g. the extent of the data)
+	 * @param numIterations - the number of EM iterations to estimate the inlier ratio
+	 */
+	public MlesacScoring( final double outlierRange, final int numIterations )
+	{
+		this.outlierRange = outlierRange;
+		this.numIterations = numIterations;
+	}
+
+	public MlesacScoring( final double outlierRange )
+	{
+		this( outlierRange, 3 );
+	}
+
+	@Override
+	public double cost( final PointStore store, final double epsilon )
+	{
+		final int n = store.size();
+		final int numInliers = store.numInliers();
+
+		final double sigma = epsilon / 2;
+		final double norm = 1.0 / ( Math.sqrt( 2 * Math.PI ) * sigma );
+		final double outlier = 1.0 / outlierRange;
+
+		// EM for the ratio of inliers, outliers have no responsibility for the inlier distribution
+		double gamma = 0.5;
+
+		for ( int it = 0; it < numIterations; ++it )
+		{
+			double sum = 0;
+
+			for ( int j = 0; j < numInliers; ++j )
+			{
+				final double r = store.residual[ store.inlierIndices[ j ] ];
+				final double in = gamma * norm * Math.exp( -r * r / ( 2 * sigma * sigma ) );
+				sum += in / ( in + ( 1 - gamma ) * outlier );
+			}
+
+			gamma = sum / n;
+		}
+
+		final double best = gamma * norm + ( 1 - gamma ) * outlier;
+
+		double cost = ( n - numInliers ) * -Math.log( ( 1 - gamma ) * outlier / best );
+
+		for ( int j = 0; j < numInliers; ++j )
+		{
+			final double r = store.residual[ store.inlierIndices[ j ] ];
+			cost -= Math.log( ( gamma * norm * Math.exp( -r * r / ( 2 * sigma * sigma ) ) + ( 1 - gamma ) * outlier ) / best );
+		}
+
+		return cost / n;
+	}
+}
@@ -0,0 +1,62 @@
+/*-
+ * #%L
+ * code for function fitting
+ * %%
+ * Copyright (C) 2015 - 2025 Developers
+ * %%
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * 3. Neither the name of the Preibisch Lab nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package fit.ransac;
+
+import fit.PointStore;
+
+/**
+ * MSAC (Torr and Zisserman 2000), the truncated quadratic cost. Inliers cost their squared residual,
+ * all other candidates epsilon^2, normalized to [0, 1]. Hypotheses with the same number of inliers are
+ * ranked by how well they fit them.
+ * 
+ * @author Stephan Preibisch
+ */
+public class MsacScoring implements Scoring
+{
+	@Override
+	public double cost( final PointStore store, final double epsilon )
+	{
+		final double epsilonSq = epsilon * epsilon;
+		final int numInliers = store.numInliers();
+
+		double sum = ( store.size() - numInliers ) * epsilonSq;
+
+		for ( int j = 0; j < numInliers; ++j )
+		{
+			final double r = store.residual[ store.inlierIndices[ j ] ];
+			sum += Math.min( r * r, epsilonSq );
+		}
+
+		return sum / ( store.size() * epsilonSq );
+	}
+}
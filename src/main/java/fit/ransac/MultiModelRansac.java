@@ -0,0 +1,338 @@
+/*-
+ * #%L
+ * code for function fitting
+ * %%
+ * Copyright (C) 2015 - 2025 Developers
+ * %%
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * 3. Neither the name of the Preibisch Lab nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package fit.ransac;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import fit.AbstractFunction2D;
+import fit.PointStore;
+import mpicbg.models.IllDefinedDataPointsException;
+import mpicbg.models.NotEnoughDataPointsException;
+
+/**
+ * RANSAC for several models at once, e.g. a linear, a quadratic and a cubic polynomial. Every minimal
+ * sample (of the model that needs the most points) yields one hypothesis per model, each one is fitted to
+ * as many points of the sample as it needs. The residuals of all hypotheses are computed in one pass over
+ * the points (block by block, so the coordinates are only loaded once), and every model keeps its own best
+ * hypothesis (refined with its inliers). Finally an {@link InformationCriterion} selects one of the models,
+ * so comparing the models costs about as much as fitting the most complex one.
+ * 
+ * The criterion uses a truncated Gaussian likelihood: inliers cost r^2 / sigma^2, all other points
+ * epsilon^2 / sigma^2. sigma^2 is estimated from the inliers of the model with the most parameters, it is
+ * not inflated by the bias of a model that is too simple. The number of parameters of a model is its
+ * minimal number of points (degree + 1 for a polynomial).
+ * 
+ * The random number generator (seed), the {@link Sampler}, the confidence, the deadline, the
+ * {@link CancellationToken} and the {@link RansacListener} of the {@link RansacSettings} are used, it always
+ * runs single-threaded. The listener sees the best hypothesis of the model with the most inliers whenever it
+ * improves or another model takes the lead (the criterion is only evaluated at the end), its model type
+ * must therefore accept all models.
+ * 
+ * @author Stephan Preibisch
+ */
+public class MultiModelRansac
+{
+	/**
+	 * how many points are processed by all hypotheses before moving on to the next points
+	 */
+	public static final int BLOCK_SIZE = 1024;
+
+	private MultiModelRansac() {}
+
+	/**
+	 * @param models - the models to compare, each one is set to its best hypothesis (if it has inliers) and
+	 * its cost is set to the value of the information criterion
+	 * @param store - candidate data points inluding (many) outliers, contains the inliers and residuals of the selected model afterwards
+	 * @param iterations number of iterations
+	 * @param epsilon maximal allowed transfer error
+	 * @param minInlierRatio minimal number of inliers to number of candidates
+	 * @param minNumInliers minimally required absolute number of inliers
+	 * @param maxGapDim0 max distance between points on the x-axis (will keep the larger set of points)
+	 * @param criterion - selects the model, e.g. {@link InformationCriterion#BIC}
+	 * @param rnd - the random number generator used to draw minimal samples (unless a seed is set in the settings)
+	 * @param settings - seed, sampler etc. (can be null)
+	 * 
+	 * @throws NotEnoughDataPointsException if there are not enough points for the model that needs the most
+	 * 
+	 * @return the index of the selected model, -1 if no model has enough inliers
+	 */
+	public static int ransac(
+			final List< ? extends AbstractFunction2D< ? > > models,
+			final PointStore store,
+			final int iterations,
+			final double epsilon,
+			final double minInlierRatio,
+			final int minNumInliers,
+			final double maxGapDim0,
+			final InformationCriterion criterion,
+			final Random rnd,
+			final RansacSettings settings )
+		throws NotEnoughDataPointsException
+	{
+		// sort once, the candidates share the order
+		store.getXOrder();
+
+		final ArrayList< Candidate< ? > > candidates = new ArrayList< Candidate< ? > >();
+		int minNumMatches = 0;
+
+		for ( final AbstractFunction2D< ? > model : models )
+		{
+			final Candidate< ? > candidate = candidate( model, store );
+			candidates.add( candidate );
+			minNumMatches = Math.max( minNumMatches, candidate.minNumMatches );
+		}
+
+		if ( store.size() < minNumMatches )
+			throw new NotEnoughDataPointsException( store.size() + " data points are not enough to solve the Models, at least " + minNumMatches + " data points required." );
+
+		store.clearInliers();
+
+		final Random random = settings == null ? rnd : settings.getRandom( rnd );
+		final Sampler sampler = Ransac.createSampler( store, iterations, minNumMatches, random, settings );
+
+		// the enumeration is not a random order (the first samples all contain the first point), all samples are evaluated
+		final double confidence = settings == null || sampler instanceof ExhaustiveSampler ? 0 : settings.getConfidence();
+		final int[] sample = new int[ minNumMatches ];
+		final int n = store.size();
+
+		@SuppressWarnings( "unchecked" )
+		final RansacListener< AbstractFunction2D< ? > > listener = settings == null ? null : ( RansacListener< AbstractFunction2D< ? > > )settings.getListener();
+		Candidate< ? > leader = null;
+
+		int maxIterations = iterations;
+
+		for ( int i = 0; i < maxIterations; ++i )
+		{
+			if ( ( settings != null && settings.isExpired() ) || !sampler.drawSample( sample ) )
+				break;
+
+			for ( final Candidate< ? > candidate : candidates )
+				candidate.fit( sample );
+
+			// one pass over the points for all hypotheses
+			for ( int from = 0; from < n; from += BLOCK_SIZE )
+			{
+				final int to = Math.min( n, from + BLOCK_SIZE );
+
+				for ( final Candidate< ? > candidate : candidates )
+					if ( candidate.isFitted )
+						candidate.m.distanceTo( store.x, store.y, from, to, candidate.tmp.residual );
+			}
+
+			Candidate< ? > mostInliers = null;
+			boolean improved = false, mostInliersImproved = false;
+
+			for ( final Candidate< ? > candidate : candidates )
+			{
+				final boolean better = candidate.update( epsilon, minInlierRatio, minNumInliers, maxGapDim0 );
+				improved |= better;
+
+				if ( mostInliers == null || candidate.store.numInliers() > mostInliers.store.numInliers() )
+				{
+					mostInliers = candidate;
+					mostInliersImproved = better;
+				}
+			}
+
+			final int maxInliers = mostInliers.store.numInliers();
+
+			if ( listener != null && maxInliers > 0 && ( mostInliers != leader || mostInliersImproved ) )
+			{
+				leader = mostInliers;
+				listener.improved( leader.best.copy(), store, Arrays.copyOf( leader.store.inlierIndices, maxInliers ), leader.best.getCost() );
+			}
+
+			if ( improved && confidence > 0 )
+				maxIterations = Math.max( i + 1, Math.min( maxIterations,
+						Ransac.requiredIterations( confidence, ( double )maxInliers / n, minNumMatches ) ) );
+		}
+
+		// the residual variance of the model with the most parameters
+		Candidate< ? > mostComplex = null;
+
+		for ( final Candidate< ? > candidate : candidates )
+			if ( candidate.store.numInliers() > 0 && ( mostComplex == null || candidate.minNumMatches > mostComplex.minNumMatches ) )
+				mostComplex = candidate;
+
+		if ( mostComplex == null )
+			return -1;
+
+		final double epsilonSq = epsilon * epsilon;
+		final double sigmaSq = Math.max(
+				mostComplex.sumOfSquares() / Math.max( 1, mostComplex.store.numInliers() - mostComplex.minNumMatches ),
+				1e-12 * epsilonSq + Double.MIN_NORMAL );
+
+		int selected = -1;
+		double min = Double.MAX_VALUE;
+
+		for ( int j = 0; j < candidates.size(); ++j )
+		{
+			final Candidate< ? > candidate = candidates.get( j );
+			final int numInliers = candidate.store.numInliers();
+
+			if ( numInliers == 0 )
+				continue;
+
+			final double value =
+					( candidate.sumOfSquares() + ( n - numInliers ) * epsilonSq ) / sigmaSq +
+					criterion.penalty( candidate.minNumMatches, n );
+
+			candidate.setModel( value );
+
+			if ( value < min )
+			{
+				min = value;
+				selected = j;
+			}
+		}
+
+		final PointStore result = candidates.get( selected ).store;
+		store.setInliers( result );
+		System.arraycopy( result.residual, 0, store.residual, 0, n );
+
+		return selected;
+	}
+
+	@SuppressWarnings( { "unchecked", "rawtypes" } )
+	protected static Candidate< ? > candidate( final AbstractFunction2D< ? > model, final PointStore store )
+	{
+		return new Candidate( ( AbstractFunction2D )model, store );
+	}
+
+	/**
+	 * One of the models, its current hypothesis (m, with residuals and inliers in tmp) and its best
+	 * hypothesis (best, with residuals and inliers in store).
+	 */
+	protected static class Candidate< M extends AbstractFunction2D< M > >
+	{
+		final M model, m, best;
+		final PointStore tmp, store;
+		final int minNumMatches;
+
+		boolean isFitted = false;
+
+		public Candidate( final M model, final PointStore store )
+		{
+			this.model = model;
+			this.m = model.copy();
+			this.best = model.copy();
+			this.tmp = store.shareCoordinates();
+			this.store = store.shareCoordinates();
+			this.minNumMatches = model.getMinNumMatches();
+
+			best.setCost( Double.MAX_VALUE );
+		}
+
+		public void fit( final int[] sample ) throws NotEnoughDataPointsException
+		{
+			try
+			{
+				m.fitFunction( tmp, sample, 0, minNumMatches );
+				isFitted = true;
+			}
+			catch ( final IllDefinedDataPointsException e )
+			{
+				isFitted = false;
+			}
+		}
+
+		/**
+		 * Tests the hypothesis on the residuals of the pass over the points, a new best one is refined
+		 * with its inliers (as {@link Ransac} does for every hypothesis).
+		 * 
+		 * @return true if it is the new best hypothesis
+		 */
+		public boolean update( final double epsilon, final double minInlierRatio, final int minNumInliers, final double maxGapDim0 )
+			throws NotEnoughDataPointsException
+		{
+			if ( !isFitted )
+				return false;
+
+			tmp.clearInliers();
+
+			if ( !m.testResiduals( tmp, epsilon, minInlierRatio, minNumInliers, maxGapDim0 ) || !m.betterThan( best ) )
+				return false;
+
+			int numInliers = 0;
+			boolean isGood = true;
+
+			while ( isGood && numInliers < tmp.numInliers() )
+			{
+				numInliers = tmp.numInliers();
+
+				try
+				{
+					m.fitFunction( tmp, tmp.inlierIndices, 0, numInliers );
+				}
+				catch ( final IllDefinedDataPointsException e )
+				{
+					return false;
+				}
+
+				isGood = m.test( tmp, epsilon, minInlierRatio, minNumInliers, maxGapDim0 );
+			}
+
+			if ( !isGood || !m.betterThan( best ) )
+				return false;
+
+			// keep the residuals of the test, the distance to a higher-order polynomial is not deterministic
+			best.set( m );
+			store.setInliers( tmp );
+			System.arraycopy( tmp.residual, 0, store.residual, 0, tmp.size() );
+
+			return true;
+		}
+
+		public double sumOfSquares()
+		{
+			double sum = 0;
+
+			for ( int j = 0; j < store.numInliers(); ++j )
+			{
+				final double r = store.residual[ store.inlierIndices[ j ] ];
+				sum += r * r;
+			}
+
+			return sum;
+		}
+
+		public void setModel( final double cost )
+		{
+			model.set( best );
+			model.setCost( cost );
+		}
+	}
+}
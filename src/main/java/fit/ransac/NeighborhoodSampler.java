@@ -0,0 +1,224 @@
+/*-
+ * #%L
+ * code for function fitting
+ * %%
+ * Copyright (C) 2015 - 2025 Developers
+ * %%
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * 3. Neither the name of the Preibisch Lab nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package fit.ransac;
+
+import java.util.Random;
+
+/**
+ * NAPSAC-style sampling (Myatt et al. 2002), draws the first point of a minimal sample
+ * uniformly and the remaining points among the points within a radius around it. The points
+ * are stored in a uniform grid (cells at least as large as the radius), neighbors are drawn
+ * from the 3x3 cells around the first point and rejected if they are too far away.
+ * 
+ * @author Stephan Preibisch
+ */
+public class NeighborhoodSampler implements Sampler
+{
+	// how often we try before giving up on a first point, and on finding any first point with enough neighbors
+	final static int MAX_TRIES = 100;
+
+	final double[] x, y;
+	final double radius, radiusSq, minX, minY, cellSize;
+	final int numCellsX, numCellsY;
+	final Random rnd;
+
+	// the points sorted by cell (row-major), cellStart[ c ] is the first one of cell c
+	final int[] cellStart, points;
+
+	// the three ranges in points of the 3x3 cells around a point
+	final int[] rangeFrom = new int[ 3 ], rangeTo = new int[ 3 ];
+
+	/**
+	 * @param x - the x-coordinates of all candidates
+	 * @param y - the y-coordinates of all candidates
+	 * @param radius - the maximal distance of the remaining points to the first point
+	 * @param rnd - the random number generator
+	 */
+	public NeighborhoodSampler( final double[] x, final double[] y, final double radius, final Random rnd )
+	{
+		final int n = x.length;
+
+		this.x = x;
+		this.y = y;
+		this.radius = radius;
+		this.radiusSq = radius * radius;
+		this.rnd = rnd;
+
+		double minX = Double.MAX_VALUE, minY = Double.MAX_VALUE, maxX = -Double.MAX_VALUE, maxY = -Double.MAX_VALUE;
+
+		for ( int i = 0; i < n; ++i )
+		{
+			minX = Math.min( minX, x[ i ] );
+			minY = Math.min( minY, y[ i ] );
+			maxX = Math.max( maxX, x[ i ] );
+			maxY = Math.max( maxY, y[ i ] );
+		}
+
+		this.minX = minX;
+		this.minY = minY;
+
+		// not more cells than about 4 per point
+		final double w = Math.max( 0, maxX - minX ), h = Math.max( 0, maxY - minY );
+		this.cellSize = Math.max( radius, Math.max( Math.sqrt( w * h / ( 4.0 * Math.max( 1, n ) ) ), Math.max( w, h ) / 65536 ) );
+		this.numCellsX = ( int )( w / cellSize ) + 1;
+		this.numCellsY = ( int )( h / cellSize ) + 1;
+
+		// counting sort of the points into their cells
+		this.cellStart = new int[ numCellsX * numCellsY + 1 ];
+		this.points = new int[ n ];
+
+		for ( int i = 0; i < n; ++i )
+			++cellStart[ cell( i ) + 1 ];
+
+		for ( int c = 0; c < numCellsX * numCellsY; ++c )
+			cellStart[ c + 1 ] += cellStart[ c ];
+
+		final int[] next = new int[ numCellsX * numCellsY ];
+		System.arraycopy( cellStart, 0, next, 0, next.length );
+
+		for ( int i = 0; i < n; ++i )
+			points[ next[ cell( i ) ]++ ] = i;
+	}
+
+	protected int cellX( final int i ) { return Math.min( numCellsX - 1, ( int )( ( x[ i ] - minX ) / cellSize ) ); }
+	protected int cellY( final int i ) { return Math.min( numCellsY - 1, ( int )( ( y[ i ] - minY ) / cellSize ) ); }
+	protected int cell( final int i ) { return cellY( i ) * numCellsX + cellX( i ); }
+
+	@Override
+	public boolean drawSample( final int[] sample )
+	{
+		final int n = x.length;
+		final int k = sample.length;
+
+		if ( k > n )
+			return false;
+
+		for ( int t = 0; t < MAX_TRIES; ++t )
+		{
+			sample[ 0 ] = rnd.nextInt( n );
+
+			if ( drawNeighbors( sample ) )
+				return true;
+		}
+
+		// the points are too sparse for the radius
+		for ( int j = 0; j < k; ++j )
+		{
+			boolean distinct;
+
+			do
+			{
+				sample[ j ] = rnd.nextInt( n );
+				distinct = true;
+
+				for ( int i = 0; i < j && distinct; ++i )
+					distinct = sample[ i ] != sample[ j ];
+			}
+			while ( !distinct );
+		}
+
+		return true;
+	}
+
+	/**
+	 * Draws sample[1...k) among the points within the radius around sample[0]
+	 * 
+	 * @return false if not enough neighbors were found
+	 */
+	protected boolean drawNeighbors( final int[] sample )
+	{
+		final int first = sample[ 0 ];
+		final int cx = cellX( first ), cy = cellY( first );
+		final int x0 = Math.max( 0, cx - 1 ), x1 = Math.min( numCellsX - 1, cx + 1 );
+
+		int count = 0;
+
+		for ( int r = 0; r < 3; ++r )
+		{
+			final int row = cy - 1 + r;
+
+			if ( row < 0 || row >= numCellsY )
+			{
+				rangeFrom[ r ] = rangeTo[ r ] = 0;
+			}
+			else
+			{
+				rangeFrom[ r ] = cellStart[ row * numCellsX + x0 ];
+				rangeTo[ r ] = cellStart[ row * numCellsX + x1 + 1 ];
+			}
+
+			count += rangeTo[ r ] - rangeFrom[ r ];
+		}
+
+		if ( count < sample.length )
+			return false;
+
+		for ( int j = 1; j < sample.length; ++j )
+		{
+			boolean found = false;
+
+			for ( int t = 0; t < MAX_TRIES && !found; ++t )
+			{
+				int index = rnd.nextInt( count );
+				int r = 0;
+
+				while ( index >= rangeTo[ r ] - rangeFrom[ r ] )
+				{
+					index -= rangeTo[ r ] - rangeFrom[ r ];
+					++r;
+				}
+
+				final int candidate = points[ rangeFrom[ r ] + index ];
+
+				final double dx = x[ candidate ] - x[ first ];
+				final double dy = y[ candidate ] - y[ first ];
+
+				if ( dx * dx + dy * dy > radiusSq )
+					continue;
+
+				found = true;
+
+				for ( int i = 0; i < j && found; ++i )
+					found = sample[ i ] != candidate;
+
+				if ( found )
+					sample[ j ] = candidate;
+			}
+
+			if ( !found )
+				return false;
+		}
+
+		return true;
+	}
+}
@@ -0,0 +1,74 @@
+/*-
+ * #%L
+ * code for function fitting
+ * %%
+ * Copyright (C) 2015 - 2025 Developers
+ * %%
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * 3. Neither the name of the Preibisch Lab nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package fit.ransac;
+
+import java.util.Random;
+
+import fit.PointStore;
+
+/**
+ * Creates {@link NeighborhoodSampler}s, e.g. for finding closed shapes among the edge
+ * pixels of several objects.
+ * 
+ * @author Stephan Preibisch
+ */
+public class NeighborhoodSamplerFactory implements SamplerFactory
+{
+	final double radius;
+
+	/**
+	 * @param radius - the maximal distance of the points of a minimal sample to its first point
+	 */
+	public NeighborhoodSamplerFactory( final double radius )
+	{
+		this.radius = radius;
+	}
+
+	/**
+	 * All points of a shape with an area of at most maxArea are within the diameter
+	 * of a circle with that area (for not too elongated shapes).
+	 * 
+	 * @param maxArea - the maximal area of the shape
+	 * @return a factory for the radius 2 * sqrt( maxArea / PI )
+	 */
+	public static NeighborhoodSamplerFactory forMaxArea( final double maxArea )
+	{
+		return new NeighborhoodSamplerFactory( 2 * Math.sqrt( maxArea / Math.PI ) );
+	}
+
+	@Override
+	public NeighborhoodSampler create( final PointStore store, final int sampleSize, final Random rnd )
+	{
+		return new NeighborhoodSampler( store.x, store.y, radius, rnd );
+	}
+}
@@ -0,0 +1,91 @@
+/*-
+ * #%L
+ * code for function fitting
+ * %%
+ * Copyright (C) 2015 - 2025 Developers
+ * %%
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * 3. Neither the name of the Preibisch Lab nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package fit.ransac;
+
+import fit.AbstractFunction;
+import fit.PointStore;
+
+/**
+ * Decides on a subset of the candidates whether a hypothesis is worth testing on all candidates.
+ * It is applied to every hypothesis after it was fitted to the minimal sample.
+ * 
+ * accept() is called from all threads that evaluate hypotheses, it must be thread-safe and should
+ * be deterministic for a given hypothesis. A hypothesis may be accepted more than once (when a parallel
+ * RANSAC replays it in order). Adaptive statistics may only be collected per hypothesis of the batch and
+ * may only change the test when nextBatch() is called, this way the result of a parallel RANSAC is
+ * identical to the single-threaded one.
+ * 
+ * @author Stephan Preibisch
+ */
+public interface PreTest
+{
+	/**
+	 * @param model - the hypothesis, fitted to the minimal sample
+	 * @param sample - the indices of the minimal sample
+	 * @param index - the index of the hypothesis in the current batch
+	 * @param store - all candidates, the residuals can be used as a buffer
+	 * @param epsilon - the maximal residual of an inlier
+	 * @param <M> the model
+	 * @return false if the hypothesis can be rejected without testing all candidates
+	 */
+	public < M extends AbstractFunction< M > > boolean accept( final M model, final int[] sample, final int index, final PointStore store, final double epsilon );
+
+	/**
+	 * @return true if every accepted hypothesis has left its residuals of all candidates in the store,
+	 * RANSAC then does not compute them again (must not change within a batch)
+	 */
+	public boolean residualsComplete();
+
+	/**
+	 * RANSAC found a better hypothesis.
+	 * 
+	 * @param numInliers - its number of inliers
+	 * @param numCandidates - the number of candidates
+	 */
+	public void improved( final int numInliers, final int numCandidates );
+
+	/**
+	 * Called before each batch of hypotheses is evaluated.
+	 * 
+	 * @param batchSize - the maximal number of hypotheses of the batch
+	 */
+	public void nextBatch( final int batchSize );
+
+	/**
+	 * Called after each batch, only the first numEvaluated hypotheses (in the order they were drawn) count,
+	 * independent of the number of threads that evaluated the batch.
+	 * 
+	 * @param numEvaluated - the number of hypotheses of the batch RANSAC has evaluated
+	 */
+	public void endBatch( final int numEvaluated );
+}
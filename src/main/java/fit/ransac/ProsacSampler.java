@@ -0,0 +1,133 @@
+/*-
+ * #%L
+ * code for function fitting
+ * %%
+ * Copyright (C) 2015 - 2025 Developers
+ * %%
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * 3. Neither the name of the Preibisch Lab nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package fit.ransac;
+
+import java.util.Random;
+
+/**
+ * PROSAC (Chum and Matas 2005), draws minimal samples from the best ranked candidates first and
+ * gradually extends the set it draws from to all candidates. Each sample of the n best candidates
+ * contains the n-th best one, the growth of n follows the schedule of the paper, after roughly
+ * maxIterations samples it is equivalent to uniform sampling.
+ * 
+ * @author Stephan Preibisch
+ */
+public class ProsacSampler implements Sampler
+{
+	final int[] ranking;
+	final int m, numCandidates;
+	final Random rnd;
+
+	// the size of the current set of best candidates and the schedule when it grows
+	int n, t;
+	double tn;
+	long tnPrime;
+
+	/**
+	 * @param ranking - the indices of all candidates, best first
+	 * @param sampleSize - the size of a minimal sample
+	 * @param maxIterations - after how many samples PROSAC draws from all candidates (T_N in the paper)
+	 * @param rnd - the random number generator
+	 */
+	public ProsacSampler( final int[] ranking, final int sampleSize, final int maxIterations, final Random rnd )
+	{
+		this.ranking = ranking;
+		this.numCandidates = ranking.length;
+		this.m = sampleSize;
+		this.rnd = rnd;
+
+		this.n = Math.min( m, numCandidates );
+		this.t = 0;
+		this.tnPrime = 1;
+
+		// the expected number of samples among the first m candidates in maxIterations samples of all candidates
+		this.tn = maxIterations;
+		for ( int i = 0; i < m; ++i )
+			this.tn *= ( double )( m - i ) / ( double )( numCandidates - i );
+	}
+
+	@Override
+	public boolean drawSample( final int[] sample )
+	{
+		if ( m > numCandidates )
+			return false;
+
+		++t;
+
+		if ( t > tnPrime && n < numCandidates )
+		{
+			final double tnNext = tn * ( n + 1 ) / ( n + 1 - m );
+			tnPrime += ( long )Math.ceil( tnNext - tn );
+			tn = tnNext;
+			++n;
+		}
+
+		if ( tnPrime < t )
+		{
+			// all from the n best
+			drawDistinct( sample, 0, n );
+		}
+		else
+		{
+			// the n-th best and the rest from the n-1 best
+			sample[ 0 ] = n - 1;
+			drawDistinct( sample, 1, n - 1 );
+		}
+
+		for ( int j = 0; j < m; ++j )
+			sample[ j ] = ranking[ sample[ j ] ];
+
+		return true;
+	}
+
+	/**
+	 * Draws sample[from...] distinct from each other and all previous entries among the ranks [0, max)
+	 */
+	protected void drawDistinct( final int[] sample, final int from, final int max )
+	{
+		for ( int j = from; j < m; ++j )
+		{
+			boolean distinct;
+
+			do
+			{
+				sample[ j ] = rnd.nextInt( max );
+				distinct = true;
+
+				for ( int k = 0; k < j && distinct; ++k )
+					distinct = sample[ k ] != sample[ j ];
+			}
+			while ( !distinct );
+		}
+	}
+}
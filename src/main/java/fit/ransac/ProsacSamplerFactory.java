@@ -0,0 +1,97 @@
+/*-
+ * #%L
+ * code for function fitting
+ * %%
+ * Copyright (C) 2015 - 2025 Developers
+ * %%
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * 3. Neither the name of the Preibisch Lab nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package fit.ransac;
+
+import java.util.Random;
+
+import fit.PointStore;
+
+/**
+ * Creates {@link ProsacSampler}s that rank the candidates by a quality score per candidate
+ * (e.g. the confidence of a tracker or the edge strength).
+ * 
+ * @author Stephan Preibisch
+ */
+public class ProsacSamplerFactory implements SamplerFactory
+{
+	final double[] weights;
+	final int maxIterations;
+
+	/**
+	 * @param weights - the quality of each candidate (in the order of the candidates), higher is better;
+	 * if null, the candidates are expected to be sorted by quality already
+	 * @param maxIterations - after how many samples PROSAC draws from all candidates
+	 */
+	public ProsacSamplerFactory( final double[] weights, final int maxIterations )
+	{
+		this.weights = weights;
+		this.maxIterations = maxIterations;
+	}
+
+	public ProsacSamplerFactory( final double[] weights )
+	{
+		this( weights, 200000 );
+	}
+
+	@Override
+	public ProsacSampler create( final PointStore store, final int sampleSize, final Random rnd )
+	{
+		final int n = store.size();
+
+		if ( weights != null && weights.length != n )
+			throw new IllegalArgumentException( "There are " + weights.length + " weights for " + n + " candidates." );
+
+		final int[] ranking = new int[ n ];
+
+		if ( weights == null )
+		{
+			for ( int i = 0; i < n; ++i )
+				ranking[ i ] = i;
+		}
+		else
+		{
+			// sort by decreasing weight, equal weights in the order of the candidates
+			final double[] negated = new double[ n ];
+
+			for ( int i = 0; i < n; ++i )
+			{
+				negated[ i ] = -weights[ i ];
+				ranking[ i ] = i;
+			}
+
+			PointStore.sortByX( negated, ranking, 0, n );
+		}
+
+		return new ProsacSampler( ranking, sampleSize, maxIterations, rnd );
+	}
+}
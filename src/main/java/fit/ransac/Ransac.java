@@ -0,0 +1,543 @@
+/*-
+ * #%L
+ * code for function fitting
+ * %%
+ * Copyright (C) 2015 - 2025 Developers
+ * %%
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * 3. Neither the name of the Preibisch Lab nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package fit.ransac;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import fit.AbstractFunction;
+import fit.PointFunctionMatch;
+import fit.PointStore;
+import mpicbg.models.AbstractModel;
+import mpicbg.models.IllDefinedDataPointsException;
+import mpicbg.models.NotEnoughDataPointsException;
+import mpicbg.models.PointMatch;
+
+/**
+ * The RANSAC loop shared by all {@link AbstractFunction}s, the model-specific part
+ * is the {@link HypothesisTest}. It runs on a {@link PointStore}, lists of
+ * {@link PointFunctionMatch}es are only converted at the beginning and the end.
+ * 
+ * Minimal samples are always drawn sequentially in batches by a {@link Sampler}, if more than one thread
+ * is used the hypotheses of a batch are evaluated in parallel on a {@link ForkJoinPool}
+ * (each thread has its own copy of the model and its own residuals) and the result is
+ * reduced in the order the hypotheses were drawn. Thus the result is identical to
+ * the single-threaded run as long as the distance of a point to the model is
+ * deterministic (the Newton-Raphson of {@link fit.polynomial.HigherOrderPolynomialFunction}
+ * uses random start values).
+ * 
+ * If a confidence is set in the {@link RansacSettings}, the number of iterations is
+ * reduced whenever a better hypothesis is found (the given number of iterations remains the
+ * upper limit).
+ * 
+ * If a deadline or a {@link CancellationToken} is set in the {@link RansacSettings}, RANSAC stops
+ * early (checked for every hypothesis, or every batch if it runs in parallel) and keeps the best hypothesis so far.
+ * A {@link RansacListener} is notified of every better hypothesis. A {@link PreTest} can reject
+ * hypotheses before they are tested on all candidates, a {@link Scoring} replaces the cost of the test.
+ * With a {@link LocalOptimization} (LO-RANSAC) hypotheses are not refined, but every new best one is
+ * locally optimized (in the order the hypotheses were drawn).
+ * 
+ * {@link Constraint}s (of the model and of the settings) reject hypotheses right after the minimal fit.
+ * 
+ * If there are not more minimal samples than iterations, all of them are evaluated once in a fixed order (the
+ * confidence is ignored then). If samples are likely to repeat, repeated ones are skipped.
+ * 
+ * @author Stephan Saalfeld and Stephan Preibisch
+ */
+public class Ransac
+{
+	/**
+	 * how many minimal samples are drawn at once (independent of the number of threads)
+	 */
+	public static final int BATCH_SIZE = 256;
+
+	private Ransac() {}
+
+	/**
+	 * Find the {@link AbstractModel} of a set of {@link PointMatch} candidates
+	 * containing a high number of outliers using RANSAC \citet[{FischlerB81}.
+	 *
+	 * @param model - the model, set to the best hypothesis if successful
+	 * @param candidates candidate data points inluding (many) outliers
+	 * @param inliers remaining candidates after RANSAC
+	 * @param iterations number of iterations
+	 * @param minNumInliers minimally required absolute number of inliers
+	 * @param test - tests a hypothesis (epsilon, min inlier ratio, constraints)
+	 * @param rnd - the random number generator used to draw minimal samples (unless a seed is set in the settings)
+	 * @param settings - number of threads etc.
+	 * @param <M> the model
+	 * @param <P> some PointFunctionMatch
+	 * 
+	 * @throws NotEnoughDataPointsException if there are not enough points
+	 * 
+	 * @return true if {@link AbstractModel} could be estimated and inliers is not
+	 *   empty, false otherwise.  If false, {@link AbstractModel} remains unchanged.
+	 */
+	public static < M extends AbstractFunction< M >, P extends PointFunctionMatch > boolean ransac(
+			final M model,
+			final List< P > candidates,
+			final Collection< P > inliers,
+			final int iterations,
+			final int minNumInliers,
+			final HypothesisTest< M > test,
+			final Random rnd,
+			final RansacSettings settings )
+		throws NotEnoughDataPointsException
+	{
+		inliers.clear();
+
+		final PointStore store = PointStore.fromMatches( candidates );
+
+		if ( !ransac( model, store, iterations, minNumInliers, test, rnd, settings ) )
+			return false;
+
+		store.getInliers( candidates, inliers );
+		return true;
+	}
+
+	/**
+	 * Same as {@link #ransac(AbstractFunction, PointStore, int, int, HypothesisTest, Constraint, Random, RansacSettings)}
+	 * without a constraint of the model.
+	 */
+	public static < M extends AbstractFunction< M > > boolean ransac(
+			final M model,
+			final PointStore store,
+			final int iterations,
+			final int minNumInliers,
+			final HypothesisTest< M > hypothesisTest,
+			final Random rnd,
+			final RansacSettings settings )
+		throws NotEnoughDataPointsException
+	{
+		return ransac( model, store, iterations, minNumInliers, hypothesisTest, null, rnd, settings );
+	}
+
+	/**
+	 * Find the {@link AbstractModel} of a set of points stored in a {@link PointStore}
+	 * containing a high number of outliers using RANSAC \citet[{FischlerB81}.
+	 *
+	 * @param model - the model, set to the best hypothesis if successful
+	 * @param store - candidate data points inluding (many) outliers, contains the inliers and residuals afterwards
+	 * @param iterations number of iterations
+	 * @param minNumInliers minimally required absolute number of inliers
+	 * @param hypothesisTest - tests a hypothesis (epsilon, min inlier ratio, constraints)
+	 * @param modelConstraint - checked right after the minimal fit (can be null)
+	 * @param rnd - the random number generator used to draw minimal samples (unless a seed is set in the settings)
+	 * @param settings - number of threads etc.
+	 * @param <M> the model
+	 * 
+	 * @throws NotEnoughDataPointsException if there are not enough points
+	 * 
+	 * @return true if {@link AbstractModel} could be estimated and there are
+	 *   inliers, false otherwise.  If false, {@link AbstractModel} remains unchanged.
+	 */
+	public static < M extends AbstractFunction< M > > boolean ransac(
+			final M model,
+			final PointStore store,
+			final int iterations,
+			final int minNumInliers,
+			final HypothesisTest< M > hypothesisTest,
+			final Constraint< M > modelConstraint,
+			final Random rnd,
+			final RansacSettings settings )
+		throws NotEnoughDataPointsException
+	{
+		@SuppressWarnings( "unchecked" )
+		final Constraint< M > constraint = combine( modelConstraint, settings == null ? null : ( Constraint< M > )settings.getConstraint() );
+		final HypothesisTest< M > test = scored( hypothesisTest, settings == null ? null : settings.getScoring() );
+		final int minNumMatches = model.getMinNumMatches();
+
+		if ( store.size() < minNumMatches )
+			throw new NotEnoughDataPointsException( store.size() + " data points are not enough to solve the Model, at least " + minNumMatches + " data points required." );
+
+		model.setCost( Double.MAX_VALUE );
+
+		final M copy = model.copy();
+		final M m = model.copy();
+
+		store.clearInliers();
+
+		final PointStore tmp = store.shareCoordinates();
+		final int[][] samples = new int[ Math.max( 0, Math.min( BATCH_SIZE, iterations ) ) ][ minNumMatches ];
+
+		final int numThreads = settings == null ? 1 : settings.getNumThreads();
+		final Random random = settings == null ? rnd : settings.getRandom( rnd );
+		final LocalOptimization lo = settings == null ? null : settings.getLocalOptimization();
+		final Random loRandom = lo == null ? null : new Random( random.nextLong() );
+		final IncrementalRefit< ? > refit = lo == null ? IncrementalRefit.create( m, store.size() ) : null;
+		final Sampler sampler = createSampler( store, iterations, minNumMatches, random, settings );
+
+		// the enumeration is not a random order (the first samples all contain the first point), all samples are evaluated
+		final double confidence = settings == null || sampler instanceof ExhaustiveSampler ? 0 : settings.getConfidence();
+		final ForkJoinPool pool = numThreads > 1 ? settings.getPool() : null;
+
+		final PreTestFactory preTestFactory = settings == null ? null : settings.getPreTestFactory();
+		final PreTest preTest = preTestFactory == null ? null : preTestFactory.create( store, minNumMatches );
+
+		@SuppressWarnings( "unchecked" )
+		final RansacListener< M > listener = settings == null ? null : ( RansacListener< M > )settings.getListener();
+
+		final double[] costs = new double[ samples.length ];
+
+		final ArrayList< Worker< M > > workers = new ArrayList< Worker< M > >();
+		for ( int t = 0; pool != null && t < numThreads; ++t )
+			workers.add( new Worker< M >( model, store, minNumInliers, test, constraint, preTest, lo == null, samples, costs ) );
+
+		int maxIterations = iterations;
+
+		for ( int i = 0; i < maxIterations; i += samples.length )
+		{
+			if ( settings != null && settings.isExpired() )
+				break;
+
+			int numSamples = Math.min( samples.length, maxIterations - i );
+
+			if ( preTest != null )
+				preTest.nextBatch( samples.length );
+
+			for ( int s = 0; s < numSamples; ++s )
+			{
+				if ( !sampler.drawSample( samples[ s ] ) )
+				{
+					// the sampler is exhausted
+					numSamples = s;
+					maxIterations = i + s;
+					break;
+				}
+			}
+
+			if ( pool != null )
+				evaluateParallel( pool, workers, numSamples );
+
+			int s = 0;
+
+			for ( ; s < numSamples && i + s < maxIterations; ++s )
+			{
+				if ( pool == null && settings != null && settings.isExpired() )
+					break;
+
+				// the parallel evaluation tells us which hypotheses can possibly be better,
+				// those are re-evaluated in the order they were drawn (usually only a few)
+				if ( pool != null && !( costs[ s ] < copy.getCost() ) )
+					continue;
+
+				if (
+						evaluate( m, samples[ s ], s, tmp, minNumInliers, test, constraint, preTest, refit, lo == null ) &&
+						m.betterThan( copy ) )
+				{
+					copy.set( m );
+					store.setInliers( tmp );
+
+					if ( lo != null )
+						lo.optimize( copy, store, m, tmp, test, minNumInliers, loRandom );
+
+					if ( preTest != null )
+						preTest.improved( store.numInliers(), store.size() );
+
+					if ( listener != null )
+						listener.improved( copy.copy(), store, Arrays.copyOf( store.inlierIndices, store.numInliers() ), copy.getCost() );
+
+					if ( confidence > 0 )
+						maxIterations = Math.max( i + s + 1, Math.min( maxIterations,
+								requiredIterations( confidence, ( double )store.numInliers() / store.size(), minNumMatches ) ) );
+				}
+			}
+
+			// the same hypotheses count for the pre-test no matter how many threads evaluated the batch
+			if ( preTest != null )
+				preTest.endBatch( s );
+		}
+
+		if ( store.numInliers() == 0 )
+			return false;
+
+		model.set( copy );
+		return true;
+	}
+
+	/**
+	 * @return an {@link ExhaustiveSampler} if there are not more minimal samples than iterations, the {@link Sampler} of
+	 * the settings otherwise, wrapped in a {@link DistinctSampler} if samples are likely to repeat
+	 */
+	protected static Sampler createSampler(
+			final PointStore store,
+			final int iterations,
+			final int minNumMatches,
+			final Random random,
+			final RansacSettings settings )
+	{
+		final int n = store.size();
+		final double numCombinations = ExhaustiveSampler.numCombinations( n, minNumMatches );
+
+		if ( numCombinations <= iterations )
+			return new ExhaustiveSampler( n, minNumMatches );
+
+		final Sampler sampler = ( settings == null ? new UniformSamplerFactory() : settings.getSamplerFactory() ).create( store, minNumMatches, random );
+
+		// about iterations^2 / ( 2 * numCombinations ) samples repeat, it is worth deduplicating if that is more than 0.5%
+		if ( numCombinations <= 100.0 * iterations && DistinctSampler.canPack( n, minNumMatches ) )
+			return new DistinctSampler( sampler, n, minNumMatches, iterations );
+		else
+			return sampler;
+	}
+
+	/**
+	 * @return a constraint that requires both (or one of them if the other one is null)
+	 */
+	protected static < M > Constraint< M > combine( final Constraint< M > a, final Constraint< M > b )
+	{
+		if ( a == null )
+			return b;
+		else if ( b == null )
+			return a;
+
+		return new Constraint< M >()
+		{
+			@Override
+			public boolean isValid( final M model )
+			{
+				return a.isValid( model ) && b.isValid( model );
+			}
+		};
+	}
+
+	/**
+	 * @return a test that sets the cost of the model using the scoring (or the test itself if scoring is null)
+	 */
+	protected static < M extends AbstractFunction< M > > HypothesisTest< M > scored( final HypothesisTest< M > test, final Scoring scoring )
+	{
+		if ( scoring == null )
+			return test;
+
+		return new HypothesisTest< M >()
+		{
+			@Override
+			public boolean test( final M model, final PointStore store )
+			{
+				final boolean isGood = test.test( model, store );
+				model.setCost( scoring.cost( store, test.getEpsilon() ) );
+				return isGood;
+			}
+
+			@Override
+			public boolean testResiduals( final M model, final PointStore store )
+			{
+				final boolean isGood = test.testResiduals( model, store );
+				model.setCost( scoring.cost( store, test.getEpsilon() ) );
+				return isGood;
+			}
+
+			@Override
+			public double getEpsilon() { return test.getEpsilon(); }
+		};
+	}
+
+	/**
+	 * The number of iterations necessary to draw at least one minimal sample that
+	 * consists only of inliers with a certain probability.
+	 * 
+	 * @param confidence - the probability (e.g. 0.999)
+	 * @param inlierRatio - the ratio of inliers
+	 * @param minNumMatches - the size of a minimal sample
+	 * @return log(1-confidence)/log(1-inlierRatio^minNumMatches)
+	 */
+	public static int requiredIterations( final double confidence, final double inlierRatio, final int minNumMatches )
+	{
+		final double allInliers = Math.pow( inlierRatio, minNumMatches );
+
+		if ( allInliers >= 1 )
+			return 1;
+		else if ( allInliers <= 0 )
+			return Integer.MAX_VALUE;
+
+		final double n = Math.ceil( Math.log( 1 - confidence ) / Math.log( 1 - allInliers ) );
+
+		if ( Double.isNaN( n ) || n >= Integer.MAX_VALUE )
+			return Integer.MAX_VALUE;
+		else
+			return Math.max( 1, ( int )n );
+	}
+
+	/**
+	 * Fits the model to a minimal sample and iteratively refines it with its inliers (if refine is true), if
+	 * the constraint and the preTest (both can be null) accept it.
+	 * If refit is not null (the model is an {@link fit.IncrementalFunction} and refit works
+	 * on it), only the inliers that changed are added to or removed from its statistics. The index of the
+	 * hypothesis in its batch is passed to the preTest.
+	 * 
+	 * @return true if the hypothesis is good and has enough inliers, the cost is set in the model
+	 */
+	protected static < M extends AbstractFunction< M > > boolean evaluate(
+			final M m,
+			final int[] sample,
+			final int index,
+			final PointStore store,
+			final int minNumInliers,
+			final HypothesisTest< M > test,
+			final Constraint< M > constraint,
+			final PreTest preTest,
+			final IncrementalRefit< ? > refit,
+			final boolean refine )
+		throws NotEnoughDataPointsException
+	{
+		try { m.fitFunction( store, sample, 0, sample.length ); }
+		catch ( final IllDefinedDataPointsException e )
+		{
+			return false;
+		}
+
+		if ( constraint != null && !constraint.isValid( m ) )
+			return false;
+
+		if ( preTest != null && !preTest.accept( m, sample, index, store, test.getEpsilon() ) )
+			return false;
+
+		if ( refit != null )
+			refit.clear();
+
+		int numInliers = 0;
+		boolean isGood = preTest != null && preTest.residualsComplete() ? test.testResiduals( m, store ) : test.test( m, store );
+		while ( refine && isGood && numInliers < store.numInliers() )
+		{
+			numInliers = store.numInliers();
+			try
+			{
+				if ( refit == null )
+					m.fitFunction( store, store.inlierIndices, 0, numInliers );
+				else
+					refit.fit( store );
+			}
+			catch ( final IllDefinedDataPointsException e )
+			{
+				return false;
+			}
+			isGood = test.test( m, store );
+		}
+
+		return isGood && store.numInliers() >= minNumInliers;
+	}
+
+	/**
+	 * Evaluates all hypotheses of a batch, each worker takes a consecutive block.
+	 * Stores the cost of each hypothesis, NaN if it is not acceptable, and
+	 * -infinity if it threw an exception (so it is re-evaluated and re-thrown in order).
+	 */
+	protected static < M extends AbstractFunction< M > > void evaluateParallel(
+			final ForkJoinPool pool,
+			final List< Worker< M > > workers,
+			final int numSamples )
+	{
+		for ( int t = 0; t < workers.size(); ++t )
+		{
+			workers.get( t ).from = ( int )( ( long )numSamples * t / workers.size() );
+			workers.get( t ).to = ( int )( ( long )numSamples * ( t + 1 ) / workers.size() );
+		}
+
+		for ( final Future< Void > future : pool.invokeAll( workers ) )
+		{
+			try
+			{
+				future.get();
+			}
+			catch ( final InterruptedException | ExecutionException e )
+			{
+				throw new RuntimeException( "Parallel RANSAC failed: " + e, e );
+			}
+		}
+	}
+
+	/**
+	 * The state of one thread, its own copy of the model and its own residuals and inliers.
+	 * Evaluates the samples [from, to) of the current batch.
+	 */
+	protected static class Worker< M extends AbstractFunction< M > > implements Callable< Void >
+	{
+		final M m;
+		final PointStore store;
+		final int minNumInliers;
+		final HypothesisTest< M > test;
+		final Constraint< M > constraint;
+		final PreTest preTest;
+		final boolean refine;
+		final int[][] samples;
+		final double[] costs;
+		final IncrementalRefit< ? > refit;
+
+		int from, to;
+
+		public Worker( final M model, final PointStore store, final int minNumInliers, final HypothesisTest< M > test, final Constraint< M > constraint, final PreTest preTest, final boolean refine, final int[][] samples, final double[] costs )
+		{
+			this.m = model.copy();
+			this.store = store.shareCoordinates();
+			this.minNumInliers = minNumInliers;
+			this.test = test;
+			this.constraint = constraint;
+			this.preTest = preTest;
+			this.refine = refine;
+			this.samples = samples;
+			this.costs = costs;
+			this.refit = refine ? IncrementalRefit.create( m, store.size() ) : null;
+		}
+
+		@Override
+		public Void call()
+		{
+			for ( int s = from; s < to; ++s )
+				costs[ s ] = evaluate( samples[ s ], s );
+
+			return null;
+		}
+
+		public double evaluate( final int[] sample, final int index )
+		{
+			try
+			{
+				if ( Ransac.evaluate( m, sample, index, store, minNumInliers, test, constraint, preTest, refit, refine ) )
+					return m.getCost();
+				else
+					return Double.NaN;
+			}
+			catch ( final NotEnoughDataPointsException e )
+			{
+				return Double.NEGATIVE_INFINITY;
+			}
+		}
+	}
+}
@@ -0,0 +1,297 @@
+/*-
+ * #%L
+ * code for function fitting
+ * %%
+ * Copyright (C) 2015 - 2025 Developers
+ * %%
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * 3. Neither the name of the Preibisch Lab nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package fit.ransac;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Optional settings for the RANSAC implementations, the defaults
+ * reproduce the classic single-threaded RANSAC.
+ * 
+ * @author Stephan Preibisch
+ */
+public class RansacSettings
+{
+	protected int numThreads = 1;
+	protected ForkJoinPool pool = null, ownPool = null;
+	protected Long seed = null;
+	protected double confidence = 0;
+	protected SamplerFactory samplerFactory = new UniformSamplerFactory();
+	protected long deadline = Long.MAX_VALUE;
+	protected CancellationToken cancellation = null;
+	protected RansacListener< ? > listener = null;
+	protected PreTestFactory preTestFactory = null;
+	protected Scoring scoring = null;
+	protected LocalOptimization localOptimization = null;
+	protected Constraint< ? > constraint = null;
+
+	public RansacSettings() {}
+
+	/**
+	 * @return - how many threads evaluate hypotheses
+	 */
+	public int getNumThreads() { return numThreads; }
+
+	/**
+	 * For a given state of the random number generator the result is identical
+	 * to the single-threaded run, hypotheses are drawn sequentially and the best
+	 * one is selected in the order they were drawn.
+	 * 
+	 * @param numThreads - how many threads evaluate hypotheses (default: 1)
+	 * @return this instance
+	 */
+	public RansacSettings setNumThreads( final int numThreads )
+	{
+		this.numThreads = Math.max( 1, numThreads );
+		return this;
+	}
+
+	/**
+	 * The pool is reused by all RANSAC runs with these settings. If none is set, the common pool is
+	 * used if its parallelism matches the number of threads, otherwise a pool with the number of threads
+	 * is created once (its idle worker threads terminate, it does not need to be shut down).
+	 * 
+	 * @return - the pool that evaluates hypotheses in parallel
+	 */
+	public synchronized ForkJoinPool getPool()
+	{
+		if ( pool != null )
+			return pool;
+
+		if ( numThreads == ForkJoinPool.getCommonPoolParallelism() )
+			return ForkJoinPool.commonPool();
+
+		if ( ownPool == null || ownPool.getParallelism() != numThreads )
+			ownPool = new ForkJoinPool( numThreads );
+
+		return ownPool;
+	}
+
+	/**
+	 * @param pool - the pool that evaluates hypotheses in parallel, the number of threads still
+	 * determines how many hypotheses are evaluated at the same time (default: null, see {@link #getPool()})
+	 * @return this instance
+	 */
+	public RansacSettings setPool( final ForkJoinPool pool )
+	{
+		this.pool = pool;
+		return this;
+	}
+
+	/**
+	 * @param seed - seed for drawing the minimal samples, each RANSAC run starts with
+	 * a new random number generator initialized with this seed (default: the shared
+	 * generator of the model is used)
+	 * @return this instance
+	 */
+	public RansacSettings setSeed( final long seed )
+	{
+		this.seed = seed;
+		return this;
+	}
+
+	/**
+	 * @param rnd - the random number generator of the model
+	 * @return the random number generator to use for a RANSAC run
+	 */
+	public Random getRandom( final Random rnd )
+	{
+		return seed == null ? rnd : new Random( seed );
+	}
+
+	/**
+	 * @return - the target confidence for stopping RANSAC early (0 means disabled)
+	 */
+	public double getConfidence() { return confidence; }
+
+	/**
+	 * RANSAC stops as soon as the probability of having drawn at least one sample
+	 * that consists only of inliers reaches the confidence, based on the inlier ratio of the
+	 * best hypothesis so far (log(1-p)/log(1-w^k)). The number of iterations passed to RANSAC
+	 * remains the upper limit.
+	 * 
+	 * @param confidence - e.g. 0.999 (default: 0, always run all iterations)
+	 * @return this instance
+	 */
+	public RansacSettings setConfidence( final double confidence )
+	{
+		this.confidence = confidence;
+		return this;
+	}
+
+	/**
+	 * @return - creates the {@link Sampler} that draws the minimal samples
+	 */
+	public SamplerFactory getSamplerFactory() { return samplerFactory; }
+
+	/**
+	 * @param samplerFactory - creates the {@link Sampler} that draws the minimal samples (default: {@link UniformSamplerFactory})
+	 * @return this instance
+	 */
+	public RansacSettings setSamplerFactory( final SamplerFactory samplerFactory )
+	{
+		this.samplerFactory = samplerFactory;
+		return this;
+	}
+
+	/**
+	 * @return - the time (in ms, {@link System#currentTimeMillis()}) when RANSAC stops and returns the best result so far
+	 */
+	public long getDeadline() { return deadline; }
+
+	/**
+	 * @param deadline - the time (in ms, {@link System#currentTimeMillis()}) when RANSAC stops and returns the best result so far (default: none)
+	 * @return this instance
+	 */
+	public RansacSettings setDeadline( final long deadline )
+	{
+		this.deadline = deadline;
+		return this;
+	}
+
+	/**
+	 * Sets the deadline relative to now, it applies to all RANSAC runs that use these settings
+	 * (e.g. all segments found by Tracking.findAllFunctions together).
+	 * 
+	 * @param millis - how long RANSAC may run
+	 * @return this instance
+	 */
+	public RansacSettings setTimeLimit( final long millis )
+	{
+		return setDeadline( System.currentTimeMillis() + millis );
+	}
+
+	/**
+	 * @return - the token that aborts RANSAC, or null
+	 */
+	public CancellationToken getCancellation() { return cancellation; }
+
+	/**
+	 * @param cancellation - aborts RANSAC when canceled, it returns the best result so far (default: null)
+	 * @return this instance
+	 */
+	public RansacSettings setCancellation( final CancellationToken cancellation )
+	{
+		this.cancellation = cancellation;
+		return this;
+	}
+
+	/**
+	 * @return - is notified of every better hypothesis, or null
+	 */
+	public RansacListener< ? > getListener() { return listener; }
+
+	/**
+	 * @param listener - is notified of every better hypothesis, its model type must match the model
+	 * RANSAC runs on (default: null)
+	 * @return this instance
+	 */
+	public RansacSettings setListener( final RansacListener< ? > listener )
+	{
+		this.listener = listener;
+		return this;
+	}
+
+	/**
+	 * @return - creates the {@link PreTest} that is applied before a hypothesis is tested on all candidates, or null
+	 */
+	public PreTestFactory getPreTestFactory() { return preTestFactory; }
+
+	/**
+	 * @param preTestFactory - creates the {@link PreTest} that is applied before a hypothesis is tested on all
+	 * candidates, e.g. {@link TddPreTestFactory} (default: null, every hypothesis is tested on all candidates)
+	 * @return this instance
+	 */
+	public RansacSettings setPreTestFactory( final PreTestFactory preTestFactory )
+	{
+		this.preTestFactory = preTestFactory;
+		return this;
+	}
+
+	/**
+	 * @return - computes the cost of a hypothesis, or null
+	 */
+	public Scoring getScoring() { return scoring; }
+
+	/**
+	 * @param scoring - computes the cost of a hypothesis, e.g. {@link MsacScoring} or {@link MlesacScoring}
+	 * (default: null, the cost is 1 - inlier ratio)
+	 * @return this instance
+	 */
+	public RansacSettings setScoring( final Scoring scoring )
+	{
+		this.scoring = scoring;
+		return this;
+	}
+
+	/**
+	 * @return - the local optimization applied to every new best hypothesis, or null
+	 */
+	public LocalOptimization getLocalOptimization() { return localOptimization; }
+
+	/**
+	 * @param localOptimization - the local optimization (LO-RANSAC) applied to every new best hypothesis instead of refining
+	 * every acceptable hypothesis (default: null, every acceptable hypothesis is refined with its inliers)
+	 * @return this instance
+	 */
+	public RansacSettings setLocalOptimization( final LocalOptimization localOptimization )
+	{
+		this.localOptimization = localOptimization;
+		return this;
+	}
+
+	/**
+	 * @return - an additional constraint on the hypotheses, or null
+	 */
+	public Constraint< ? > getConstraint() { return constraint; }
+
+	/**
+	 * @param constraint - an additional constraint on the hypotheses, checked right after the minimal fit, its model
+	 * type must match the model RANSAC runs on (e.g. {@link fit.circular.EllipseConstraint}, default: null)
+	 * @return this instance
+	 */
+	public RansacSettings setConstraint( final Constraint< ? > constraint )
+	{
+		this.constraint = constraint;
+		return this;
+	}
+
+	/**
+	 * @return - true if the deadline passed or the computation was canceled
+	 */
+	public boolean isExpired()
+	{
+		return ( cancellation != null && cancellation.isCanceled() ) || ( deadline != Long.MAX_VALUE && System.currentTimeMillis() >= deadline );
+	}
+}
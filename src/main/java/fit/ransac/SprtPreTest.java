@@ -0,0 +1,219 @@
+/*-
+ * #%L
+ * code for function fitting
+ * %%
+ * Copyright (C) 2015 - 2025 Developers
+ * %%
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * 3. Neither the name of the Preibisch Lab nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package fit.ransac;
+
+import java.util.Arrays;
+
+import fit.AbstractFunction;
+import fit.PointStore;
+
+/**
+ * The sequential probability ratio test of WaldSAC (Matas and Chum 2005, Chum and Matas 2008). The candidates
+ * are visited in a random order without replacement (a random start and a random stride coprime to their number)
+ * and a hypothesis is rejected as soon as the likelihood ratio of being a bad hypothesis versus being a good one
+ * exceeds the decision threshold A. A hypothesis that is accepted has seen every candidate, so this pass is the
+ * verification and RANSAC only tests the residuals it left in the store.
+ * 
+ * The probability that a candidate is consistent with a good hypothesis (epsilon) is the inlier ratio of the
+ * best hypothesis so far, the probability that it is consistent with a bad one (delta) is estimated from the
+ * rejected hypotheses. As long as no hypothesis is better than a bad one (epsilon &lt;= delta) the test
+ * accepts everything and estimates delta from a few candidates of every hypothesis. Like all {@link PreTest}s,
+ * the statistics are recorded per hypothesis of a batch and only merged (once per hypothesis) between batches.
+ * 
+ * @author Stephan Preibisch
+ */
+public class SprtPreTest implements PreTest
+{
+	final double timeModel;
+	final int numProbes;
+
+	// the current state, only changed in nextBatch()
+	double inlierRatio = 0, delta, logA = 0;
+	double pendingInlierRatio = 0;
+
+	// the candidates tested by rejected hypotheses (all hypotheses while inactive) and how many of them were consistent
+	long tested = 0, consistent = 0;
+
+	// the same for every hypothesis of the current batch, merged in endBatch()
+	long[] batchTested = new long[ 0 ], batchConsistent = new long[ 0 ];
+
+	/**
+	 * @param timeModel - the time to compute a hypothesis from a minimal sample in units of computing one distance
+	 * @param delta - the initial estimate of the probability that a candidate is consistent with a bad hypothesis
+	 * @param numProbes - how many candidates are drawn to estimate delta while the test is inactive
+	 */
+	public SprtPreTest( final double timeModel, final double delta, final int numProbes )
+	{
+		this.timeModel = timeModel;
+		this.delta = delta;
+		this.numProbes = numProbes;
+	}
+
+	@Override
+	public < M extends AbstractFunction< M > > boolean accept( final M model, final int[] sample, final int index, final PointStore store, final double epsilon )
+	{
+		final int n = store.size();
+		final boolean active = delta < inlierRatio;
+		final int maxDraws = active ? n : Math.min( n, numProbes );
+
+		// the log-likelihood ratio changes by these amounts for a consistent and an inconsistent candidate
+		final double logIn = active ? Math.log( delta / inlierRatio ) : 0;
+		final double logOut = active ? Math.log( ( 1 - delta ) / ( 1 - inlierRatio ) ) : 0;
+
+		double logLambda = 0;
+		int numConsistent = 0;
+
+		// a random permutation of the candidates, i = start + j * stride (mod n)
+		long state = TddPreTest.seed( sample ) + TddPreTest.GOLDEN_GAMMA;
+		int i = TddPreTest.randomIndex( state, n );
+		int stride = n > 1 ? 1 + TddPreTest.randomIndex( state + TddPreTest.GOLDEN_GAMMA, n - 1 ) : 1;
+
+		while ( gcd( stride, n ) != 1 )
+			++stride;
+
+		for ( int j = 0; j < maxDraws; ++j, i = ( i + stride ) % n )
+		{
+			model.distanceTo( store.x, store.y, i, i + 1, store.residual );
+
+			if ( store.residual[ i ] < epsilon )
+			{
+				++numConsistent;
+				logLambda += logIn;
+			}
+			else
+			{
+				logLambda += logOut;
+			}
+
+			if ( active && logLambda > logA )
+			{
+				batchTested[ index ] = j + 1;
+				batchConsistent[ index ] = numConsistent;
+				return false;
+			}
+		}
+
+		if ( !active )
+		{
+			batchTested[ index ] = maxDraws;
+			batchConsistent[ index ] = numConsistent;
+		}
+
+		return true;
+	}
+
+	@Override
+	public boolean residualsComplete() { return delta < inlierRatio; }
+
+	@Override
+	public void improved( final int numInliers, final int numCandidates )
+	{
+		pendingInlierRatio = ( double )numInliers / ( double )numCandidates;
+	}
+
+	@Override
+	public void nextBatch( final int batchSize )
+	{
+		// hypotheses that are not rejected (or not tested at all) do not count
+		if ( batchTested.length < batchSize )
+		{
+			batchTested = new long[ batchSize ];
+			batchConsistent = new long[ batchSize ];
+		}
+		else
+		{
+			Arrays.fill( batchTested, 0 );
+			Arrays.fill( batchConsistent, 0 );
+		}
+
+		inlierRatio = Math.max( inlierRatio, pendingInlierRatio );
+
+		if ( tested >= numProbes )
+			delta = Math.max( 1e-4, ( double )consistent / ( double )tested );
+
+		if ( delta < inlierRatio )
+			logA = Math.log( decisionThreshold( inlierRatio, delta, timeModel ) );
+	}
+
+	@Override
+	public void endBatch( final int numEvaluated )
+	{
+		for ( int s = 0; s < numEvaluated; ++s )
+		{
+			tested += batchTested[ s ];
+			consistent += batchConsistent[ s ];
+		}
+	}
+
+	protected static int gcd( int a, int b )
+	{
+		while ( b != 0 )
+		{
+			final int t = a % b;
+			a = b;
+			b = t;
+		}
+
+		return a;
+	}
+
+	/**
+	 * The optimal threshold of the likelihood ratio (Chum and Matas 2008), the solution of
+	 * A = timeModel * C + 1 + log( A ), where C is the expected change of the log-likelihood
+	 * ratio per candidate for a bad hypothesis.
+	 * 
+	 * @param epsilon - probability that a candidate is consistent with a good hypothesis
+	 * @param delta - probability that a candidate is consistent with a bad hypothesis
+	 * @param timeModel - the time to compute a hypothesis in units of computing one distance
+	 * @return the decision threshold A
+	 */
+	public static double decisionThreshold( final double epsilon, final double delta, final double timeModel )
+	{
+		final double c = ( 1 - delta ) * Math.log( ( 1 - delta ) / ( 1 - epsilon ) ) + delta * Math.log( delta / epsilon );
+		final double k = timeModel * c + 1;
+
+		double a = k;
+
+		for ( int i = 0; i < 20; ++i )
+		{
+			final double next = k + Math.log( a );
+
+			if ( Math.abs( next - a ) < 1e-9 )
+				return next;
+
+			a = next;
+		}
+
+		return a;
+	}
+}
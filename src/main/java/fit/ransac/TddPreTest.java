@@ -0,0 +1,121 @@
+/*-
+ * #%L
+ * code for function fitting
+ * %%
+ * Copyright (C) 2015 - 2025 Developers
+ * %%
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * 3. Neither the name of the Preibisch Lab nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package fit.ransac;
+
+import fit.AbstractFunction;
+import fit.PointStore;
+
+/**
+ * The T(d,d) test (Matas and Chum 2002), a hypothesis is only tested on all candidates if
+ * d randomly chosen candidates are all inliers. The candidates are chosen by a generator seeded with the
+ * minimal sample, so the decision for a hypothesis does not depend on the thread that evaluates it.
+ * 
+ * d = 1 is usually optimal, most hypotheses fitted to samples that contain an outlier are then
+ * rejected after computing a single distance.
+ * 
+ * @author Stephan Preibisch
+ */
+public class TddPreTest implements PreTest
+{
+	final int d;
+
+	/**
+	 * @param d - how many random candidates have to be inliers
+	 */
+	public TddPreTest( final int d )
+	{
+		this.d = d;
+	}
+
+	@Override
+	public < M extends AbstractFunction< M > > boolean accept( final M model, final int[] sample, final int index, final PointStore store, final double epsilon )
+	{
+		final int n = store.size();
+		long state = seed( sample );
+
+		for ( int j = 0; j < d; ++j )
+		{
+			state += GOLDEN_GAMMA;
+			final int i = randomIndex( state, n );
+
+			model.distanceTo( store.x, store.y, i, i + 1, store.residual );
+
+			if ( !( store.residual[ i ] < epsilon ) )
+				return false;
+		}
+
+		return true;
+	}
+
+	@Override
+	public boolean residualsComplete() { return false; }
+
+	@Override
+	public void improved( final int numInliers, final int numCandidates ) {}
+
+	@Override
+	public void nextBatch( final int batchSize ) {}
+
+	@Override
+	public void endBatch( final int numEvaluated ) {}
+
+	static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+	/**
+	 * @return a seed that only depends on the indices of the minimal sample
+	 */
+	static long seed( final int[] sample )
+	{
+		long seed = 0;
+
+		for ( final int i : sample )
+			seed = mix( seed + GOLDEN_GAMMA + i );
+
+		return seed;
+	}
+
+	/**
+	 * @return a random index in [0, n) for a state of the generator (SplitMix64)
+	 */
+	static int randomIndex( final long state, final int n )
+	{
+		return ( int )( ( ( mix( state ) >>> 33 ) * n ) >>> 31 );
+	}
+
+	static long mix( long z )
+	{
+		z = ( z ^ ( z >>> 30 ) ) * 0xbf58476d1ce4e5b9L;
+		z = ( z ^ ( z >>> 27 ) ) * 0x94d049bb133111ebL;
+		return z ^ ( z >>> 31 );
+	}
+}
@@ -0,0 +1,79 @@
+/*-
+ * #%L
+ * code for function fitting
+ * %%
+ * Copyright (C) 2015 - 2025 Developers
+ * %%
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * 3. Neither the name of the Preibisch Lab nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package fit.ransac;
+
+import java.util.Random;
+
+/**
+ * Draws uniformly distributed minimal samples using a partial Fisher-Yates shuffle
+ * of a permutation of all indices, so no indices are rejected and nothing is allocated.
+ * 
+ * @author Stephan Preibisch
+ */
+public class UniformSampler implements Sampler
+{
+	final int[] permutation;
+	final Random rnd;
+
+	public UniformSampler( final int numCandidates, final Random rnd )
+	{
+		this.rnd = rnd;
+		this.permutation = new int[ numCandidates ];
+
+		for ( int i = 0; i < numCandidates; ++i )
+			permutation[ i ] = i;
+	}
+
+	@Override
+	public boolean drawSample( final int[] sample )
+	{
+		final int n = permutation.length;
+
+		if ( sample.length > n )
+			return false;
+
+		// the permutation stays a permutation, so we can continue with whatever order is left from the last sample
+		for ( int j = 0; j < sample.length; ++j )
+		{
+			final int k = j + rnd.nextInt( n - j );
+			final int index = permutation[ k ];
+
+			permutation[ k ] = permutation[ j ];
+			permutation[ j ] = index;
+
+			sample[ j ] = index;
+		}
+
+		return true;
+	}
+}
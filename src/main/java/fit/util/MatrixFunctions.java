@@ -131,6 +131,80 @@ public class MatrixFunctions
 			a[ 8 ] * a[ 1 ] * a[ 3 ];
 	}
 
+	/**
+	 * Computes the null vector of an n x (n+1) matrix of rank n by Gaussian elimination with
+	 * complete pivoting, e.g. the conic through 5 points. The matrix is modified.
+	 * 
+	 * @param m - the matrix, m[ row ][ column ]
+	 * @param v - the null vector (length n+1, not normalized)
+	 * @throws NoninvertibleModelException if the rank is smaller than n
+	 */
+	final public static void nullVector( final double[][] m, final double[] v ) throws NoninvertibleModelException
+	{
+		final int n = m.length;
+		final int[] col = new int[ n + 1 ];
+
+		double max = 0;
+
+		for ( int c = 0; c <= n; ++c )
+		{
+			col[ c ] = c;
+
+			for ( int r = 0; r < n; ++r )
+				max = Math.max( max, Math.abs( m[ r ][ c ] ) );
+		}
+
+		final double eps = max * 1e-12;
+
+		for ( int k = 0; k < n; ++k )
+		{
+			// the largest remaining element is the pivot
+			int pr = k, pc = k;
+
+			for ( int r = k; r < n; ++r )
+				for ( int c = k; c <= n; ++c )
+					if ( Math.abs( m[ r ][ col[ c ] ] ) > Math.abs( m[ pr ][ col[ pc ] ] ) )
+					{
+						pr = r;
+						pc = c;
+					}
+
+			final double pivot = m[ pr ][ col[ pc ] ];
+
+			if ( !( Math.abs( pivot ) > eps ) )
+				throw new NoninvertibleModelException( "Matrix has rank " + k + " < " + n + "." );
+
+			final double[] tmp = m[ k ];
+			m[ k ] = m[ pr ];
+			m[ pr ] = tmp;
+
+			final int t = col[ k ];
+			col[ k ] = col[ pc ];
+			col[ pc ] = t;
+
+			for ( int r = k + 1; r < n; ++r )
+			{
+				final double f = m[ r ][ col[ k ] ] / pivot;
+
+				for ( int c = k; c <= n; ++c )
+					m[ r ][ col[ c ] ] -= f * m[ k ][ col[ c ] ];
+			}
+		}
+
+		// the remaining column is free, back substitution for the others
+		v[ col[ n ] ] = 1;
+
+		for ( int k = n - 1; k >= 0; --k )
+		{
+			double sum = 0;
+
+			for ( int c = k + 1; c <= n; ++c )
+				sum += m[ k ][ col[ c ] ] * v[ col[ c ] ];
+
+			v[ col[ k ] ] = -sum / m[ k ][ col[ k ] ];
+		}
+	}
+
 	/**
 	 * Computes the pseudo-inverse of a matrix using Singular Value Decomposition
 	 * 
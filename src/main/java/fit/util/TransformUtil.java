@@ -34,6 +34,7 @@ package fit.util;
 
 import java.awt.geom.AffineTransform;
 import java.util.ArrayList;
+import java.util.Arrays;
 
 import fit.AbstractFunction;
 import fit.AbstractFunction2D;
@@ -44,7 +45,6 @@ import ij.gui.Overlay;
 import ij.gui.PolygonRoi;
 import ij.gui.Roi;
 import mpicbg.models.AffineModel2D;
-import mpicbg.models.Point;
 import net.imglib2.Cursor;
 import net.imglib2.img.Img;
 import net.imglib2.img.array.ArrayImgs;
@@ -86,23 +86,28 @@ public class TransformUtil
 		IJ.showProgress( 0.0 );
 
 		final Img< FloatType > img = ArrayImgs.floats( sizeX, sizeY );
-		final Cursor< FloatType > c = img.localizingCursor();
+		final Cursor< FloatType > c = img.cursor();
 
-		final Point p = new Point( new double[ 2 ] );
+		// compute the distances line by line
+		final double[] xs = new double[ sizeX ];
+		final double[] ys = new double[ sizeX ];
+		final double[] distances = new double[ sizeX ];
 
-		int i = 0;
+		for ( int x = 0; x < sizeX; ++x )
+			xs[ x ] = x;
 
-		while ( c.hasNext() )
+		for ( int y = 0; y < sizeY; ++y )
 		{
-			c.fwd();
+			Arrays.fill( ys, y );
+			shape.distanceTo( xs, ys, 0, sizeX, distances );
 
-			p.getL()[ 0 ] = p.getW()[ 0 ] = c.getDoublePosition( 0 );
-			p.getL()[ 1 ] = p.getW()[ 1 ] = c.getDoublePosition( 1 );
+			for ( int x = 0; x < sizeX; ++x )
+			{
+				c.fwd();
+				c.get().set( (float)distances[ x ] );
+			}
 
-			c.get().set( (float)shape.distanceTo( p ) );
-			
-			if ( ++i % 1000 == 0 )
-				IJ.showProgress( i, (int)img.size() );
+			IJ.showProgress( y, sizeY );
 		}
 
 		IJ.showProgress( 1.0 );
@@ -37,6 +37,7 @@ import java.awt.Checkbox;
 import java.awt.Choice;
 import java.awt.Color;
 import java.awt.Dimension;
+import java.awt.EventQueue;
 import java.awt.Frame;
 import java.awt.GridBagConstraints;
 import java.awt.GridBagLayout;
@@ -45,20 +46,27 @@ import java.awt.Label;
 import java.awt.Scrollbar;
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 
 import org.jfree.chart.JFreeChart;
 import org.jfree.chart.util.ShapeUtils;
+import org.jfree.data.xy.XYSeries;
 import org.jfree.data.xy.XYSeriesCollection;
 
 import fit.AbstractFunction2D;
 import fit.PointFunctionMatch;
+import fit.PointStore;
 import fit.polynomial.HigherOrderPolynomialFunction;
 import fit.polynomial.InterpolatedPolynomial;
 import fit.polynomial.LinearFunction;
 import fit.polynomial.Polynomial;
 import fit.polynomial.QuadraticFunction;
+import fit.ransac.CancellationToken;
+import fit.ransac.InformationCriterion;
+import fit.ransac.RansacListener;
+import fit.ransac.RansacSettings;
 import mpicbg.models.Point;
 import mt.listeners.CatastrophyCheckBoxListener;
 import mt.listeners.FinishButtonListener;
@@ -87,7 +95,7 @@ public class InteractiveRANSAC
 	public static double MAX_CAT = 100.0;
 
 	final Frame frame, jFreeChartFrame;
-	public int functionChoice; // 0 == Linear, 1 == Quadratic interpolated, 2 == cubic interpolated
+	public int functionChoice; // 0 == Linear, 1 == Quadratic interpolated, 2 == cubic interpolated, 3 == selected by BIC
 	AbstractFunction2D function;
 	public double lambda;
 	final ArrayList< Pair< Integer, Double > > mts;
@@ -100,7 +108,13 @@ public class InteractiveRANSAC
 
 	final XYSeriesCollection dataset;
 	final JFreeChart chart;
-	public int updateCount = 0;
+
+	// the running update, canceled if superseded by a newer one
+	CancellationToken currentUpdate = null;
+
+	// the best hypothesis of each segment while RANSAC is running (only accessed on the event dispatch thread)
+	final ArrayList< XYSeries > previews = new ArrayList< XYSeries >();
+	CancellationToken previewUpdate = null;
 
 	// for scrollbars
 	int maxErrorInt, lambdaInt, minSlopeInt, maxSlopeInt, minDistCatInt;
@@ -189,6 +203,7 @@ public class InteractiveRANSAC
 		choice.add( "Linear Function only" );
 		choice.add( "Quadratic function regularized with Linear Function" );
 		choice.add( "Cubic Function regularized with Linear Function" );
+		choice.add( "Best of Linear, Quadratic and Cubic Function (BIC)" );
 
 		this.lambdaSB = new Scrollbar( Scrollbar.HORIZONTAL, this.lambdaInt, 1, MIN_SLIDER, MAX_SLIDER + 1 );
 
@@ -324,12 +339,18 @@ public class InteractiveRANSAC
 			this.function = new InterpolatedPolynomial< LinearFunction, QuadraticFunction >(
 					new LinearFunction(), new QuadraticFunction(), 1 - this.lambda );
 		}
-		else
+		else if ( functionChoice == 2 )
 		{
 			this.setLambdaEnabled( true );
 			this.function = new InterpolatedPolynomial< LinearFunction, HigherOrderPolynomialFunction >(
 					new LinearFunction(), new HigherOrderPolynomialFunction( 3 ), 1 - this.lambda );
 		}
+		else
+		{
+			// all three are fitted from the same samples, see updateRANSAC()
+			this.function = null;
+			this.setLambdaEnabled( false );
+		}
 
 	}
 
@@ -355,21 +376,140 @@ public class InteractiveRANSAC
 		}
 	}
 
-	public void updateRANSAC()
+	/**
+	 * Runs RANSAC in the background with the current parameters and updates the chart on the
+	 * event dispatch thread once it is done. A running update is canceled, its result is discarded.
+	 */
+	public synchronized void updateRANSAC()
 	{
-		++updateCount;
+		if ( currentUpdate != null )
+			currentUpdate.cancel();
+
+		final CancellationToken token = currentUpdate = new CancellationToken();
+
+		final AbstractFunction2D function = this.function;
+		final int functionChoice = this.functionChoice;
+		final double maxError = this.maxError;
+		final int minInliers = this.minInliers;
+		final int maxDist = this.maxDist;
+
+		final Thread thread = new Thread( new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				final RansacSettings settings = new RansacSettings().setCancellation( token ).setListener( previewListener( token ) );
+				final ArrayList< Pair< AbstractFunction2D, ArrayList< PointFunctionMatch > > > segments;
+
+				if ( functionChoice == 3 )
+					segments = Tracking.findAllFunctions( points, Arrays.asList( new LinearFunction(), new QuadraticFunction(), new HigherOrderPolynomialFunction( 3 ) ),
+							InformationCriterion.BIC, maxError, minInliers, maxDist, settings );
+				else
+					segments = Tracking.findAllFunctions( points, function, maxError, minInliers, maxDist, settings );
+
+				if ( token.isCanceled() )
+					return;
+
+				EventQueue.invokeLater( new Runnable()
+				{
+					@Override
+					public void run()
+					{
+						if ( !token.isCanceled() )
+							updateChart( segments, functionChoice );
+					}
+				} );
+			}
+		}, "InteractiveRANSAC" );
+
+		thread.setDaemon( true );
+		thread.start();
+	}
+
+	/**
+	 * Shows the best hypothesis of every segment while RANSAC is still running.
+	 */
+	protected RansacListener< AbstractFunction2D > previewListener( final CancellationToken token )
+	{
+		return new RansacListener< AbstractFunction2D >()
+		{
+			PointStore last = null;
+			int segment = -1;
+
+			@Override
+			public void improved( final AbstractFunction2D model, final PointStore store, final int[] inliers, final double cost )
+			{
+				// each segment is found by a new RANSAC run on the remaining points
+				if ( store != last )
+				{
+					last = store;
+					++segment;
+				}
+
+				double min = Double.MAX_VALUE, max = -Double.MAX_VALUE;
+
+				for ( final int i : inliers )
+				{
+					min = Math.min( min, store.x[ i ] );
+					max = Math.max( max, store.x[ i ] );
+				}
+
+				final XYSeries series = Tracking.drawFunction( ( Polynomial )model, min, max, 0.5, "Preview " + ( segment + 1 ) );
+				final int s = segment;
+
+				EventQueue.invokeLater( new Runnable()
+				{
+					@Override
+					public void run()
+					{
+						if ( !token.isCanceled() )
+							showPreview( token, s, series );
+					}
+				} );
+			}
+		};
+	}
+
+	protected void showPreview( final CancellationToken token, final int segment, final XYSeries series )
+	{
+		// the first preview of an update replaces the previous result
+		if ( previewUpdate != token )
+		{
+			previewUpdate = token;
+			previews.clear();
+		}
+
+		if ( segment < previews.size() )
+			previews.set( segment, series );
+		else
+			previews.add( series );
 
 		for ( int i = dataset.getSeriesCount() - 1; i > 0; --i )
 			dataset.removeSeries( i );
 
-		final ArrayList< Pair< AbstractFunction2D, ArrayList< PointFunctionMatch > > > segments =
-				Tracking.findAllFunctions( points, function, maxError, minInliers, maxDist );
+		for ( int i = 0; i < previews.size(); ++i )
+		{
+			dataset.addSeries( previews.get( i ) );
+
+			Tracking.setColor( chart, i + 1, new Color( 255, 128, 0 ) );
+			Tracking.setDisplayType( chart, i + 1, true, false );
+			Tracking.setStroke( chart, i + 1, 2f );
+		}
+	}
+
+	/**
+	 * @param segments - the segments found by RANSAC
+	 * @param functionChoice - the function choice the segments were computed with
+	 */
+	protected void updateChart( final ArrayList< Pair< AbstractFunction2D, ArrayList< PointFunctionMatch > > > segments, final int functionChoice )
+	{
+		previews.clear();
+
+		for ( int i = dataset.getSeriesCount() - 1; i > 0; --i )
+			dataset.removeSeries( i );
 
 		if ( segments == null || segments.size() == 0 )
-		{
-			--updateCount;
 			return;
-		}
 
 		// sort the segments according to time relative to each other and the PointFunctionMatches internally
 		sort( segments );
@@ -386,7 +526,10 @@ public class InteractiveRANSAC
 				
 				dataset.addSeries( Tracking.drawFunction( (Polynomial)result.getA(), minMax.getA(), minMax.getB(), 0.5, "Segment " + segment ) );
 
-				if ( functionChoice > 0 )
+				// with the selection by BIC, each segment has the type of the model selected for it
+				final boolean nonLinear = functionChoice == 3 ? !( result.getA() instanceof LinearFunction ) : functionChoice > 0;
+
+				if ( nonLinear )
 				{
 					Tracking.setColor( chart, i, new Color( 255, 0, 0 ) );
 					Tracking.setDisplayType( chart, i, true, false );
@@ -401,7 +544,7 @@ public class InteractiveRANSAC
 
 				++i;
 
-				if ( functionChoice > 0 )
+				if ( nonLinear )
 				{
 					dataset.addSeries( Tracking.drawFunction( linear, minMax.getA(), minMax.getB(), 0.5, "Linear Segment " + segment ) );
 	
@@ -516,8 +659,6 @@ public class InteractiveRANSAC
 				}
 			}
 		}
-
-		--updateCount;
 	}
 
 	protected void sort( final Pair< ? extends AbstractFunction2D, ArrayList< PointFunctionMatch > > segment )
@@ -69,10 +69,18 @@ import org.jfree.data.xy.XYSeriesCollection;
 
 import fit.AbstractFunction2D;
 import fit.PointFunctionMatch;
+import fit.PointStore;
 import fit.polynomial.HigherOrderPolynomialFunction;
 import fit.polynomial.InterpolatedPolynomial;
 import fit.polynomial.LinearFunction;
+import fit.polynomial.OptimalSegmentation;
 import fit.polynomial.Polynomial;
+import fit.polynomial.RobustLinearEstimator;
+import fit.ransac.InformationCriterion;
+import fit.ransac.JLinkage;
+import fit.ransac.LocalitySamplerFactory;
+import fit.ransac.MultiModelRansac;
+import fit.ransac.RansacSettings;
 import mpicbg.models.NotEnoughDataPointsException;
 import mpicbg.models.Point;
 import net.imglib2.util.Pair;
@@ -298,21 +306,42 @@ public class Tracking
 			final int minNumInliers,
 			final double maxDist )
 	{
-		final ArrayList< PointFunctionMatch > candidates = new ArrayList<PointFunctionMatch>();
-		final ArrayList< PointFunctionMatch > inliers = new ArrayList<PointFunctionMatch>();
-		
-		for ( final Point p : mts )
-			candidates.add( new PointFunctionMatch( p ) );
+		return findFunction( mts, function, maxError, minNumInliers, maxDist, new RansacSettings() );
+	}
+
+	public static < P extends AbstractFunction2D< P > > Pair< P, ArrayList< PointFunctionMatch > > findFunction(
+			final ArrayList< Point > mts,
+			final P function,
+			final double maxError,
+			final int minNumInliers,
+			final double maxDist,
+			final RansacSettings settings )
+	{
+		return findFunction( mts, PointStore.fromPoints( mts ), function, maxError, minNumInliers, maxDist, settings );
+	}
 
+	/**
+	 * Same as {@link #findFunction(ArrayList, AbstractFunction2D, double, int, double, RansacSettings)} for a
+	 * store that was already created from the points, afterwards it contains the inliers.
+	 */
+	public static < P extends AbstractFunction2D< P > > Pair< P, ArrayList< PointFunctionMatch > > findFunction(
+			final List< Point > mts,
+			final PointStore store,
+			final P function,
+			final double maxError,
+			final int minNumInliers,
+			final double maxDist,
+			final RansacSettings settings )
+	{
 		try
 		{
-			function.ransac( candidates, inliers, 100, maxError, 0.01, minNumInliers, maxDist );
+			function.ransac( store, 100, maxError, 0.01, minNumInliers, maxDist, settings );
 
-			if ( inliers.size() >= function.getMinNumPoints() )
+			if ( store.numInliers() >= function.getMinNumPoints() )
 			{
-				function.fit( inliers );
+				function.fitFunction( store, store.inlierIndices, 0, store.numInliers() );
 	
-				//System.out.println( inliers.size() + "/" + candidates.size() );
+				//System.out.println( store.numInliers() + "/" + store.size() );
 				//System.out.println( function );
 			}
 			else
@@ -329,7 +358,7 @@ public class Tracking
 			return null;
 		}
 
-		return new ValuePair< P, ArrayList< PointFunctionMatch > >( function, inliers );
+		return new ValuePair< P, ArrayList< PointFunctionMatch > >( function, store.getInlierMatches( mts, function ) );
 	}
 
 	/*
@@ -341,11 +370,28 @@ public class Tracking
 			final double maxError,
 			final int minNumInliers,
 			final int maxDist )
+	{
+		return findAllFunctions( mts, function, maxError, minNumInliers, maxDist, new RansacSettings() );
+	}
+
+	/**
+	 * Finds functions with RANSAC until no more can be found. If the deadline passes or the
+	 * {@link fit.ransac.CancellationToken} of the settings is canceled, it stops early and
+	 * returns the functions found so far (the last one is the best hypothesis so far).
+	 */
+	public static < P extends AbstractFunction2D< P > > ArrayList< Pair< P, ArrayList< PointFunctionMatch > > > findAllFunctions(
+			final ArrayList< Point > mts,
+			final P function,
+			final double maxError,
+			final int minNumInliers,
+			final int maxDist,
+			final RansacSettings settings )
 	{
 		boolean fitted;
 
-		final ArrayList< Point > remainingPoints = new ArrayList< Point >();
-		remainingPoints.addAll( mts );
+		// the remaining points and their coordinates, the inliers of every function are removed in one pass
+		final ArrayList< Point > remainingPoints = new ArrayList< Point >( mts );
+		PointStore store = PointStore.fromPoints( mts );
 
 		final ArrayList< Pair< P, ArrayList< PointFunctionMatch > > > segments = new ArrayList< Pair<P,ArrayList<PointFunctionMatch>> >();
 
@@ -353,25 +399,196 @@ public class Tracking
 		{
 			fitted = false;
 
-			final Pair< P, ArrayList< PointFunctionMatch > > f = findFunction( remainingPoints, function.copy(), maxError, minNumInliers, maxDist );
+			final Pair< P, ArrayList< PointFunctionMatch > > f = findFunction( remainingPoints, store, function.copy(), maxError, minNumInliers, maxDist, settings );
 
 			if ( f != null && f.getB().size() > 0 )
 			{
 				fitted = true;
 				segments.add( f );
 
-				final ArrayList< Point > inlierPoints = new ArrayList< Point >();
-				for ( final PointFunctionMatch p : f.getB() )
-					inlierPoints.add( p.getP1() );
+				store = store.removeInliers( remainingPoints );
+			}
+		}
+		while ( fitted && !settings.isExpired() );
+
+		return segments;
+	}
+
+	/**
+	 * Same as {@link #findAllFunctions(ArrayList, AbstractFunction2D, double, int, int, RansacSettings)}, but all
+	 * functions are found from one set of 1000 hypotheses (see {@link JLinkage}), the hypotheses are local (within
+	 * 3 * maxDist on the x-axis).
+	 */
+	public static < P extends AbstractFunction2D< P > > ArrayList< Pair< P, ArrayList< PointFunctionMatch > > > findAllFunctionsJLinkage(
+			final ArrayList< Point > mts,
+			final P function,
+			final double maxError,
+			final int minNumInliers,
+			final int maxDist )
+	{
+		return findAllFunctionsJLinkage( mts, function, maxError, minNumInliers, maxDist,
+				new RansacSettings().setSamplerFactory( new LocalitySamplerFactory( maxDist, 3 ) ) );
+	}
+
+	/**
+	 * Same as {@link #findAllFunctions(ArrayList, AbstractFunction2D, double, int, int, RansacSettings)}, but all
+	 * functions are found from one set of 1000 hypotheses (see {@link JLinkage}), so later functions do not depend
+	 * on the inliers of earlier ones. The settings should contain a local sampler, e.g. a {@link LocalitySamplerFactory}.
+	 */
+	public static < P extends AbstractFunction2D< P > > ArrayList< Pair< P, ArrayList< PointFunctionMatch > > > findAllFunctionsJLinkage(
+			final ArrayList< Point > mts,
+			final P function,
+			final double maxError,
+			final int minNumInliers,
+			final int maxDist,
+			final RansacSettings settings )
+	{
+		final ArrayList< Pair< P, ArrayList< PointFunctionMatch > > > segments = new ArrayList< Pair< P, ArrayList< PointFunctionMatch > > >();
+		final PointStore store = PointStore.fromPoints( mts );
+		final int[] labels = new int[ store.size() ];
+		final ArrayList< P > functions;
+
+		try
+		{
+			functions = JLinkage.fit( function, store, 1000, maxError, minNumInliers, maxDist, labels, settings );
+		}
+		catch ( Exception e )
+		{
+			System.out.println( "Couldn't fit function: " + e );
+			return segments;
+		}
+
+		for ( int j = 0; j < functions.size(); ++j )
+		{
+			store.clearInliers();
+
+			for ( int i = 0; i < labels.length; ++i )
+				if ( labels[ i ] == j )
+					store.addInlier( i );
+
+			segments.add( new ValuePair< P, ArrayList< PointFunctionMatch > >( functions.get( j ), store.getInlierMatches( mts, functions.get( j ) ) ) );
+		}
+
+		return segments;
+	}
+
+	/**
+	 * Same as {@link #findFunction(ArrayList, AbstractFunction2D, double, int, double, RansacSettings)}, but fits
+	 * several functions (e.g. linear, quadratic and cubic) at once from the same samples and returns the one
+	 * selected by the criterion (see {@link MultiModelRansac}). The functions are not modified.
+	 */
+	public static Pair< AbstractFunction2D, ArrayList< PointFunctionMatch > > findFunction(
+			final ArrayList< Point > mts,
+			final List< ? extends AbstractFunction2D< ? > > functions,
+			final InformationCriterion criterion,
+			final double maxError,
+			final int minNumInliers,
+			final double maxDist,
+			final RansacSettings settings )
+	{
+		return findFunction( mts, PointStore.fromPoints( mts ), functions, criterion, maxError, minNumInliers, maxDist, settings );
+	}
+
+	/**
+	 * Same as {@link #findFunction(ArrayList, List, InformationCriterion, double, int, double, RansacSettings)} for
+	 * a store that was already created from the points, afterwards it contains the inliers.
+	 */
+	public static Pair< AbstractFunction2D, ArrayList< PointFunctionMatch > > findFunction(
+			final List< Point > mts,
+			final PointStore store,
+			final List< ? extends AbstractFunction2D< ? > > functions,
+			final InformationCriterion criterion,
+			final double maxError,
+			final int minNumInliers,
+			final double maxDist,
+			final RansacSettings settings )
+	{
+		final ArrayList< AbstractFunction2D< ? > > copies = new ArrayList< AbstractFunction2D< ? > >();
+
+		for ( final AbstractFunction2D< ? > function : functions )
+			copies.add( function.copy() );
+
+		final AbstractFunction2D< ? > function;
+
+		try
+		{
+			final int selected = MultiModelRansac.ransac( copies, store, 100, maxError, 0.01, minNumInliers, maxDist, criterion, copies.get( 0 ).getRandom(), settings );
+
+			if ( selected < 0 || store.numInliers() < copies.get( selected ).getMinNumPoints() )
+				return null;
+
+			function = copies.get( selected );
+			function.fitFunction( store, store.inlierIndices, 0, store.numInliers() );
+		}
+		catch ( Exception e )
+		{
+			System.out.println( "Couldn't fit function: " + e );
+			return null;
+		}
+
+		return new ValuePair< AbstractFunction2D, ArrayList< PointFunctionMatch > >( function, store.getInlierMatches( mts, function ) );
+	}
+
+	/**
+	 * Same as {@link #findAllFunctions(ArrayList, AbstractFunction2D, double, int, int, RansacSettings)}, but every
+	 * segment is the function selected by the criterion (see {@link #findFunction(ArrayList, List, InformationCriterion, double, int, double, RansacSettings)}).
+	 */
+	public static ArrayList< Pair< AbstractFunction2D, ArrayList< PointFunctionMatch > > > findAllFunctions(
+			final ArrayList< Point > mts,
+			final List< ? extends AbstractFunction2D< ? > > functions,
+			final InformationCriterion criterion,
+			final double maxError,
+			final int minNumInliers,
+			final int maxDist,
+			final RansacSettings settings )
+	{
+		boolean fitted;
+
+		// the remaining points and their coordinates, the inliers of every function are removed in one pass
+		final ArrayList< Point > remainingPoints = new ArrayList< Point >( mts );
+		PointStore store = PointStore.fromPoints( mts );
+
+		final ArrayList< Pair< AbstractFunction2D, ArrayList< PointFunctionMatch > > > segments = new ArrayList< Pair< AbstractFunction2D, ArrayList< PointFunctionMatch > > >();
 
-				remainingPoints.removeAll( inlierPoints );
+		do
+		{
+			fitted = false;
+
+			final Pair< AbstractFunction2D, ArrayList< PointFunctionMatch > > f = findFunction( remainingPoints, store, functions, criterion, maxError, minNumInliers, maxDist, settings );
+
+			if ( f != null && f.getB().size() > 0 )
+			{
+				fitted = true;
+				segments.add( f );
+
+				store = store.removeInliers( remainingPoints );
 			}
 		}
-		while ( fitted );
+		while ( fitted && !settings.isExpired() );
 
 		return segments;
 	}
 
+	/**
+	 * Deterministic alternative to {@link #findAllFunctions(ArrayList, AbstractFunction2D, double, int, int)}, segments
+	 * all points optimally into consecutive polynomials (see {@link OptimalSegmentation}). The segmentation is
+	 * least-squares, not robust; each segment is refitted to and returns only its points within maxError.
+	 * Segments are ordered by x.
+	 * 
+	 * @param maxError - the maximal distance of an inlier to the function of its segment
+	 * @param penalty - the cost of an additional segment in units of squared residuals, e.g. a few times maxError^2 * log( #points )
+	 * @param minNumInliers - the minimal number of inliers of a segment
+	 */
+	public static < P extends AbstractFunction2D< P > & Polynomial< P, Point > > ArrayList< Pair< P, ArrayList< PointFunctionMatch > > > findAllFunctionsOptimal(
+			final ArrayList< Point > mts,
+			final P function,
+			final double maxError,
+			final double penalty,
+			final int minNumInliers )
+	{
+		return OptimalSegmentation.segment( mts, function, penalty, minNumInliers, maxError );
+	}
+
 	
 	public static Pair< LinearFunction, ArrayList< PointFunctionMatch > > findLinearFunction(
 			final ArrayList< Point > mts,
@@ -381,28 +598,35 @@ public class Tracking
 			final double minSlope,
 			final double maxSlope )
 	{
-		final ArrayList< PointFunctionMatch > candidates = new ArrayList<PointFunctionMatch>();
-		final ArrayList< PointFunctionMatch > inliers = new ArrayList<PointFunctionMatch>();
-		
-		for ( final Point p : mts )
-			candidates.add( new PointFunctionMatch( p ) );
+		return findLinearFunction( mts, maxError, minNumInliers, maxDist, minSlope, maxSlope, new RansacSettings() );
+	}
 
+	public static Pair< LinearFunction, ArrayList< PointFunctionMatch > > findLinearFunction(
+			final ArrayList< Point > mts,
+			final double maxError,
+			final int minNumInliers,
+			final int maxDist,
+			final double minSlope,
+			final double maxSlope,
+			final RansacSettings settings )
+	{
+		final PointStore store = PointStore.fromPoints( mts );
 		final LinearFunction function = new LinearFunction();
 
 		try
 		{
-			function.ransac( candidates, inliers, 1000, maxError, 0, minNumInliers, maxDist, minSlope, maxSlope );
+			function.ransac( store, 1000, maxError, 0, minNumInliers, maxDist, minSlope, maxSlope, settings );
 
-			if ( inliers.size() >= function.getMinNumPoints() )
+			if ( store.numInliers() >= function.getMinNumPoints() )
 			{
-				function.fit( inliers );
+				function.fitFunction( store, store.inlierIndices, 0, store.numInliers() );
 	
-				System.out.println( inliers.size() + "/" + candidates.size() );
+				System.out.println( store.numInliers() + "/" + store.size() );
 				System.out.println( function );
 			}
 			else
 			{
-				System.out.println( "0/" + candidates.size() );
+				System.out.println( "0/" + store.size() );
 				return null;
 			}
 		}
@@ -413,7 +637,42 @@ public class Tracking
 			return null;
 		}
 
-		return new ValuePair< LinearFunction, ArrayList< PointFunctionMatch > >( function, inliers );
+		return new ValuePair< LinearFunction, ArrayList< PointFunctionMatch > >( function, store.getInlierMatches( mts, function ) );
+	}
+
+	/**
+	 * Deterministic alternative to {@link #findLinearFunction(ArrayList, double, int, int, double, double)} for points
+	 * with a single dominant linear trend, fits a {@link RobustLinearEstimator} instead of running RANSAC.
+	 * 
+	 * @param repeatedMedian - use the repeated median (breakdown point 50%) instead of Theil-Sen (29%, faster for many points)
+	 */
+	public static Pair< LinearFunction, ArrayList< PointFunctionMatch > > findRobustLinearFunction(
+			final ArrayList< Point > mts,
+			final double maxError,
+			final int minNumInliers,
+			final int maxDist,
+			final double minSlope,
+			final double maxSlope,
+			final boolean repeatedMedian )
+	{
+		final PointStore store = PointStore.fromPoints( mts );
+		final LinearFunction function = new LinearFunction();
+
+		try
+		{
+			if ( !new RobustLinearEstimator( repeatedMedian ).fit( function, store, maxError, 0, minNumInliers, maxDist, minSlope, maxSlope ) ||
+					store.numInliers() < function.getMinNumPoints() )
+				return null;
+
+			function.fitFunction( store, store.inlierIndices, 0, store.numInliers() );
+		}
+		catch ( Exception e )
+		{
+			System.out.println( "Couldn't fit function: " + e );
+			return null;
+		}
+
+		return new ValuePair< LinearFunction, ArrayList< PointFunctionMatch > >( function, store.getInlierMatches( mts, function ) );
 	}
 
 	public static Pair< Double, Double > fromTo( final ArrayList< PointFunctionMatch > points )
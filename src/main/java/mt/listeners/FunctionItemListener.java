@@ -53,8 +53,10 @@ public class FunctionItemListener implements ItemListener
 			parent.functionChoice = 0;
 		else if ( arg0.getItem().toString().startsWith( "Quadratic" ) )
 			parent.functionChoice = 1;
-		else
+		else if ( arg0.getItem().toString().startsWith( "Cubic" ) )
 			parent.functionChoice = 2;
+		else
+			parent.functionChoice = 3;
 
 		parent.setFunction();
 		parent.updateRANSAC();
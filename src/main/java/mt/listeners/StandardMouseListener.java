@@ -63,11 +63,6 @@ public class StandardMouseListener implements MouseListener
 		System.out.println( parent.minInliers );
 		*/
 
-		while ( parent.updateCount > 0 )
-		{
-			try { Thread.sleep( 10 ); } catch ( InterruptedException e ) {}
-		}
-
 		parent.updateRANSAC();
 	}
 
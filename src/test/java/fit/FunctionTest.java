@@ -0,0 +1,508 @@
+/*-
+ * #%L
+ * code for function fitting
+ * %%
+ * Copyright (C) 2015 - 2025 Developers
+ * %%
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * 3. Neither the name of the Preibisch Lab nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package fit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+import fit.circular.Circle;
+import fit.circular.CircleSums;
+import fit.circular.Ellipse;
+import fit.circular.EllipsePointDistanceFactory;
+import fit.polynomial.HigherOrderPolynomialFunction;
+import fit.polynomial.LinearFunction;
+import fit.polynomial.OptimalSegmentation;
+import fit.polynomial.PolynomialMomentIndex;
+import fit.polynomial.PolynomialSums;
+import fit.polynomial.QuadraticFunction;
+import fit.polynomial.RobustLinearEstimator;
+import mpicbg.models.IllDefinedDataPointsException;
+import mpicbg.models.Point;
+import net.imglib2.util.Pair;
+
+public class FunctionTest
+{
+	@Test
+	public void batchDistanceEqualsPointDistance()
+	{
+		final HigherOrderPolynomialFunction cubic = new HigherOrderPolynomialFunction( 3 );
+		cubic.coeff[ 0 ] = 2;
+		cubic.coeff[ 1 ] = -0.5;
+		cubic.coeff[ 2 ] = 0.01;
+		cubic.coeff[ 3 ] = 0.0001;
+
+		assertBatchEqualsPoint( new LinearFunction( 0.7, -3 ), 1e-12 );
+		assertBatchEqualsPoint( new QuadraticFunction( 0.01, -0.4, 5 ), 1e-6 );
+		assertBatchEqualsPoint( new Circle( 20, -10, 35 ), 1e-12 );
+
+		// the Newton-Raphson draws the same start values for each point in both cases
+		assertBatchEqualsPoint( cubic, 0 );
+	}
+
+	protected static void assertBatchEqualsPoint( final AbstractFunction< ? > function, final double delta )
+	{
+		final Random rnd = new Random( 5 );
+		final double[] xs = new double[ 100 ];
+		final double[] ys = new double[ 100 ];
+		final double[] out = new double[ 100 ];
+
+		for ( int i = 0; i < xs.length; ++i )
+		{
+			xs[ i ] = rnd.nextDouble() * 100 - 50;
+			ys[ i ] = rnd.nextDouble() * 100 - 50;
+		}
+
+		final AbstractFunction< ? > copy = function.copy();
+
+		function.distanceTo( xs, ys, 10, 90, out );
+
+		for ( int i = 10; i < 90; ++i )
+			assertEquals( copy.distanceTo( new Point( new double[]{ xs[ i ], ys[ i ] } ) ), out[ i ], delta );
+
+		assertEquals( 0, out[ 9 ], 0 );
+		assertEquals( 0, out[ 90 ], 0 );
+	}
+
+	@Test
+	public void fitFromStatisticsEqualsFit() throws Exception
+	{
+		final Random rnd = new Random( 9 );
+		final double[] xs = new double[ 60 ];
+		final double[] ys = new double[ 60 ];
+
+		final ArrayList< Point > points = new ArrayList< Point >();
+		final PolynomialSums sums = new PolynomialSums( 2 );
+		final CircleSums circleSums = new CircleSums();
+
+		for ( int i = 0; i < xs.length; ++i )
+		{
+			final double t = rnd.nextDouble() * Math.PI;
+			xs[ i ] = 10 + 30 * Math.cos( t ) + rnd.nextGaussian();
+			ys[ i ] = -5 + 30 * Math.sin( t ) + rnd.nextGaussian();
+
+			sums.add( xs[ i ], ys[ i ] );
+			circleSums.add( xs[ i ], ys[ i ] );
+		}
+
+		// remove the first 10 points again
+		for ( int i = 0; i < xs.length; ++i )
+		{
+			if ( i < 10 )
+			{
+				sums.remove( xs[ i ], ys[ i ] );
+				circleSums.remove( xs[ i ], ys[ i ] );
+			}
+			else
+			{
+				points.add( new Point( new double[]{ xs[ i ], ys[ i ] } ) );
+			}
+		}
+
+		assertEquals( 50, sums.size() );
+		assertEquals( 50, circleSums.size() );
+
+		final LinearFunction l1 = new LinearFunction(), l2 = new LinearFunction();
+		l1.fitFunction( points );
+		l2.fitFunction( sums );
+		assertEquals( l1.getM(), l2.getM(), 1e-8 );
+		assertEquals( l1.getN(), l2.getN(), 1e-8 );
+
+		final QuadraticFunction q1 = new QuadraticFunction(), q2 = new QuadraticFunction();
+		q1.fitFunction( points );
+		q2.fitFunction( sums );
+		assertEquals( q1.getA(), q2.getA(), 1e-8 );
+		assertEquals( q1.getB(), q2.getB(), 1e-8 );
+		assertEquals( q1.getC(), q2.getC(), 1e-8 );
+
+		final Circle c1 = new Circle(), c2 = new Circle();
+		c1.fitFunction( points );
+		c2.fitFunction( circleSums );
+		assertEquals( c1.getU(), c2.getU(), 1e-8 );
+		assertEquals( c1.getV(), c2.getV(), 1e-8 );
+		assertEquals( c1.getR(), c2.getR(), 1e-8 );
+	}
+
+	@Test
+	public void momentIndexFitEqualsFit() throws Exception
+	{
+		// a track sorted by frame
+		final Random rnd = new Random( 13 );
+		final ArrayList< Point > track = new ArrayList< Point >();
+
+		for ( int frame = 500; frame < 800; ++frame )
+			track.add( new Point( new double[]{ frame, 0.002 * ( frame - 600 ) * ( frame - 650 ) + 0.3 * frame + rnd.nextGaussian() } ) );
+
+		final PolynomialMomentIndex index = new PolynomialMomentIndex( track, 3 );
+
+		// reference: direct fits to the range, centered to avoid the ill-conditioned normal equations of large x
+		final ArrayList< Point > range = new ArrayList< Point >();
+		for ( final Point p : track.subList( 40, 95 ) )
+			range.add( new Point( new double[]{ p.getW()[ 0 ] - 567, p.getW()[ 1 ] } ) );
+
+		final LinearFunction l1 = new LinearFunction(), l2 = new LinearFunction();
+		l1.fitFunction( range );
+		index.fit( l2, 40, 95 );
+
+		final QuadraticFunction q1 = new QuadraticFunction(), q2 = new QuadraticFunction();
+		q1.fitFunction( range );
+		index.fit( q2, 40, 95 );
+
+		final HigherOrderPolynomialFunction h1 = new HigherOrderPolynomialFunction( 3 ), h2 = new HigherOrderPolynomialFunction( 3 );
+		h1.fitFunction( range );
+		index.fit( h2, 40, 95 );
+
+		for ( int x = 540; x < 595; x += 5 )
+		{
+			assertEquals( l1.predict( x - 567 ), l2.predict( x ), 1e-8 );
+			assertEquals( q1.predict( x - 567 ), q2.predict( x ), 1e-8 );
+			assertEquals( h1.predict( x - 567 ), h2.predict( x ), 1e-6 );
+		}
+	}
+
+	@Test
+	public void momentIndexShortRangeOfLongTrack() throws Exception
+	{
+		// a long track, short ranges far from its center
+		final Random rnd = new Random( 19 );
+		final ArrayList< Point > track = new ArrayList< Point >();
+
+		for ( int frame = 0; frame < 100000; ++frame )
+			track.add( new Point( new double[]{ frame, 1e-8 * ( frame - 40000 ) * ( frame - 40000 ) + 0.01 * frame + rnd.nextGaussian() } ) );
+
+		final PolynomialMomentIndex index = new PolynomialMomentIndex( track, 3 );
+
+		for ( final int[] r : new int[][]{ { 70003, 70023 }, { 91234, 91350 }, { 5, 9 } } )
+		{
+			final int from = r[ 0 ], to = r[ 1 ];
+
+			final ArrayList< Point > range = new ArrayList< Point >();
+			for ( final Point p : track.subList( from, to ) )
+				range.add( new Point( new double[]{ p.getW()[ 0 ] - from, p.getW()[ 1 ] } ) );
+
+			final QuadraticFunction q1 = new QuadraticFunction(), q2 = new QuadraticFunction();
+			q1.fitFunction( range );
+			index.fit( q2, from, to );
+
+			final HigherOrderPolynomialFunction h1 = new HigherOrderPolynomialFunction( 3 ), h2 = new HigherOrderPolynomialFunction( 3 );
+			h1.fitFunction( range );
+			index.fit( h2, from, to );
+
+			for ( int x = from; x < to; ++x )
+			{
+				assertEquals( q1.predict( x - from ), q2.predict( x ), 1e-6 );
+				assertEquals( h1.predict( x - from ), h2.predict( x ), 1e-3 );
+			}
+		}
+	}
+
+	@Test
+	public void optimalSegmentationFindsBreakpoints()
+	{
+		// piecewise linear track with breaks at frame 100 and 220
+		final Random rnd = new Random( 17 );
+		final double[] x = new double[ 300 ];
+		final double[] y = new double[ 300 ];
+
+		for ( int i = 0; i < x.length; ++i )
+		{
+			x[ i ] = i;
+			y[ i ] = ( i < 100 ? 0.5 * i : i < 220 ? 50 - 0.8 * ( i - 100 ) : -20 + 0.3 * ( i - 220 ) ) + 0.5 * rnd.nextGaussian();
+		}
+
+		final double penalty = 20;
+		final OptimalSegmentation seg = new OptimalSegmentation( x, y, 1, penalty, 5 );
+		final int[] starts = seg.segment();
+
+		assertEquals( 4, starts.length );
+		assertEquals( 0, starts[ 0 ] );
+		assertEquals( 100, starts[ 1 ], 1 );
+		assertEquals( 220, starts[ 2 ], 1 );
+		assertEquals( 300, starts[ 3 ] );
+
+		// the pruning must not change the optimum, compare to the plain O(n^2) dynamic program
+		final double[] f = new double[ x.length + 1 ];
+		f[ 0 ] = -penalty;
+
+		for ( int t = 1; t <= x.length; ++t )
+		{
+			f[ t ] = Double.POSITIVE_INFINITY;
+			for ( int s = 0; s <= t - 5; ++s )
+				f[ t ] = Math.min( f[ t ], f[ s ] + seg.cost( s, t ) + penalty );
+		}
+
+		double cost = -penalty;
+		for ( int s = 0; s < starts.length - 1; ++s )
+			cost += seg.cost( starts[ s ], starts[ s + 1 ] ) + penalty;
+
+		assertEquals( f[ x.length ], cost, 1e-6 );
+	}
+
+	@Test
+	public void optimalSegmentationEqualsUnprunedOptimum()
+	{
+		// random data, the pruning must not lose the optimum for any minimal segment length
+		final Random rnd = new Random( 29 );
+
+		for ( int run = 0; run < 500; ++run )
+		{
+			final int n = 20 + rnd.nextInt( 60 );
+			final int degree = 1 + rnd.nextInt( 2 );
+			final int minLength = 2 + rnd.nextInt( 15 );
+			final double penalty = rnd.nextDouble() * 500;
+
+			final double[] x = new double[ n ];
+			final double[] y = new double[ n ];
+
+			for ( int i = 0; i < n; ++i )
+			{
+				x[ i ] = i;
+				y[ i ] = ( i > 0 ? y[ i - 1 ] : 0 ) + rnd.nextGaussian() * 3;
+			}
+
+			final OptimalSegmentation seg = new OptimalSegmentation( x, y, degree, penalty, minLength );
+			final int[] starts = seg.segment();
+			final int m = Math.max( degree + 1, minLength );
+
+			final double[] f = new double[ n + 1 ];
+			f[ 0 ] = -penalty;
+
+			for ( int t = 1; t <= n; ++t )
+			{
+				f[ t ] = Double.POSITIVE_INFINITY;
+				for ( int s = 0; s <= t - m; ++s )
+					f[ t ] = Math.min( f[ t ], f[ s ] + seg.cost( s, t ) + penalty );
+			}
+
+			double cost = -penalty;
+			for ( int s = 0; s < starts.length - 1; ++s )
+			{
+				assertTrue( starts[ s + 1 ] - starts[ s ] >= m );
+				cost += seg.cost( starts[ s ], starts[ s + 1 ] ) + penalty;
+			}
+
+			assertEquals( n, starts[ starts.length - 1 ] );
+			assertEquals( f[ n ], cost, 1e-6 * Math.max( 1, Math.abs( f[ n ] ) ) );
+		}
+	}
+
+	@Test
+	public void optimalSegmentationReturnsOnlyInliers()
+	{
+		// piecewise linear track with a break at frame 100 and every 10th point an outlier
+		final Random rnd = new Random( 23 );
+		final ArrayList< Point > track = new ArrayList< Point >();
+
+		for ( int i = 0; i < 200; ++i )
+		{
+			final double y = ( i < 100 ? 0.5 * i : 50 - 0.8 * ( i - 100 ) ) + 0.3 * rnd.nextGaussian();
+			track.add( new Point( new double[]{ i, i % 10 == 5 ? y + 20 + 10 * rnd.nextDouble() : y } ) );
+		}
+
+		final double maxError = 1.5;
+		int numInliers = 0;
+
+		for ( final Pair< LinearFunction, ArrayList< PointFunctionMatch > > segment : OptimalSegmentation.segment( track, new LinearFunction(), 500, 10, maxError ) )
+		{
+			for ( final PointFunctionMatch pm : segment.getB() )
+			{
+				assertTrue( pm.getDistance() <= maxError );
+				assertTrue( ( int )pm.getP1().getL()[ 0 ] % 10 != 5 );
+			}
+
+			numInliers += segment.getB().size();
+		}
+
+		assertTrue( numInliers > 170 );
+	}
+
+	@Test
+	public void minimalSolversInterpolate() throws Exception
+	{
+		final Random rnd = new Random( 11 );
+		final PointStore store = new PointStore( 5 );
+		final int[] sample = new int[]{ 0, 1, 2, 3, 4 };
+
+		for ( int i = 0; i < store.size(); ++i )
+		{
+			store.x[ i ] = rnd.nextDouble() * 500;
+			store.y[ i ] = rnd.nextDouble() * 500;
+		}
+
+		final LinearFunction linear = new LinearFunction();
+		linear.fitFunction( store, sample, 0, 2 );
+
+		final QuadraticFunction quadratic = new QuadraticFunction();
+		quadratic.fitFunction( store, sample, 0, 3 );
+
+		final HigherOrderPolynomialFunction cubic = new HigherOrderPolynomialFunction( 3 );
+		cubic.fitFunction( store, sample, 0, 4 );
+
+		for ( int i = 0; i < 4; ++i )
+		{
+			if ( i < 2 )
+				assertEquals( store.y[ i ], linear.predict( store.x[ i ] ), 1e-9 );
+			if ( i < 3 )
+				assertEquals( store.y[ i ], quadratic.predict( store.x[ i ] ), 1e-8 );
+			assertEquals( store.y[ i ], cubic.predict( store.x[ i ] ), 1e-6 );
+		}
+
+		// the exact circle is the least-squares circle
+		final Circle circle = new Circle();
+		circle.fitFunction( store, sample, 0, 3 );
+
+		final ArrayList< Point > points = new ArrayList< Point >();
+		for ( int i = 0; i < 3; ++i )
+			points.add( new Point( new double[]{ store.x[ i ], store.y[ i ] } ) );
+
+		final Circle lsCircle = new Circle();
+		lsCircle.fitFunction( points );
+
+		assertEquals( lsCircle.getU(), circle.getU(), 1e-6 );
+		assertEquals( lsCircle.getV(), circle.getV(), 1e-6 );
+		assertEquals( lsCircle.getR(), circle.getR(), 1e-6 );
+
+		// five points on a rotated ellipse
+		for ( int i = 0; i < store.size(); ++i )
+		{
+			final double t = i * 1.2;
+			final double ex = 80 * Math.cos( t ), ey = 30 * Math.sin( t );
+
+			store.x[ i ] = 300 + ex * Math.cos( 0.4 ) - ey * Math.sin( 0.4 );
+			store.y[ i ] = 200 + ex * Math.sin( 0.4 ) + ey * Math.cos( 0.4 );
+		}
+
+		final Ellipse ellipse = new Ellipse( new EllipsePointDistanceFactory( 10 ) );
+		ellipse.fitFunction( store, sample, 0, 5 );
+
+		assertTrue( ellipse.isEllipse() );
+		assertEquals( 300, ellipse.getPointXAt( 0 ) - ellipse.getRadiusAt( 0 ), 1e-6 );
+		assertEquals( 200, ellipse.getPointYAt( 0 ), 1e-6 );
+		assertEquals( 80, Math.max( ellipse.getRadiusAt( 0.4 ), ellipse.getRadiusAt( 0.4 + Math.PI / 2 ) ), 1e-6 );
+		assertEquals( 30, Math.min( ellipse.getRadiusAt( 0.4 ), ellipse.getRadiusAt( 0.4 + Math.PI / 2 ) ), 1e-6 );
+	}
+
+	@Test( expected = IllDefinedDataPointsException.class )
+	public void rankDeficientFitThrows() throws Exception
+	{
+		// more points than necessary, but all at the same x
+		final PointStore store = new PointStore( 6 );
+		final int[] indices = new int[]{ 0, 1, 2, 3, 4, 5 };
+
+		for ( int i = 0; i < store.size(); ++i )
+			store.y[ i ] = i;
+
+		new HigherOrderPolynomialFunction( 3 ).fitFunction( store, indices, 0, 6 );
+	}
+
+	@Test
+	public void robustLineEqualsBruteForce() throws Exception
+	{
+		final Random rnd = new Random( 23 );
+		final RobustLinearEstimator theilSen = new RobustLinearEstimator();
+		final RobustLinearEstimator repeatedMedian = new RobustLinearEstimator( true );
+
+		for ( int t = 0; t < 30; ++t )
+		{
+			// integer coordinates every other run to create ties in x and in the slopes
+			final int n = 2 + rnd.nextInt( 200 );
+			final double[] x = new double[ n ], y = new double[ n ];
+
+			for ( int i = 0; i < n; ++i )
+			{
+				x[ i ] = t % 2 == 0 ? rnd.nextDouble() * 100 : rnd.nextInt( 20 );
+				y[ i ] = t % 2 == 0 ? 0.5 * x[ i ] + rnd.nextGaussian() * 5 : rnd.nextInt( 10 );
+			}
+
+			if ( x[ 0 ] == x[ n - 1 ] )
+				x[ 0 ] += 1;
+
+			final double[] slopes = new double[ n * ( n - 1 ) / 2 ];
+			final double[] medians = new double[ n ];
+			int numSlopes = 0, numMedians = 0;
+
+			for ( int i = 0; i < n; ++i )
+			{
+				final double[] slopesI = new double[ n ];
+				int numSlopesI = 0;
+
+				for ( int j = 0; j < n; ++j )
+					if ( x[ i ] != x[ j ] )
+					{
+						slopesI[ numSlopesI++ ] = ( y[ j ] - y[ i ] ) / ( x[ j ] - x[ i ] );
+
+						if ( j > i )
+							slopes[ numSlopes++ ] = slopesI[ numSlopesI - 1 ];
+					}
+
+				if ( numSlopesI > 0 )
+					medians[ numMedians++ ] = sortedMedian( slopesI, numSlopesI );
+			}
+
+			assertEquals( sortedMedian( slopes, numSlopes ), theilSen.theilSenSlope( x, y ), 1e-9 );
+			assertEquals( sortedMedian( medians, numMedians ), repeatedMedian.repeatedMedianSlope( x, y ), 1e-9 );
+		}
+
+		// a line with 25% outliers
+		final PointStore store = new PointStore( 300 );
+
+		for ( int i = 0; i < store.size(); ++i )
+		{
+			store.x[ i ] = i;
+			store.y[ i ] = i % 4 == 0 ? rnd.nextDouble() * 600 : 2 * i + 10 + rnd.nextGaussian();
+		}
+
+		for ( final RobustLinearEstimator estimator : new RobustLinearEstimator[]{ theilSen, repeatedMedian } )
+		{
+			final LinearFunction line = new LinearFunction();
+
+			assertTrue( estimator.fit( line, store, 5, 0, 10, 10, -10, 10 ) );
+			assertEquals( 2, line.getM(), 0.05 );
+			assertEquals( 10, line.getN(), 2 );
+			assertTrue( store.numInliers() >= 220 );
+		}
+	}
+
+	protected static double sortedMedian( final double[] values, final int n )
+	{
+		final double[] sorted = Arrays.copyOf( values, n );
+		Arrays.sort( sorted );
+
+		return n % 2 == 1 ? sorted[ n / 2 ] : ( sorted[ n / 2 - 1 ] + sorted[ n / 2 ] ) / 2;
+	}
+}
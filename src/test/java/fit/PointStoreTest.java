@@ -0,0 +1,152 @@
+/*-
+ * #%L
+ * code for function fitting
+ * %%
+ * Copyright (C) 2015 - 2025 Developers
+ * %%
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * 3. Neither the name of the Preibisch Lab nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package fit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import org.junit.Test;
+
+import fit.polynomial.LinearFunction;
+import fit.polynomial.QuadraticFunction;
+import mpicbg.models.Point;
+
+public class PointStoreTest
+{
+	@Test
+	public void sortByX()
+	{
+		final Random rnd = new Random( 3 );
+		final double[] x = new double[ 200 ];
+		final int[] indices = new int[ x.length ];
+
+		for ( int i = 0; i < x.length; ++i )
+		{
+			x[ i ] = rnd.nextInt( 20 );
+			indices[ i ] = i;
+		}
+
+		PointStore.sortByX( x, indices, 0, indices.length );
+
+		for ( int i = 1; i < indices.length; ++i )
+			assertTrue( x[ indices[ i - 1 ] ] < x[ indices[ i ] ] || ( x[ indices[ i - 1 ] ] == x[ indices[ i ] ] && indices[ i - 1 ] < indices[ i ] ) );
+	}
+
+	@Test
+	public void storeTestEqualsListTest()
+	{
+		// two segments of a line with a gap, the second one steeper (so it fails the slope test)
+		final Random rnd = new Random( 11 );
+		final ArrayList< PointFunctionMatch > candidates = new ArrayList< PointFunctionMatch >();
+
+		for ( int i = 0; i < 300; ++i )
+		{
+			final double x = rnd.nextDouble() * 100 + ( i % 3 == 0 ? 200 : 0 );
+			final double y = rnd.nextDouble() < 0.6 ? 0.5 * x + 3 + rnd.nextGaussian() * 0.5 : rnd.nextDouble() * 200;
+			candidates.add( new PointFunctionMatch( new Point( new double[]{ x, y } ) ) );
+		}
+
+		final PointStore store = PointStore.fromMatches( candidates );
+		final ArrayList< PointFunctionMatch > inliers = new ArrayList< PointFunctionMatch >();
+
+		final LinearFunction l = new LinearFunction( 0.5, 3 );
+
+		assertEquals( l.test( candidates, inliers, 1.5, 0, 0, 20.0 ), l.test( store, 1.5, 0, 0, 20.0 ) );
+		assertSameInliers( candidates, inliers, store );
+
+		assertEquals( l.test( candidates, inliers, 1.5, 0, 0, 20.0, 0.4, 0.45 ), l.test( store, 1.5, 0, 0, 20.0, 0.4, 0.45 ) );
+		assertSameInliers( candidates, inliers, store );
+
+		final QuadraticFunction q = new QuadraticFunction( 0.001, 0.4, 5 );
+
+		assertEquals( q.test( candidates, inliers, 3, 0, 0, 5.0 ), q.test( store, 3, 0, 0, 5.0 ) );
+		assertSameInliers( candidates, inliers, store );
+	}
+
+	@Test
+	public void removeInliersEqualsRemoveAll()
+	{
+		final Random rnd = new Random( 17 );
+		final ArrayList< Point > points = new ArrayList< Point >();
+
+		for ( int i = 0; i < 1000; ++i )
+			points.add( new Point( new double[]{ rnd.nextDouble() * 100, rnd.nextDouble() * 100 } ) );
+
+		final ArrayList< Point > expected = new ArrayList< Point >( points );
+		final ArrayList< Point > remaining = new ArrayList< Point >( points );
+		PointStore store = PointStore.fromPoints( remaining );
+
+		for ( int round = 0; round < 5; ++round )
+		{
+			final ArrayList< Point > inliers = new ArrayList< Point >();
+
+			for ( int i = 0; i < store.size(); ++i )
+				if ( rnd.nextDouble() < 0.3 )
+				{
+					store.addInlier( i );
+					inliers.add( remaining.get( i ) );
+				}
+
+			expected.removeAll( inliers );
+			store = store.removeInliers( remaining );
+
+			assertEquals( expected.size(), remaining.size() );
+			assertEquals( expected.size(), store.size() );
+
+			for ( int i = 0; i < expected.size(); ++i )
+			{
+				assertTrue( expected.get( i ) == remaining.get( i ) );
+				assertEquals( expected.get( i ).getW()[ 0 ], store.x[ i ], 0 );
+				assertEquals( expected.get( i ).getW()[ 1 ], store.y[ i ], 0 );
+			}
+		}
+	}
+
+	protected static void assertSameInliers( final ArrayList< PointFunctionMatch > candidates, final ArrayList< PointFunctionMatch > inliers, final PointStore store )
+	{
+		assertEquals( inliers.size(), store.numInliers() );
+
+		int numMask = 0;
+		for ( int i = 0; i < store.size(); ++i )
+			if ( store.inlierMask[ i ] )
+				++numMask;
+
+		assertEquals( inliers.size(), numMask );
+
+		for ( int j = 0; j < inliers.size(); ++j )
+			assertTrue( inliers.get( j ) == candidates.get( store.inlierIndices[ j ] ) );
+	}
+}
@@ -0,0 +1,753 @@
+/*-
+ * #%L
+ * code for function fitting
+ * %%
+ * Copyright (C) 2015 - 2025 Developers
+ * %%
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * 3. Neither the name of the Preibisch Lab nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package fit.ransac;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import fit.AbstractFunction;
+import fit.AbstractFunction2D;
+import fit.PointFunctionMatch;
+import fit.PointStore;
+import fit.circular.Circle;
+import fit.polynomial.HigherOrderPolynomialFunction;
+import fit.polynomial.LinearFunction;
+import fit.polynomial.PolynomialSums;
+import fit.polynomial.QuadraticFunction;
+import fit.polynomial.SlopeConstraint;
+import mpicbg.models.NotEnoughDataPointsException;
+import mpicbg.models.Point;
+
+public class RansacTest
+{
+	public static ArrayList< PointFunctionMatch > line( final long seed, final int n )
+	{
+		final Random rnd = new Random( seed );
+		final ArrayList< PointFunctionMatch > candidates = new ArrayList< PointFunctionMatch >();
+
+		for ( int i = 0; i < n; ++i )
+		{
+			final double y = rnd.nextDouble() < 0.5 ? 2 * i + 1 + rnd.nextGaussian() * 0.3 : rnd.nextDouble() * 300;
+			candidates.add( new PointFunctionMatch( new Point( new double[]{ i, y } ) ) );
+		}
+
+		return candidates;
+	}
+
+	public static ArrayList< PointFunctionMatch > circle( final long seed, final int n )
+	{
+		final Random rnd = new Random( seed );
+		final ArrayList< PointFunctionMatch > candidates = new ArrayList< PointFunctionMatch >();
+
+		for ( int i = 0; i < n; ++i )
+		{
+			final double t = rnd.nextDouble() * 2 * Math.PI;
+
+			if ( rnd.nextDouble() < 0.4 )
+				candidates.add( new PointFunctionMatch( new Point( new double[]{ 100 + 50 * Math.cos( t ) + rnd.nextGaussian(), 80 + 50 * Math.sin( t ) + rnd.nextGaussian() } ) ) );
+			else
+				candidates.add( new PointFunctionMatch( new Point( new double[]{ rnd.nextDouble() * 300, rnd.nextDouble() * 300 } ) ) );
+		}
+
+		return candidates;
+	}
+
+	/**
+	 * Runs RANSAC on a model of the function.
+	 */
+	public static abstract class Fit< M extends AbstractFunction< M > >
+	{
+		public abstract boolean ransac( final M model, final List< PointFunctionMatch > candidates, final List< PointFunctionMatch > inliers, final RansacSettings settings ) throws NotEnoughDataPointsException;
+	}
+
+	public static Fit< LinearFunction > lineFit( final int iterations, final int maxGapDim0 )
+	{
+		return new Fit< LinearFunction >()
+		{
+			@Override
+			public boolean ransac( final LinearFunction model, final List< PointFunctionMatch > candidates, final List< PointFunctionMatch > inliers, final RansacSettings settings ) throws NotEnoughDataPointsException
+			{
+				return model.ransac( candidates, inliers, iterations, 1.0, 0.01, 10, maxGapDim0, settings );
+			}
+		};
+	}
+
+	public static Fit< Circle > circleFit( final int iterations )
+	{
+		return new Fit< Circle >()
+		{
+			@Override
+			public boolean ransac( final Circle model, final List< PointFunctionMatch > candidates, final List< PointFunctionMatch > inliers, final RansacSettings settings ) throws NotEnoughDataPointsException
+			{
+				return model.ransac( candidates, inliers, iterations, 2.0, 0.01, 10, 100, 1e6, settings );
+			}
+		};
+	}
+
+	/**
+	 * Runs RANSAC once with one and once with four threads and checks that both find the
+	 * same model and inliers.
+	 * 
+	 * @return the model found by the single-threaded run
+	 */
+	public static < M extends AbstractFunction< M > > M assertParallelIdentical( final List< PointFunctionMatch > candidates, final M model, final Fit< M > fit, final RansacSettings settings ) throws NotEnoughDataPointsException
+	{
+		final M m1 = model.copy();
+		final ArrayList< PointFunctionMatch > inliers1 = new ArrayList< PointFunctionMatch >();
+		assertTrue( fit.ransac( m1, candidates, inliers1, settings.setNumThreads( 1 ) ) );
+
+		final M m4 = model.copy();
+		final ArrayList< PointFunctionMatch > inliers4 = new ArrayList< PointFunctionMatch >();
+		assertTrue( fit.ransac( m4, candidates, inliers4, settings.setNumThreads( 4 ) ) );
+
+		assertEquals( inliers1, inliers4 );
+
+		for ( final PointFunctionMatch pm : candidates )
+			assertEquals( m1.distanceTo( pm.getP1() ), m4.distanceTo( pm.getP1() ), 0 );
+
+		return m1;
+	}
+
+	@Test
+	public void parallelLineIsIdentical() throws NotEnoughDataPointsException
+	{
+		final LinearFunction l = assertParallelIdentical( line( 0, 1000 ), new LinearFunction(), lineFit( 700, 5 ), new RansacSettings().setSeed( 42 ) );
+		assertEquals( 2.0, l.getM(), 0.01 );
+	}
+
+	@Test
+	public void parallelCircleIsIdentical() throws NotEnoughDataPointsException
+	{
+		final Circle c = assertParallelIdentical( circle( 0, 2000 ), new Circle(), circleFit( 500 ), new RansacSettings().setSeed( 42 ) );
+		assertEquals( 50.0, c.getR(), 1.0 );
+	}
+
+	@Test
+	public void requiredIterations()
+	{
+		assertEquals( 17, Ransac.requiredIterations( 0.99, 0.5, 2 ) );
+		assertEquals( 1, Ransac.requiredIterations( 0.99, 1.0, 2 ) );
+		assertEquals( Integer.MAX_VALUE, Ransac.requiredIterations( 0.99, 0.0, 2 ) );
+	}
+
+	@Test
+	public void confidenceTerminatesEarly() throws NotEnoughDataPointsException
+	{
+		// clean data, the first hypothesis already has (almost) all points as inliers
+		final Random rnd = new Random( 3 );
+		final ArrayList< PointFunctionMatch > candidates = new ArrayList< PointFunctionMatch >();
+
+		for ( int i = 0; i < 1000; ++i )
+			candidates.add( new PointFunctionMatch( new Point( new double[]{ i, 2 * i + 1 + rnd.nextGaussian() * 0.3 } ) ) );
+
+		// counts the hypotheses that are evaluated
+		final int[] count = new int[ 1 ];
+		final Constraint< LinearFunction > counting = new Constraint< LinearFunction >()
+		{
+			@Override
+			public boolean isValid( final LinearFunction model ) { ++count[ 0 ]; return true; }
+		};
+
+		final ArrayList< PointFunctionMatch > inliers = new ArrayList< PointFunctionMatch >();
+		final LinearFunction l = new LinearFunction();
+
+		assertTrue( l.ransac( candidates, inliers, 10000, 1.0, 0.01, 10, 1000, new RansacSettings().setSeed( 5 ).setConstraint( counting ) ) );
+		assertEquals( 10000, count[ 0 ] );
+
+		count[ 0 ] = 0;
+		assertTrue( l.ransac( candidates, inliers, 10000, 1.0, 0.01, 10, 1000, new RansacSettings().setSeed( 5 ).setConstraint( counting ).setConfidence( 0.99 ) ) );
+		assertTrue( count[ 0 ] > 0 && count[ 0 ] < 20 );
+		assertEquals( 2.0, l.getM(), 0.01 );
+	}
+
+	@Test
+	public void adaptiveParallelLineIsIdentical() throws NotEnoughDataPointsException
+	{
+		// counts the hypotheses that are evaluated by both runs
+		final AtomicInteger count = new AtomicInteger();
+		final Constraint< LinearFunction > counting = new Constraint< LinearFunction >()
+		{
+			@Override
+			public boolean isValid( final LinearFunction model ) { count.incrementAndGet(); return true; }
+		};
+
+		final LinearFunction l = assertParallelIdentical( line( 1, 1000 ), new LinearFunction(), lineFit( 1000, 1000 ),
+				new RansacSettings().setSeed( 7 ).setConfidence( 0.999 ).setConstraint( counting ) );
+
+		// together both runs stop before a single run without confidence would
+		assertTrue( count.get() < 1000 );
+		assertEquals( 2.0, l.getM(), 0.01 );
+	}
+
+	@Test
+	public void uniformSamplerDrawsDistinctIndices()
+	{
+		final UniformSampler sampler = new UniformSampler( 10, new Random( 1 ) );
+		final int[] sample = new int[ 4 ];
+		final int[] histogram = new int[ 10 ];
+
+		for ( int i = 0; i < 10000; ++i )
+		{
+			assertTrue( sampler.drawSample( sample ) );
+
+			for ( int j = 0; j < sample.length; ++j )
+			{
+				++histogram[ sample[ j ] ];
+
+				for ( int k = 0; k < j; ++k )
+					assertTrue( sample[ j ] != sample[ k ] );
+			}
+		}
+
+		// every index is drawn in about 40% of the samples
+		for ( final int h : histogram )
+			assertEquals( 4000, h, 200 );
+
+		assertTrue( !new UniformSampler( 3, new Random( 1 ) ).drawSample( sample ) );
+	}
+
+	@Test
+	public void canceledRansacStops() throws NotEnoughDataPointsException
+	{
+		final ArrayList< PointFunctionMatch > candidates = line( 2, 1000 );
+		final CancellationToken token = new CancellationToken();
+		token.cancel();
+
+		// nothing is evaluated, the model remains unchanged
+		final ArrayList< PointFunctionMatch > inliers = new ArrayList< PointFunctionMatch >();
+		final LinearFunction l = new LinearFunction();
+		assertTrue( !l.ransac( candidates, inliers, 100000, 1.0, 0.01, 10, 5, new RansacSettings().setCancellation( token ) ) );
+		assertTrue( !l.ransac( candidates, inliers, 100000, 1.0, 0.01, 10, 5, new RansacSettings().setDeadline( 0 ).setNumThreads( 4 ) ) );
+		assertEquals( 0, inliers.size() );
+	}
+
+	@Test
+	public void listenerSeesEveryBetterHypothesis() throws NotEnoughDataPointsException
+	{
+		final ArrayList< PointFunctionMatch > candidates = line( 3, 1000 );
+		final ArrayList< LinearFunction > models = new ArrayList< LinearFunction >();
+		final ArrayList< int[] > inliers = new ArrayList< int[] >();
+
+		final RansacSettings settings = new RansacSettings().setSeed( 5 ).setNumThreads( 4 ).setListener( new RansacListener< LinearFunction >()
+		{
+			@Override
+			public void improved( final LinearFunction model, final PointStore store, final int[] in, final double cost )
+			{
+				if ( models.size() > 0 )
+					assertTrue( cost < models.get( models.size() - 1 ).getCost() );
+
+				models.add( model );
+				inliers.add( in );
+			}
+		} );
+
+		final ArrayList< PointFunctionMatch > result = new ArrayList< PointFunctionMatch >();
+		final LinearFunction l = new LinearFunction();
+		assertTrue( l.ransac( candidates, result, 500, 1.0, 0.01, 10, 5, settings ) );
+
+		final LinearFunction last = models.get( models.size() - 1 );
+		assertEquals( l.getM(), last.getM(), 0 );
+		assertEquals( l.getN(), last.getN(), 0 );
+		assertEquals( result.size(), inliers.get( inliers.size() - 1 ).length );
+	}
+
+	@Test
+	public void preTestParallelIsIdentical() throws NotEnoughDataPointsException
+	{
+		final ArrayList< PointFunctionMatch > candidates = circle( 1, 2000 );
+
+		// the pre-test only rejects hypotheses early, it finds the circle found without it
+		final Circle c = assertParallelIdentical( candidates, new Circle(), circleFit( 2000 ), new RansacSettings().setSeed( 3 ).setPreTestFactory( new TddPreTestFactory( 1 ) ) );
+		final Circle full = new Circle();
+		assertTrue( circleFit( 2000 ).ransac( full, candidates, new ArrayList< PointFunctionMatch >(), new RansacSettings().setSeed( 3 ) ) );
+
+		assertEquals( 50.0, c.getR(), 1.0 );
+		assertEquals( full.getR(), c.getR(), 1.0 );
+	}
+
+	@Test
+	public void sprtVisitsEveryCandidateOnce()
+	{
+		// all points are on the line, an active test accepts it after seeing each of them exactly once
+		final PointStore store = new PointStore( 97 );
+		for ( int i = 0; i < store.size(); ++i )
+		{
+			store.x[ i ] = i;
+			store.y[ i ] = 2 * i + 1;
+		}
+
+		final int[] visits = new int[ store.size() ];
+		final LinearFunction line = new LinearFunction( 2, 1 )
+		{
+			@Override
+			public void distanceTo( final double[] xs, final double[] ys, final int from, final int to, final double[] out )
+			{
+				for ( int i = from; i < to; ++i )
+					++visits[ i ];
+
+				super.distanceTo( xs, ys, from, to, out );
+			}
+		};
+
+		final SprtPreTest sprt = new SprtPreTest( 200, 0.05, 10 );
+		sprt.improved( 50, 97 );
+		sprt.nextBatch( 1 );
+
+		assertTrue( sprt.residualsComplete() );
+		assertTrue( sprt.accept( line, new int[]{ 3, 40 }, 0, store, 1.0 ) );
+
+		for ( int i = 0; i < store.size(); ++i )
+		{
+			assertEquals( 1, visits[ i ] );
+			assertEquals( 0, store.residual[ i ], 1e-9 );
+		}
+	}
+
+	@Test
+	public void sprtFindsSameCircle() throws NotEnoughDataPointsException
+	{
+		final ArrayList< PointFunctionMatch > candidates = circle( 2, 5000 );
+
+		final ArrayList< PointFunctionMatch > inliers = new ArrayList< PointFunctionMatch >();
+		final Circle c = new Circle();
+		assertTrue( c.ransac( candidates, inliers, 1000, 2.0, 0.01, 10, 100, 1e6, new RansacSettings().setSeed( 9 ) ) );
+
+		final ArrayList< PointFunctionMatch > inliers1 = new ArrayList< PointFunctionMatch >();
+		final Circle c1 = new Circle();
+		assertTrue( c1.ransac( candidates, inliers1, 1000, 2.0, 0.01, 10, 100, 1e6, new RansacSettings().setSeed( 9 ).setPreTestFactory( new SprtPreTestFactory() ) ) );
+
+		final ArrayList< PointFunctionMatch > inliers4 = new ArrayList< PointFunctionMatch >();
+		final Circle c4 = new Circle();
+		assertTrue( c4.ransac( candidates, inliers4, 1000, 2.0, 0.01, 10, 100, 1e6, new RansacSettings().setSeed( 9 ).setPreTestFactory( new SprtPreTestFactory() ).setNumThreads( 4 ) ) );
+
+		assertEquals( c1.getR(), c4.getR(), 0 );
+		assertEquals( inliers1, inliers4 );
+		assertEquals( c.getR(), c1.getR(), 0.5 );
+		assertEquals( inliers.size(), inliers1.size(), inliers.size() / 50 );
+	}
+
+	@Test
+	public void sprtStatisticsIndependentOfThreads() throws NotEnoughDataPointsException
+	{
+		final ArrayList< PointFunctionMatch > candidates = circle( 2, 5000 );
+		final SprtPreTest[] preTests = new SprtPreTest[ 2 ];
+
+		for ( int t = 0; t < 2; ++t )
+		{
+			final int index = t;
+			final PreTestFactory factory = new PreTestFactory()
+			{
+				@Override
+				public PreTest create( final PointStore store, final int sampleSize )
+				{
+					return preTests[ index ] = new SprtPreTest( 100, 0.01, 100 );
+				}
+			};
+
+			new Circle().ransac( candidates, new ArrayList< PointFunctionMatch >(), 1000, 2.0, 0.01, 10, 100, 1e6,
+					new RansacSettings().setSeed( 9 ).setPreTestFactory( factory ).setNumThreads( t == 0 ? 1 : 4 ) );
+		}
+
+		// every hypothesis is counted once, also if it is replayed after the parallel evaluation
+		assertTrue( preTests[ 0 ].tested > 0 );
+		assertEquals( preTests[ 0 ].tested, preTests[ 1 ].tested );
+		assertEquals( preTests[ 0 ].consistent, preTests[ 1 ].consistent );
+		assertEquals( preTests[ 0 ].delta, preTests[ 1 ].delta, 0 );
+		assertEquals( preTests[ 0 ].logA, preTests[ 1 ].logA, 0 );
+	}
+
+	@Test
+	public void prosacDrawsBestFirst()
+	{
+		final int n = 1000;
+		final double[] weights = new double[ n ];
+		for ( int i = 0; i < n; ++i )
+			weights[ i ] = ( i * 7919 ) % n;
+
+		final Sampler sampler = new ProsacSamplerFactory( weights ).create( new PointStore( new double[ n ], new double[ n ] ), 3, new Random( 0 ) );
+		final int[] sample = new int[ 3 ];
+
+		for ( int i = 0; i < 50; ++i )
+		{
+			assertTrue( sampler.drawSample( sample ) );
+			assertTrue( sample[ 0 ] != sample[ 1 ] && sample[ 0 ] != sample[ 2 ] && sample[ 1 ] != sample[ 2 ] );
+
+			// the first samples only come from the best ranked candidates
+			for ( final int s : sample )
+				assertTrue( weights[ s ] >= n - 3 - i );
+		}
+	}
+
+	@Test
+	public void localitySamplerStaysInRadius()
+	{
+		final Random rnd = new Random( 4 );
+		final double[] x = new double[ 500 ];
+		for ( int i = 0; i < x.length; ++i )
+			x[ i ] = rnd.nextDouble() * 1000;
+
+		final PointStore store = new PointStore( x, new double[ x.length ] );
+		final Sampler sampler = new LocalitySamplerFactory( 5, 4 ).create( store, 3, new Random( 1 ) );
+		final int[] sample = new int[ 3 ];
+
+		for ( int i = 0; i < 1000; ++i )
+		{
+			assertTrue( sampler.drawSample( sample ) );
+			assertTrue( sample[ 0 ] != sample[ 1 ] && sample[ 0 ] != sample[ 2 ] && sample[ 1 ] != sample[ 2 ] );
+			assertTrue( Math.abs( x[ sample[ 1 ] ] - x[ sample[ 0 ] ] ) <= 20 );
+			assertTrue( Math.abs( x[ sample[ 2 ] ] - x[ sample[ 0 ] ] ) <= 20 );
+		}
+	}
+
+	@Test
+	public void neighborhoodSamplerStaysInRadius()
+	{
+		final Random rnd = new Random( 5 );
+		final double[] x = new double[ 2000 ];
+		final double[] y = new double[ 2000 ];
+		for ( int i = 0; i < x.length; ++i )
+		{
+			x[ i ] = rnd.nextDouble() * 1000;
+			y[ i ] = rnd.nextDouble() * 500;
+		}
+
+		final Sampler sampler = new NeighborhoodSamplerFactory( 30 ).create( new PointStore( x, y ), 5, new Random( 1 ) );
+		final int[] sample = new int[ 5 ];
+
+		for ( int i = 0; i < 1000; ++i )
+		{
+			assertTrue( sampler.drawSample( sample ) );
+
+			for ( int j = 1; j < sample.length; ++j )
+			{
+				for ( int k = 0; k < j; ++k )
+					assertTrue( sample[ j ] != sample[ k ] );
+
+				assertTrue( Math.hypot( x[ sample[ j ] ] - x[ sample[ 0 ] ], y[ sample[ j ] ] - y[ sample[ 0 ] ] ) <= 30 );
+			}
+		}
+	}
+
+	@Test
+	public void scoringCostsAndParallelIsIdentical() throws NotEnoughDataPointsException
+	{
+		// a perfect fit costs nothing, outliers cost the most
+		final PointStore store = new PointStore( new double[ 4 ], new double[ 4 ] );
+		store.clearInliers();
+		store.addInlier( 0 );
+		store.addInlier( 1 );
+
+		assertEquals( 0.5, new MsacScoring().cost( store, 1.0 ), 1e-12 );
+		assertTrue( new MlesacScoring( 100 ).cost( store, 1.0 ) > 0 );
+
+		final ArrayList< PointFunctionMatch > candidates = line( 6, 1000 );
+
+		for ( final Scoring scoring : new Scoring[]{ new MsacScoring(), new MlesacScoring( 300 ) } )
+		{
+			final LinearFunction l = assertParallelIdentical( candidates, new LinearFunction(), lineFit( 200, 5 ), new RansacSettings().setSeed( 8 ).setScoring( scoring ) );
+			assertEquals( 2.0, l.getM(), 0.01 );
+		}
+	}
+
+	@Test
+	public void scoringOrdersHypothesesWithSameInliers()
+	{
+		// two hypotheses with the same inliers and outliers, the first one fits its inliers closer
+		final PointStore tight = new PointStore( new double[ 10 ], new double[ 10 ] );
+		final PointStore loose = new PointStore( new double[ 10 ], new double[ 10 ] );
+		tight.clearInliers();
+		loose.clearInliers();
+
+		for ( int i = 0; i < 10; ++i )
+		{
+			tight.residual[ i ] = i < 8 ? 0.1 : 5;
+			loose.residual[ i ] = i < 8 ? 0.6 : 5;
+
+			if ( i < 8 )
+			{
+				tight.addInlier( i );
+				loose.addInlier( i );
+			}
+		}
+
+		for ( final Scoring scoring : new Scoring[]{ new MsacScoring(), new MlesacScoring( 100 ) } )
+			assertTrue( scoring.cost( tight, 1.0 ) < scoring.cost( loose, 1.0 ) );
+	}
+
+	@Test
+	public void localOptimizationParallelIsIdentical() throws NotEnoughDataPointsException
+	{
+		final Circle c = assertParallelIdentical( circle( 4, 2000 ), new Circle(), circleFit( 300 ), new RansacSettings().setSeed( 2 ).setLocalOptimization( new LocalOptimization() ) );
+		assertEquals( 50.0, c.getR(), 0.5 );
+	}
+
+	@Test
+	public void localOptimizationFitsLess() throws NotEnoughDataPointsException
+	{
+		final ArrayList< PointFunctionMatch > candidates = line( 9, 1000 );
+
+		// without local optimization every acceptable hypothesis is refined, with it only the new best ones
+		final int[] refined = new int[ 1 ];
+		final ArrayList< PointFunctionMatch > inliers1 = new ArrayList< PointFunctionMatch >();
+		final LinearFunction l1 = countingLine( refined );
+		assertTrue( l1.ransac( candidates, inliers1, 300, 1.0, 0.01, 10, 5, new RansacSettings().setSeed( 4 ) ) );
+
+		final int[] optimized = new int[ 1 ];
+		final ArrayList< PointFunctionMatch > inliers2 = new ArrayList< PointFunctionMatch >();
+		final LinearFunction l2 = countingLine( optimized );
+		assertTrue( l2.ransac( candidates, inliers2, 300, 1.0, 0.01, 10, 5, new RansacSettings().setSeed( 4 ).setLocalOptimization( new LocalOptimization() ) ) );
+
+		assertTrue( optimized[ 0 ] < refined[ 0 ] );
+		assertTrue( inliers2.size() >= inliers1.size() );
+		assertEquals( 2.0, l2.getM(), 0.01 );
+	}
+
+	/**
+	 * @return a line (and its copies) that counts its fits to more than a minimal sample
+	 */
+	protected static LinearFunction countingLine( final int[] count )
+	{
+		return new LinearFunction()
+		{
+			@Override
+			public void fitFunction( final PointStore store, final int[] indices, final int from, final int to ) throws NotEnoughDataPointsException
+			{
+				if ( to - from > getMinNumMatches() )
+					++count[ 0 ];
+
+				super.fitFunction( store, indices, from, to );
+			}
+
+			@Override
+			public void fitFunction( final PolynomialSums sums ) throws NotEnoughDataPointsException
+			{
+				++count[ 0 ];
+				super.fitFunction( sums );
+			}
+
+			@Override
+			public LinearFunction copy()
+			{
+				final LinearFunction c = countingLine( count );
+				c.set( this );
+				return c;
+			}
+		};
+	}
+
+	@Test
+	public void smallInputsAreEnumeratedOrDeduplicated() throws NotEnoughDataPointsException
+	{
+		final HashSet< String > seen = new HashSet< String >();
+		final Sampler exhaustive = new ExhaustiveSampler( 10, 3 );
+		final int[] sample = new int[ 3 ];
+
+		while ( exhaustive.drawSample( sample ) )
+			assertTrue( seen.add( Arrays.toString( sample ) ) );
+
+		assertEquals( 120, seen.size() );
+		assertEquals( 120, ExhaustiveSampler.numCombinations( 10, 3 ), 0 );
+
+		seen.clear();
+		final Sampler distinct = new DistinctSampler( new UniformSampler( 20, new Random( 1 ) ), 20, 2, 150 );
+		final int[] pair = new int[ 2 ];
+		for ( int i = 0; i < 150; ++i )
+		{
+			assertTrue( distinct.drawSample( pair ) );
+			final int[] sorted = new int[]{ Math.min( pair[ 0 ], pair[ 1 ] ), Math.max( pair[ 0 ], pair[ 1 ] ) };
+			assertTrue( seen.add( Arrays.toString( sorted ) ) );
+		}
+
+		// a short track is enumerated, the result does not depend on the seed
+		final ArrayList< PointFunctionMatch > candidates = line( 7, 30 );
+
+		final ArrayList< PointFunctionMatch > inliers1 = new ArrayList< PointFunctionMatch >();
+		final LinearFunction l1 = new LinearFunction();
+		assertTrue( l1.ransac( candidates, inliers1, 1000, 1.0, 0.01, 5, 5, new RansacSettings().setSeed( 1 ) ) );
+
+		final ArrayList< PointFunctionMatch > inliers2 = new ArrayList< PointFunctionMatch >();
+		final LinearFunction l2 = new LinearFunction();
+		assertTrue( l2.ransac( candidates, inliers2, 1000, 1.0, 0.01, 5, 5, new RansacSettings().setSeed( 2 ) ) );
+
+		assertEquals( l1.getM(), l2.getM(), 0 );
+		assertEquals( inliers1, inliers2 );
+	}
+
+	@Test
+	public void exhaustiveSamplerIgnoresConfidence() throws NotEnoughDataPointsException
+	{
+		// the first point is part of a weaker line, so all early pairs of the enumeration contain it
+		final ArrayList< PointFunctionMatch > candidates = new ArrayList< PointFunctionMatch >();
+
+		for ( int i = 0; i < 10; ++i )
+			candidates.add( new PointFunctionMatch( new Point( new double[]{ i * 3, 100 - i * 3 } ) ) );
+
+		for ( int i = 0; i < 16; ++i )
+			candidates.add( new PointFunctionMatch( new Point( new double[]{ i * 2, 2 * i * 2 + 1 } ) ) );
+
+		for ( int i = 0; i < 4; ++i )
+			candidates.add( new PointFunctionMatch( new Point( new double[]{ i * 7 + 1, 50 + ( i % 2 == 0 ? 20 : -20 ) } ) ) );
+
+		final ArrayList< PointFunctionMatch > inliers = new ArrayList< PointFunctionMatch >();
+		final LinearFunction l = new LinearFunction();
+		assertTrue( l.ransac( candidates, inliers, 1000, 0.5, 0.01, 5, 100, new RansacSettings().setSeed( 1 ).setConfidence( 0.99 ) ) );
+
+		assertEquals( 2, l.getM(), 1e-9 );
+		assertEquals( 16, inliers.size() );
+	}
+
+	@Test
+	public void constraintRejectsHypotheses() throws NotEnoughDataPointsException
+	{
+		final ArrayList< PointFunctionMatch > candidates = line( 0, 1000 );
+
+		assertTrue( new SlopeConstraint( 1.5, 2.5 ).isValid( new LinearFunction( 2, 1 ) ) );
+		assertTrue( !new SlopeConstraint( 1.5, 2.5 ).isValid( new LinearFunction( 3, 1 ) ) );
+
+		// the true slope is outside the bounds, and no flat line has enough inliers
+		final Constraint< LinearFunction > flat = new Constraint< LinearFunction >()
+		{
+			@Override
+			public boolean isValid( final LinearFunction model ) { return Math.abs( model.getM() ) < 1; }
+		};
+
+		final ArrayList< PointFunctionMatch > inliers = new ArrayList< PointFunctionMatch >();
+		final LinearFunction l = new LinearFunction();
+		assertTrue( !l.ransac( candidates, inliers, 700, 1.0, 0.01, 10, 5, new RansacSettings().setSeed( 42 ).setConstraint( flat ) ) );
+		assertEquals( 0, inliers.size() );
+
+		assertTrue( l.ransac( candidates, inliers, 700, 1.0, 0.01, 10, 5, new RansacSettings().setSeed( 42 ).setConstraint( new SlopeConstraint( 1.5, 2.5 ) ) ) );
+		assertEquals( 2.0, l.getM(), 0.01 );
+	}
+
+	@Test
+	public void multiModelSelectsDegree() throws NotEnoughDataPointsException
+	{
+		for ( int degree = 1; degree <= 2; ++degree )
+		{
+			final Random rnd = new Random( degree );
+			final PointStore store = new PointStore( 500 );
+
+			for ( int i = 0; i < store.size(); ++i )
+			{
+				final double x = store.x[ i ] = i * 0.4;
+				final double y = degree == 1 ? 2 * x + 1 : 0.02 * ( x - 100 ) * ( x - 100 ) + 5;
+				store.y[ i ] = rnd.nextDouble() < 0.6 ? y + rnd.nextGaussian() * 0.3 : rnd.nextDouble() * 300;
+			}
+
+			final List< AbstractFunction2D< ? > > models = Arrays.< AbstractFunction2D< ? > >asList(
+					new LinearFunction(), new QuadraticFunction(), new HigherOrderPolynomialFunction( 3 ) );
+
+			// the listener sees a growing number of inliers of the leading model
+			final int[] lastInliers = new int[ 1 ];
+			final RansacListener< AbstractFunction2D< ? > > listener = new RansacListener< AbstractFunction2D< ? > >()
+			{
+				@Override
+				public void improved( final AbstractFunction2D< ? > model, final PointStore s, final int[] inliers, final double cost )
+				{
+					assertTrue( s == store );
+					assertTrue( inliers.length >= lastInliers[ 0 ] );
+					lastInliers[ 0 ] = inliers.length;
+				}
+			};
+
+			final int selected = MultiModelRansac.ransac( models, store, 300, 1.0, 0.01, 10, 5, InformationCriterion.BIC, new Random(), new RansacSettings().setSeed( 42 ).setListener( listener ) );
+
+			assertEquals( degree - 1, selected );
+			assertTrue( store.numInliers() > 250 );
+			assertTrue( lastInliers[ 0 ] >= store.numInliers() );
+		}
+	}
+
+	@Test
+	public void jLinkageFindsAllSegments() throws NotEnoughDataPointsException
+	{
+		// a microtubule that grows and shrinks twice (slopes 1 and -4), plus outliers
+		final Random rnd = new Random( 7 );
+		final double[][] segments = new double[][]{ { 1, 10 }, { -4, 310 }, { 1, -65 }, { -4, 560 } };
+		final int[] ends = new int[]{ 60, 75, 135, 150 };
+		final PointStore store = new PointStore( 190 );
+
+		for ( int i = 0; i < store.size(); ++i )
+		{
+			if ( i < 150 )
+			{
+				int s = 0;
+				while ( i >= ends[ s ] )
+					++s;
+
+				store.x[ i ] = i;
+				store.y[ i ] = segments[ s ][ 0 ] * i + segments[ s ][ 1 ] + rnd.nextGaussian() * 0.5;
+			}
+			else
+			{
+				store.x[ i ] = rnd.nextDouble() * 150;
+				store.y[ i ] = rnd.nextDouble() * 80;
+			}
+		}
+
+		final int[] labels = new int[ store.size() ];
+		final ArrayList< LinearFunction > functions = JLinkage.fit( new LinearFunction(), store, 1000, 2.0, 8, 3, labels,
+				new RansacSettings().setSeed( 42 ).setSamplerFactory( new LocalitySamplerFactory( 3, 3 ) ) );
+
+		assertEquals( 4, functions.size() );
+
+		for ( int s = 0; s < segments.length; ++s )
+		{
+			// the segment the most points of this segment are assigned to
+			final int[] counts = new int[ functions.size() ];
+			int numPoints = 0;
+
+			for ( int i = s == 0 ? 0 : ends[ s - 1 ]; i < ends[ s ]; ++i, ++numPoints )
+				if ( labels[ i ] >= 0 )
+					++counts[ labels[ i ] ];
+
+			int j = 0;
+			for ( int k = 1; k < counts.length; ++k )
+				if ( counts[ k ] > counts[ j ] )
+					j = k;
+
+			assertTrue( counts[ j ] >= numPoints - 3 );
+			assertEquals( segments[ s ][ 0 ], functions.get( j ).getM(), 0.05 );
+		}
+	}
+}